@@ -18,6 +18,7 @@ package com.stratio.qa.aspects;
 
 import com.google.common.collect.Lists;
 import com.stratio.qa.specs.BaseGSpec;
+import com.stratio.qa.utils.HtmlUnitCommandExecutor;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
@@ -41,7 +42,8 @@ public class BrowsersDataProviderAspect extends BaseGSpec {
 
     /**
      * If a System property with FORCE_BROWSER exists then Methods in
-     * BrowsersDataProvider will return its value.
+     * BrowsersDataProvider will return its value. With BDT_BROWSER_BACKEND=htmlunit
+     * they return the in-JVM browser, and no grid is queried.
      *
      * @param pjp ProceedingJoinPoint
      * @return Object
@@ -66,6 +68,12 @@ public class BrowsersDataProviderAspect extends BaseGSpec {
                     System.getProperty("FORCE_BROWSER"));
             return lData.iterator();
         }
+        if (HtmlUnitCommandExecutor.BACKEND.equals(System.getProperty("BDT_BROWSER_BACKEND", ""))) {
+            List<String[]> lData = Lists.newArrayList();
+            lData.add(new String[]{HtmlUnitCommandExecutor.BACKEND});
+            logger.debug("Running every browser test in the {} backend", HtmlUnitCommandExecutor.BACKEND);
+            return lData.iterator();
+        }
         return pjp.proceed();
     }
 }
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.aspects;
+
+import com.stratio.qa.utils.ElementSnapshot;
+import org.aspectj.lang.annotation.After;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+
+@Aspect
+public class WebDriverActionAspect {
+
+    @Pointcut("call(* org.openqa.selenium.WebElement+.click(..))"
+            + " || call(* org.openqa.selenium.WebElement+.sendKeys(..))"
+            + " || call(* org.openqa.selenium.WebElement+.clear(..))"
+            + " || call(* org.openqa.selenium.WebElement+.submit(..))"
+            + " || call(* org.openqa.selenium.WebDriver+.get(..))"
+            + " || call(* org.openqa.selenium.WebDriver.Navigation+.*(..))"
+            + " || call(* org.openqa.selenium.WebDriver.TargetLocator+.*(..))"
+            + " || call(* org.openqa.selenium.support.ui.Select.*(..))"
+            + " || call(* org.openqa.selenium.interactions.Action+.perform(..))"
+            + " || call(* org.openqa.selenium.interactions.Actions+.perform(..))")
+    protected void webDriverActionPointcut() {
+    }
+
+    /**
+     * Any action that may change the page makes previous element snapshots untrusted.
+     */
+    @After(value = "webDriverActionPointcut()")
+    public void afterWebDriverAction() {
+        ElementSnapshot.actionPerformed();
+    }
+}
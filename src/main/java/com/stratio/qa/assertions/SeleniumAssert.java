@@ -279,7 +279,7 @@ public class SeleniumAssert extends AbstractAssert<SeleniumAssert, Object> {
         if (actual instanceof List) {
             Integers.instance().assertGreaterThan(info, ((List<WebElement>) actual).size(), size);
         } else if (actual instanceof PreviousWebElements) {
-            Integers.instance().assertGreaterThan(info, ((PreviousWebElements) actual).getPreviousWebElements().size(), size);
+            Integers.instance().assertGreaterThan(info, ((PreviousWebElements) actual).size(), size);
         }
         return this;
     }
@@ -293,7 +293,7 @@ public class SeleniumAssert extends AbstractAssert<SeleniumAssert, Object> {
      */
     public SeleniumAssert hasSize(Integer size) {
         if (actual instanceof PreviousWebElements) {
-            Integers.instance().assertEqual(info, ((PreviousWebElements) actual).getPreviousWebElements().size(), size);
+            Integers.instance().assertEqual(info, ((PreviousWebElements) actual).size(), size);
         }
         return this;
     }
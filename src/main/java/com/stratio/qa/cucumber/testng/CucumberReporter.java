@@ -21,6 +21,8 @@ import com.jayway.jsonpath.PathNotFoundException;
 import com.ning.http.client.AsyncHttpClient;
 import com.ning.http.client.Response;
 import com.stratio.qa.specs.CommonG;
+import com.stratio.qa.utils.EvidenceWriter;
+import com.stratio.qa.utils.JsonDocuments;
 import com.stratio.qa.utils.ThreadProperty;
 import cucumber.runtime.CucumberException;
 import cucumber.runtime.Utils;
@@ -247,6 +249,13 @@ public class CucumberReporter implements Formatter, Reporter {
 
     @Override
     public void done() {
+        try {
+            EvidenceWriter.INSTANCE.awaitPending(Long.parseLong(System.getProperty("BDT_EVIDENCE_TIMEOUT",
+                    String.valueOf(EvidenceWriter.DEFAULT_AWAIT_SECONDS))));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while waiting for evidences", e);
+        }
         try {
             results.setAttribute("total", String.valueOf(getElementsCountByAttribute(suite, STATUS, ".*")));
             results.setAttribute("passed", String.valueOf(getElementsCountByAttribute(suite, STATUS, "PASS")));
@@ -450,7 +459,7 @@ public class CucumberReporter implements Formatter, Reporter {
                 String json = comm.getResponse().getResponse();
                 String value = "";
                 try {
-                    value = JsonPath.read(json, "$.fields.status.name");
+                    value = JsonPath.using(JsonDocuments.CONFIGURATION).parse(json).read("$.fields.status.name");
                     value = value.toLowerCase();
                 } catch (PathNotFoundException pe) {
                     logger.error("Json Path $.fields.status.name not found\r");
@@ -16,6 +16,7 @@
 
 package com.stratio.qa.cucumber.testng;
 
+import com.stratio.qa.utils.ClasspathIndex;
 import cucumber.api.CucumberOptions;
 import cucumber.runtime.ClassFinder;
 import cucumber.runtime.CucumberException;
@@ -24,7 +25,6 @@ import cucumber.runtime.RuntimeOptionsFactory;
 import cucumber.runtime.io.MultiLoader;
 import cucumber.runtime.io.ResourceLoader;
 import cucumber.runtime.io.ResourceLoaderClassFinder;
-import org.reflections.Reflections;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -115,8 +115,8 @@ public class CucumberRunner {
         runtimeOptions.getGlue().addAll(uniqueGlue);
 
         runtimeOptions.addFormatter(reporterTestNG);
-        Set<Class<? extends ICucumberFormatter>> implementers = new Reflections("com.stratio.qa.utils")
-                .getSubTypesOf(ICucumberFormatter.class);
+        Set<Class<? extends ICucumberFormatter>> implementers = ClasspathIndex.INSTANCE
+                .getSubTypesOf(ICucumberFormatter.class, "com.stratio.qa.utils");
 
         for (Class<? extends ICucumberFormatter> implementerClazz : implementers) {
             Constructor<?> ctor = implementerClazz.getConstructor();
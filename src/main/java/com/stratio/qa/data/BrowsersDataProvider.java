@@ -17,20 +17,12 @@
 package com.stratio.qa.data;
 
 import com.google.common.collect.Lists;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.stratio.qa.utils.SeleniumGrid;
 import org.testng.ITestContext;
 import org.testng.annotations.DataProvider;
 
-import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 
 public final class BrowsersDataProvider {
@@ -39,8 +31,6 @@ public final class BrowsersDataProvider {
 
     public static final int DEFAULT_LESS_LENGTH = 4;
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(BrowsersDataProvider.class);
-
     private BrowsersDataProvider() {
     }
 
@@ -146,7 +136,7 @@ public final class BrowsersDataProvider {
     }
 
     /**
-     * Return available grid browsers applying filter defined by Map content.
+     * Return available grid browsers applying filter defined by Map content, one per grid slot.
      * Filter -> Regexp as: "filter.key()=filter.value(key)[,|}]"
      *
      * @param filter browser selected for test execution
@@ -156,61 +146,13 @@ public final class BrowsersDataProvider {
 
         ArrayList<String> response = new ArrayList<String>();
 
-        String grid = System.getProperty("SELENIUM_GRID");
-
-        if (grid != null) {
-            grid = "http://" + grid + "/grid/console";
-            Document doc;
-            try {
-                doc = Jsoup.connect(grid).timeout(DEFAULT_TIMEOUT).get();
-            } catch (IOException e) {
-                LOGGER.debug("Exception on connecting to Selenium grid: {}", e.getMessage());
-                return response;
-            }
-
-            Elements slaves = (Elements) doc.select("div.proxy");
-
-            for (Element slave : slaves) {
-                String slaveStatus = slave.select("p.proxyname").first().text();
-                if (!slaveStatus.contains("Connection") && !slaveStatus.contains("Conexión")) {
-                    Integer iBusy = 0;
-                    Elements browserList = slave.select("div.content_detail").select("*[title]");
-                    Elements busyBrowserList = slave.select("div.content_detail").select("p > .busy");
-                    for (Element browserDetails : browserList) {
-                        if (browserDetails.attr("title").startsWith("{")) {
-                            boolean filterCheck = true;
-                            for (Map.Entry<String, String> f : filter.entrySet()) {
-                                String stringFilter = f.getKey() + "=" + f.getValue() + "[,|}]";
-                                Pattern patFilter = Pattern.compile(stringFilter);
-                                Matcher mFilter = patFilter.matcher(browserDetails.attr("title"));
-                                filterCheck = filterCheck & mFilter.find();
-                            }
-                            if (filterCheck) {
-                                Pattern pat = Pattern.compile("browserName=(.*?),.*?(version=(.*?)[,|}])");
-                                Matcher m = pat.matcher(browserDetails.attr("title"));
-                                while (m.find()) {
-                                    response.add(m.group(1) + "_" + m.group(3));
-                                }
-                            }
-                        } else {
-                            String version = busyBrowserList.get(iBusy).parent().text();
-                            String browser = busyBrowserList.get(iBusy).text();
-                            version = version.substring(2);
-                            version = version.replace(browser, "");
-                            String browserSrc = busyBrowserList.get(iBusy).select("img").attr("src");
-                            if (!browserSrc.equals("")) {
-                                browser = browserSrc.substring(browserSrc.lastIndexOf('/') + 1, browserSrc.length()
-                                        - DEFAULT_LESS_LENGTH);
-                            }
-                            response.add(browser + "_" + version);
-                            iBusy++;
-                        }
-                    }
-                }
+        for (SeleniumGrid.Slot slot : SeleniumGrid.INSTANCE.getSlots()) {
+            if (slot.matches(filter)) {
+                response.add(slot.getBrowser());
             }
         }
         // Sort response
         Collections.sort(response);
         return response;
     }
-}
\ No newline at end of file
+}
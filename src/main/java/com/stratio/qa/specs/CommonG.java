@@ -19,11 +19,7 @@ package com.stratio.qa.specs;
 import com.datastax.driver.core.ColumnDefinitions;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Row;
-import com.jayway.jsonpath.Configuration;
 import com.jayway.jsonpath.DocumentContext;
-import com.jayway.jsonpath.JsonPath;
-import com.jayway.jsonpath.spi.json.GsonJsonProvider;
-import com.jayway.jsonpath.spi.mapper.GsonMappingProvider;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
 import com.ning.http.client.AsyncHttpClient;
@@ -36,7 +32,6 @@ import com.stratio.qa.conditions.Conditions;
 import com.stratio.qa.utils.*;
 import cucumber.api.DataTable;
 import org.apache.commons.collections.IteratorUtils;
-import org.apache.commons.io.FileUtils;
 import org.assertj.core.api.Assertions;
 import org.assertj.core.api.Condition;
 import org.hjson.JsonArray;
@@ -49,18 +44,24 @@ import org.openqa.selenium.*;
 import org.openqa.selenium.interactions.Actions;
 import org.openqa.selenium.internal.Locatable;
 import org.openqa.selenium.remote.RemoteWebDriver;
-import org.reflections.Reflections;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
 import java.io.*;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.Timestamp;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -69,10 +70,19 @@ import static org.testng.Assert.fail;
 
 public class CommonG {
 
-    private static final long DEFAULT_CURRENT_TIME = 1000L;
-
     private static final int DEFAULT_SLEEP_TIME = 1500;
 
+    private static final int SCROLL_POLL_TIME = 100;
+
+    private static final EvidenceStore EVIDENCE_STORE = new EvidenceStore(new File(System.getProperty("BDT_EVIDENCE_STORE", "./target/executions/.store")));
+
+    private static final String DEFAULT_MONGO_BATCH_SIZE = "1000";
+
+    private static final Map<String, Field> PREVIOUS_ELEMENT_FIELDS = new ConcurrentHashMap<>();
+
+    private static final Map<String, BodyTemplate> BODY_TEMPLATES = Collections.synchronizedMap(
+            new LruMap<String, BodyTemplate>(Integer.parseInt(System.getProperty("REQUEST_TEMPLATES_CACHE", "64"))));
+
     private final Logger logger = LoggerFactory.getLogger(ThreadProperty.get("class"));
 
     private RemoteWebDriver driver = null;
@@ -91,6 +101,8 @@ public class CommonG {
 
     private ResultSet previousCassandraResults;
 
+    private String cassandraCluster = CassandraUtil.DEFAULT_CLUSTER;
+
     private DBCursor previousMongoResults;
 
     private List<JSONObject> previousElasticsearchResults;
@@ -117,10 +129,16 @@ public class CommonG {
 
     private String commandResult;
 
+    private LocalCommand localCommand;
+
+    private ElementSnapshot lastElementSnapshot;
+
     private String restProtocol;
 
     private ZookeeperSecUtils zkSecClient;
 
+    private final JsonPathCache jsonPathCache = new JsonPathCache();
+
     /**
      * Checks if a given string matches a regular expression or contains a string
      *
@@ -254,12 +272,21 @@ public class CommonG {
     }
 
     /**
-     * Get the cassandra utils.
+     * Get the cassandra utils of the cluster used by the scenario.
      *
      * @return CassandraUtils
      */
     public CassandraUtils getCassandraClient() {
-        return CassandraUtil.INSTANCE.getCassandraUtils();
+        return CassandraUtil.INSTANCE.getCassandraUtils(cassandraCluster);
+    }
+
+    /**
+     * Set the named cassandra cluster used by the scenario.
+     *
+     * @param cassandraCluster cluster name
+     */
+    public void setCassandraCluster(String cassandraCluster) {
+        this.cassandraCluster = cassandraCluster;
     }
 
     /**
@@ -350,35 +377,58 @@ public class CommonG {
      */
     public List<WebElement> locateElement(String method, String element,
                                           Integer expectedCount) throws ClassNotFoundException, NoSuchFieldException, SecurityException, IllegalArgumentException, IllegalAccessException {
+        long timeout = Long.parseLong(System.getProperty("BDT_LOOKUP_TIMEOUT", String.valueOf(HookGSpec.IMPLICITLY_WAIT)));
+        return locateElement(method, element, expectedCount, TimeUnit.SECONDS.toMillis(timeout));
+    }
 
-        List<WebElement> wel = null;
-
-        if ("id".equals(method)) {
-            logger.debug("Locating {} by id", element);
-            wel = this.getDriver().findElements(By.id(element));
-        } else if ("name".equals(method)) {
-            logger.debug("Locating {} by name", element);
-            wel = this.getDriver().findElements(By.name(element));
-        } else if ("class".equals(method)) {
-            logger.debug("Locating {} by class", element);
-            wel = this.getDriver().findElements(By.className(element));
-        } else if ("xpath".equals(method)) {
-            logger.debug("Locating {} by xpath", element);
-            wel = this.getDriver().findElements(By.xpath(element));
-        } else if ("css".equals(method)) {
-            wel = this.getDriver().findElements(By.cssSelector(element));
-        } else {
+    /**
+     * Looks for webelements inside a selenium context, waiting up to {@code timeout} millis
+     * for the page to hold {@code expectedCount} of them (at least one if -1).
+     *
+     * @param method class of element to be searched
+     * @param element webElement searched in selenium context
+     * @param expectedCount integer. Expected number of elements.
+     * @param timeout millis to wait for the expected elements
+     * @return List(WebElement)
+     */
+    public List<WebElement> locateElement(String method, String element, Integer expectedCount, long timeout) {
+        if (!("id".equals(method) || "name".equals(method) || "class".equals(method) || "xpath".equals(method)
+                || "css".equals(method))) {
             fail("Unknown search method: " + method);
         }
+        logger.debug("Locating {} by {}", element, method);
+
+        List<WebElement> wel = findElements(method, element);
+        if (!matchesCount(wel, expectedCount) && timeout > 0) {
+            logger.debug("Waiting up to {} ms for {} elements {}", timeout, expectedCount, element);
+            new DomWait(method, element).count(expectedCount).await(this.getDriver(), timeout);
+            wel = findElements(method, element);
+        }
 
         if (expectedCount != -1) {
-            PreviousWebElements pwel = new PreviousWebElements(wel);
+            PreviousWebElements pwel = new PreviousWebElements(wel, lastElementSnapshot);
             assertThat(this, pwel).as("Element count doesnt match").hasSize(expectedCount);
         }
 
         return wel;
     }
 
+    private List<WebElement> findElements(String method, String element) {
+        lastElementSnapshot = null;
+        try {
+            ElementSnapshot snapshot = ElementSnapshot.take(this.getDriver(), method, element);
+            lastElementSnapshot = snapshot;
+            return snapshot.getElements();
+        } catch (WebDriverException e) {
+            logger.debug("Element snapshot not available, locating {} through webdriver: {}", element, e.getMessage());
+        }
+        return this.getDriver().findElements(DomWait.by(method, element));
+    }
+
+    private static boolean matchesCount(List<WebElement> wel, Integer expectedCount) {
+        return expectedCount == -1 ? !wel.isEmpty() : wel.size() == expectedCount;
+    }
+
      /**
      * Capture a snapshot or an evidence in the driver
      *
@@ -441,27 +491,26 @@ public class CommonG {
             }
 
             if (!outputFile.equals("")) {
-                String source = ((RemoteWebDriver) driver).getPageSource();
-
-                File fout = new File(outputFile);
-                boolean dirs = fout.getParentFile().mkdirs();
-
-                FileOutputStream fos;
-                try {
-                    fos = new FileOutputStream(fout, true);
-                    Writer out = new OutputStreamWriter(fos, "UTF8");
-                    PrintWriter writer = new PrintWriter(out, false);
-                    writer.append(source);
-                    writer.close();
-                    out.close();
-                } catch (IOException e) {
-                    logger.error("Exception on evidence capture", e);
-                }
+                final String source = ((RemoteWebDriver) driver).getPageSource();
+                final File fout = new File(outputFile);
+
+                EvidenceWriter.INSTANCE.submit(outputFile, new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        EVIDENCE_STORE.store(source.getBytes("UTF8"), ".html", fout);
+                        return null;
+                    }
+                });
             }
 
         } else if ("screenCapture".equals(type)) {
+            if (HtmlUnitCommandExecutor.isHtmlUnit(driver)) {
+                logger.debug("Screenshots not available in the {} backend", HtmlUnitCommandExecutor.BACKEND);
+                return "";
+            }
             outputFile = outputFile + ".png";
-            File file = null;
+            final List<byte[]> capture;
+            final int trailingImageHeight;
             driver.switchTo().defaultContent();
             ((Locatable) driver.findElement(By.tagName("body")))
                     .getCoordinates().inViewPort();
@@ -472,98 +521,60 @@ public class CommonG {
                 actions.keyDown(Keys.CONTROL).sendKeys(Keys.HOME).perform();
                 actions.keyUp(Keys.CONTROL).perform();
 
-                file = chromeFullScreenCapture(driver);
+                capture = new ArrayList<byte[]>();
+                trailingImageHeight = chromeFullScreenCapture(driver, capture);
             } else {
-                file = ((TakesScreenshot) driver)
-                        .getScreenshotAs(OutputType.FILE);
-            }
-            try {
-                FileUtils.copyFile(file, new File(outputFile));
-            } catch (IOException e) {
-                logger.error("Exception on copying browser screen capture", e);
+                capture = Collections.singletonList(((TakesScreenshot) driver)
+                        .getScreenshotAs(OutputType.BYTES));
+                trailingImageHeight = 0;
             }
+
+            final File fout = new File(outputFile);
+            EvidenceWriter.INSTANCE.submit(outputFile, new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    if (capture.size() == 1 && trailingImageHeight == 0) {
+                        EVIDENCE_STORE.store(capture.get(0), ".png", fout);
+                    } else {
+                        EVIDENCE_STORE.store(new EvidenceStore.Content() {
+                            @Override
+                            public void writeTo(OutputStream output) throws IOException {
+                                ScreenshotStitcher.stitch(capture, trailingImageHeight, output);
+                            }
+                        }, ".png", fout);
+                    }
+                    return null;
+                }
+            });
         }
 
         return outputFile;
 
     }
 
-    private File adjustLastCapture(Integer newTrailingImageHeight,
-                                   List<File> capture) {
-        // cuts last image just in case it dupes information
-        Integer finalHeight = 0;
-        Integer finalWidth = 0;
-
-        File trailingImage = capture.get(capture.size() - 1);
-        capture.remove(capture.size() - 1);
-
-        BufferedImage oldTrailingImage;
-        File temp = null;
-        try {
-            oldTrailingImage = ImageIO.read(trailingImage);
-            BufferedImage newTrailingImage = new BufferedImage(
-                    oldTrailingImage.getWidth(), oldTrailingImage.getHeight()
-                    - newTrailingImageHeight,
-                    BufferedImage.TYPE_INT_RGB);
-
-            newTrailingImage.createGraphics().drawImage(oldTrailingImage, 0,
-                    0 - newTrailingImageHeight, null);
-
-            File newTrailingImageF = File.createTempFile("tmpnewTrailingImage",
-                    ".png");
-            newTrailingImageF.deleteOnExit();
-
-            ImageIO.write(newTrailingImage, "png", newTrailingImageF);
-
-            capture.add(newTrailingImageF);
-
-            finalWidth = ImageIO.read(capture.get(0)).getWidth();
-            for (File cap : capture) {
-                finalHeight += ImageIO.read(cap).getHeight();
-            }
-
-            BufferedImage img = new BufferedImage(finalWidth, finalHeight,
-                    BufferedImage.TYPE_INT_RGB);
-
-            Integer y = 0;
-            BufferedImage tmpImg = null;
-            for (File cap : capture) {
-                tmpImg = ImageIO.read(cap);
-                img.createGraphics().drawImage(tmpImg, 0, y, null);
-                y += tmpImg.getHeight();
-            }
-
-            long ts = System.currentTimeMillis() / DEFAULT_CURRENT_TIME;
-
-            temp = File.createTempFile("chromecap" + Long.toString(ts), ".png");
-            temp.deleteOnExit();
-            ImageIO.write(img, "png", temp);
-
-        } catch (IOException e) {
-            logger.error("Cant read image", e);
-        }
-        return temp;
-    }
-
-    private File chromeFullScreenCapture(WebDriver driver) {
+    /**
+     * Grab the whole page as screenshots taken while scrolling down.
+     *
+     * @param driver  driver used for testing
+     * @param capture list receiving the png screenshots
+     * @return pixels of the last screenshot already shown in the previous one
+     */
+    private int chromeFullScreenCapture(WebDriver driver, List<byte[]> capture) {
         driver.switchTo().defaultContent();
         // scroll loop n times to get the whole page if browser is chrome
-        ArrayList<File> capture = new ArrayList<File>();
-
         Boolean atBottom = false;
         Integer windowSize = ((Long) ((JavascriptExecutor) driver)
                 .executeScript("return document.documentElement.clientHeight"))
                 .intValue();
 
         Integer accuScroll = 0;
-        Integer newTrailingImageHeight = 0;
 
         try {
             while (!atBottom) {
 
-                Thread.sleep(DEFAULT_SLEEP_TIME);
+                waitForScroll(driver);
                 capture.add(((TakesScreenshot) driver)
-                        .getScreenshotAs(OutputType.FILE));
+                        .getScreenshotAs(OutputType.BYTES));
 
                 ((JavascriptExecutor) driver).executeScript("if(window.screen)"
                         + " {window.scrollBy(0," + windowSize + ");};");
@@ -578,8 +589,23 @@ public class CommonG {
             logger.error("Interrupted waits among scrolls", e);
         }
 
-        newTrailingImageHeight = accuScroll - getDocumentHeight(driver);
-        return adjustLastCapture(newTrailingImageHeight, capture);
+        return accuScroll - getDocumentHeight(driver);
+    }
+
+    /**
+     * Wait until the scroll position stops changing, at most DEFAULT_SLEEP_TIME millis.
+     */
+    private void waitForScroll(WebDriver driver) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + DEFAULT_SLEEP_TIME;
+        Object previous = null;
+        while (System.currentTimeMillis() < deadline) {
+            Object offset = ((JavascriptExecutor) driver).executeScript("return window.pageYOffset");
+            if (offset != null && offset.equals(previous)) {
+                return;
+            }
+            previous = offset;
+            Thread.sleep(SCROLL_POLL_TIME);
+        }
     }
 
     private Integer getDocumentHeight(WebDriver driver) {
@@ -587,6 +613,15 @@ public class CommonG {
         return body.getSize().getHeight();
     }
 
+    /**
+     * Snapshot taken by the last {@link #locateElement(String, String, Integer)}, if any.
+     *
+     * @return snapshot or null if the elements were located through webdriver calls
+     */
+    public ElementSnapshot getLastElementSnapshot() {
+        return lastElementSnapshot;
+    }
+
     /**
      * Returns the previous webElement
      *
@@ -782,143 +817,16 @@ public class CommonG {
      */
     public String modifyData(String data, String type, DataTable modifications) throws Exception {
         String modifiedData = data;
-        String typeJsonObject = "";
-        String nullValue = "";
-
-        JSONArray jArray;
-        JSONObject jObject;
-        Double jNumber;
-        Boolean jBoolean;
 
         if ("json".equals(type)) {
-            LinkedHashMap jsonAsMap = new LinkedHashMap();
-            for (int i = 0; i < modifications.raw().size(); i++) {
-                String composeKey = modifications.raw().get(i).get(0);
-                String operation = modifications.raw().get(i).get(1);
-                String newValue = modifications.raw().get(i).get(2);
-
-                if (modifications.raw().get(0).size() == 4) {
-                    typeJsonObject = modifications.raw().get(i).get(3);
-                }
-
-                JsonObject object = new JsonObject(JsonValue.readHjson(modifiedData).asObject());
-                removeNulls(object);
-                modifiedData = JsonValue.readHjson(object.toString()).toString();
-
-                switch (operation.toUpperCase()) {
-                    case "DELETE":
-                        jsonAsMap = JsonPath.parse(modifiedData).delete(composeKey).json();
-                        break;
-                    case "ADD":
-                        // Get the last key
-                        String newKey;
-                        String newComposeKey;
-                        if (composeKey.contains(".")) {
-                            newKey = composeKey.substring(composeKey.lastIndexOf('.') + 1);
-                            newComposeKey = composeKey.substring(0, composeKey.lastIndexOf('.'));
-                        } else {
-                            newKey = composeKey;
-                            newComposeKey = "$";
-                        }
-                        jsonAsMap = JsonPath.parse(modifiedData).put(newComposeKey, newKey, newValue).json();
-                        break;
-                    case "UPDATE":
-                        jsonAsMap = JsonPath.parse(modifiedData).set(composeKey, newValue).json();
-                        break;
-                    case "APPEND":
-                        String appendValue = JsonPath.parse(modifiedData).read(composeKey);
-                        jsonAsMap = JsonPath.parse(modifiedData).set(composeKey, appendValue + newValue).json();
-                        break;
-                    case "PREPEND":
-                        String prependValue = JsonPath.parse(modifiedData).read(composeKey);
-                        jsonAsMap = JsonPath.parse(modifiedData).set(composeKey, newValue + prependValue).json();
-                        break;
-                    case "REPLACE":
-                        if ("array".equals(typeJsonObject)) {
-                            jArray = new JSONArray();
-                            if (!"[]".equals(newValue)) {
-                                jArray = new JSONArray(newValue);
-                            }
-                            jsonAsMap = JsonPath.parse(modifiedData).set(composeKey, jArray).json();
-                            break;
-                        } else if ("object".equals(typeJsonObject)) {
-                            jObject = new JSONObject();
-                            if (!"{}".equals(newValue)) {
-                                jObject = new JSONObject(newValue);
-                            }
-                            jsonAsMap = JsonPath.parse(modifiedData).set(composeKey, jObject).json();
-                            break;
-                        } else if ("string".equals(typeJsonObject)) {
-                            jsonAsMap = JsonPath.parse(modifiedData).set(composeKey, newValue).json();
-                            break;
-
-                        } else if ("number".equals(typeJsonObject)) {
-                            jNumber = new Double(newValue);
-                            jsonAsMap = JsonPath.parse(modifiedData).set(composeKey, jNumber).json();
-                            break;
-
-                        } else if ("boolean".equals(typeJsonObject)) {
-                            jBoolean = new Boolean(newValue);
-                            jsonAsMap = JsonPath.parse(modifiedData).set(composeKey, jBoolean).json();
-                            break;
-
-                        } else if ("null".equals(typeJsonObject)) {
-                            nullValue = JsonPath.parse(modifiedData).set(composeKey, null).jsonString();
-                            break;
-
-                        } else {
-                            String replaceValue = JsonPath.parse(modifiedData).read(composeKey);
-                            String toBeReplaced = newValue.split("->")[0];
-                            String replacement = newValue.split("->")[1];
-                            newValue = replaceValue.replace(toBeReplaced, replacement);
-                            jsonAsMap = JsonPath.parse(modifiedData).set(composeKey, newValue).json();
-                            break;
-                        }
-                    case "ADDTO":
-                        if ("array".equals(typeJsonObject)) {
-                            jArray = new JSONArray();
-                            if (!"[]".equals(newValue)) {
-                                jArray = new JSONArray(newValue);
-                            }
-                            jsonAsMap = JsonPath.parse(modifiedData).add(composeKey, jArray).json();
-                            break;
-                        } else if ("object".equals(typeJsonObject)) {
-                            jObject = new JSONObject();
-                            if (!"{}".equals(newValue)) {
-                                jObject = new JSONObject(newValue);
-                            }
-                            jsonAsMap = JsonPath.parse(modifiedData).add(composeKey, jObject).json();
-                            break;
-                        } else if ("string".equals(typeJsonObject)) {
-                            jsonAsMap = JsonPath.parse(modifiedData).add(composeKey, newValue).json();
-                            break;
-                        } else if ("number".equals(typeJsonObject)) {
-                            jNumber = new Double(newValue);
-                            jsonAsMap = JsonPath.parse(modifiedData).add(composeKey, jNumber).json();
-                            break;
-                        } else if ("boolean".equals(typeJsonObject)) {
-                            jBoolean = new Boolean(newValue);
-                            jsonAsMap = JsonPath.parse(modifiedData).add(composeKey, jBoolean).json();
-                            break;
-                        } else if ("null".equals(typeJsonObject)) {
-                            nullValue = JsonPath.parse(modifiedData).add(composeKey, null).jsonString();
-                            break;
-                        } else {
-                            // TO-DO: understand  newValue.split("->")[0];  and  newValue.split("->")[1];
-                            break;
-                        }
-                    case "HEADER":
-                        this.headers.put(composeKey, newValue);
-                        break;
-                    default:
-                        throw new Exception("Modification type does not exist: " + operation);
-                }
-
-                modifiedData = new JSONObject(jsonAsMap).toString();
-                if (!"".equals(nullValue)) {
-                    modifiedData = nullValue;
-                }
-                modifiedData = modifiedData.replaceAll("\"TO_BE_NULL\"", "null");
+            RequestTemplate template = new RequestTemplate(modifications.raw());
+            if (template.modifiesBody()) {
+                // Every modification is applied over the same tree, which is serialized once at the end
+                DocumentContext document = JsonDocuments.parse(modifiedData);
+                template.apply(document, this.headers);
+                modifiedData = document.jsonString();
+            } else {
+                template.apply(null, this.headers);
             }
         } else {
             for (int i = 0; i < modifications.raw().size(); i++) {
@@ -952,6 +860,59 @@ public class CommonG {
         return modifiedData;
     }
 
+    /**
+     * Returns the json in file passed as parameter with the modifications applied, as
+     * {@link #modifyData(String, String, DataTable)} does.
+     * <p>
+     * The file and the layout of the table are compiled once into a {@link BodyTemplate}, kept
+     * while the file keeps its modification time and size, so later calls only bind the values
+     * of the table.
+     *
+     * @param baseData      path to file to be read
+     * @param modifications modifications to apply
+     * @return UTF-8 json
+     * @throws Exception
+     */
+    public byte[] renderRequestBody(String baseData, DataTable modifications) throws Exception {
+        URL resource = getClass().getClassLoader().getResource(baseData);
+        if (resource == null) {
+            return modifyData(retrieveData(baseData, "json"), "json", modifications).getBytes(StandardCharsets.UTF_8);
+        }
+        List<List<String>> rows = modifications.raw();
+        String key = baseData + '\n' + lastModified(resource) + '\n' + BodyTemplate.layout(rows);
+        BodyTemplate template = BODY_TEMPLATES.get(key);
+        if (template == null) {
+            template = new BodyTemplate(retrieveData(baseData, "json"), rows);
+            BODY_TEMPLATES.put(key, template);
+        }
+        return template.render(rows, this.headers);
+    }
+
+    private static String lastModified(URL resource) throws URISyntaxException, IOException {
+        if ("file".equals(resource.getProtocol())) {
+            Path file = Paths.get(resource.toURI());
+            return Files.getLastModifiedTime(file).to(TimeUnit.NANOSECONDS) + ":" + Files.size(file);
+        }
+        // Resources inside jars do not change
+        return "";
+    }
+
+    /**
+     * Discard the compiled request bodies of a file, after it has been written.
+     *
+     * @param baseData path to file
+     */
+    public void forgetRequestBodies(String baseData) {
+        synchronized (BODY_TEMPLATES) {
+            Iterator<String> keys = BODY_TEMPLATES.keySet().iterator();
+            while (keys.hasNext()) {
+                if (keys.next().startsWith(baseData + '\n')) {
+                    keys.remove();
+                }
+            }
+        }
+    }
+
     /**
      * Eliminates null occurrences, replacing them with "TO_BE_NULL"
      *
@@ -1002,6 +963,26 @@ public class CommonG {
      * @throws Exception exception
      */
     public Future<Response> generateRequest(String requestType, boolean secure, String user, String password, String endPoint, String data, String type) throws Exception {
+        return sendRequest(requestType, user, password, endPoint, data, null, type);
+    }
+
+    /**
+     * Generates the request based on the type of request, the end point, the body and type passed
+     *
+     * @param requestType type of request to be sent
+     * @param secure      type of protocol
+     * @param user        user to be used in request
+     * @param password    password to be used in request
+     * @param endPoint    end point to sent the request to
+     * @param body        UTF-8 body to be sent for PUT/POST requests
+     * @param type        type of data to be sent (json|string)
+     * @throws Exception exception
+     */
+    public Future<Response> generateRawRequest(String requestType, boolean secure, String user, String password, String endPoint, byte[] body, String type) throws Exception {
+        return sendRequest(requestType, user, password, endPoint, null, body, type);
+    }
+
+    private Future<Response> sendRequest(String requestType, String user, String password, String endPoint, String data, byte[] body, String type) throws Exception {
 
         String protocol = this.getRestProtocol();
         Future<Response> response = null;
@@ -1023,6 +1004,16 @@ public class CommonG {
 
         String restURL = protocol + this.getRestHost() + this.getRestPort();
 
+        // Answer from the feature cassette, if any, without touching the network
+        HttpCassette cassette = HttpCassette.forCurrentFeature();
+        if (cassette != null && body != null) {
+            data = new String(body, StandardCharsets.UTF_8);
+        }
+        if (cassette != null && cassette.isReplay()) {
+            this.getLogger().debug("Replaying request {} to {}", requestType, endPoint);
+            return cassette.replay(requestType, endPoint, data, type);
+        }
+
         // Setup user and password for requests
         if (user != null) {
             realm = new Realm.RealmBuilder()
@@ -1103,11 +1094,11 @@ public class CommonG {
                 response = request.execute();
                 break;
             case "POST":
-                if (data == null) {
+                if (data == null && body == null) {
                     Exception missingFields = new Exception("Missing fields in request.");
                     throw missingFields;
                 } else {
-                    request = this.getClient().preparePost(restURL + endPoint).setBody(data);
+                    request = setBody(this.getClient().preparePost(restURL + endPoint), data, body);
                     if ("json".equals(type)) {
                         request = request.setHeader("Content-Type", "application/json");
                     } else if ("string".equals(type)) {
@@ -1144,11 +1135,11 @@ public class CommonG {
                     break;
                 }
             case "PUT":
-                if (data == null) {
+                if (data == null && body == null) {
                     Exception missingFields = new Exception("Missing fields in request.");
                     throw missingFields;
                 } else {
-                    request = this.getClient().preparePut(restURL + endPoint).setBody(data);
+                    request = setBody(this.getClient().preparePut(restURL + endPoint), data, body);
                     if ("json".equals(type)) {
                         request = request.setHeader("Content-Type", "application/json");
                     } else if ("string".equals(type)) {
@@ -1193,9 +1184,23 @@ public class CommonG {
             default:
                 throw new Exception("Operation not valid: " + requestType);
         }
+
+        if (cassette != null) {
+            Map<String, String> requestHeaders = new HashMap<>(this.headers);
+            if ("json".equals(type)) {
+                requestHeaders.put("Content-Type", "application/json");
+            } else if ("string".equals(type)) {
+                requestHeaders.put("Content-Type", "application/x-www-form-urlencoded");
+            }
+            response = cassette.record(requestType, endPoint, restURL + endPoint, data, type, requestHeaders, response);
+        }
         return response;
     }
 
+    private static BoundRequestBuilder setBody(BoundRequestBuilder request, String data, byte[] body) {
+        return body != null ? request.setBody(body) : request.setBody(data);
+    }
+
 
     /**
      * Generates the request based on the type of request, the end point, the data and type passed
@@ -1229,15 +1234,16 @@ public class CommonG {
      */
 
     public void setPreviousElement(String element, String value) throws NoSuchFieldException, SecurityException, IllegalArgumentException, IllegalAccessException, InstantiationException, ClassNotFoundException, NoSuchMethodException, InvocationTargetException {
-        Reflections reflections = new Reflections("com.stratio");
-        Set classes = reflections.getSubTypesOf(CommonG.class);
-
-        Object pp = (classes.toArray())[0];
-        String qq = (pp.toString().split(" "))[1];
-        Class<?> c = Class.forName(qq.toString());
-
-        Field ff = c.getDeclaredField(element);
-        ff.setAccessible(true);
+        Field ff = PREVIOUS_ELEMENT_FIELDS.get(element);
+        if (ff == null) {
+            Set<Class<? extends CommonG>> classes = ClasspathIndex.INSTANCE.getSubTypesOf(CommonG.class);
+            if (classes.isEmpty()) {
+                throw new ClassNotFoundException("No class extending " + CommonG.class.getName() + " found");
+            }
+            ff = classes.iterator().next().getDeclaredField(element);
+            ff.setAccessible(true);
+            PREVIOUS_ELEMENT_FIELDS.put(element, ff);
+        }
         ff.set(null, value);
     }
 
@@ -1314,57 +1320,25 @@ public class CommonG {
      */
     public void resultsMustBeCSV(DataTable expectedResults) throws Exception {
         if (getCSVResults() != null) {
-            //Map for cucumber expected results
-            List<Map<String, Object>> resultsListExpected = new ArrayList<Map<String, Object>>();
-            Map<String, Object> resultsCucumber;
-
-            for (int e = 1; e < expectedResults.getGherkinRows().size(); e++) {
-                resultsCucumber = new HashMap<String, Object>();
-
-                for (int i = 0; i < expectedResults.getGherkinRows().get(0).getCells().size(); i++) {
-                    resultsCucumber.put(expectedResults.getGherkinRows().get(0).getCells().get(i), expectedResults.getGherkinRows().get(e).getCells().get(i));
-
+            ResultsMatcher matcher = new ResultsMatcher(expectedResults.raw());
+            getLogger().debug("Expected Results: {}", expectedResults.raw());
+
+            List<Map<String, String>> results = getCSVResults();
+            if (!results.isEmpty()) {
+                for (String column : matcher.getColumns()) {
+                    if (!results.get(0).containsKey(column)) {
+                        throw new Exception("Column " + column + " not found in CSV results");
+                    }
                 }
-                resultsListExpected.add(resultsCucumber);
             }
-            getLogger().debug("Expected Results: " + resultsListExpected.toString());
-
-            getLogger().debug("Obtained Results: " + getCSVResults().toString());
-
-            //Comparisons
-            int occurrencesObtained = 0;
-            int iterations = 0;
-            int occurrencesExpected = 0;
-            String nextKey;
-            for (int e = 0; e < resultsListExpected.size(); e++) {
-                iterations = 0;
-                occurrencesObtained = 0;
-                occurrencesExpected = Integer.parseInt(resultsListExpected.get(e).get("occurrences").toString());
-
-                List<Map<String, String>> results = getCSVResults();
-                for (Map<String, String> result : results) {
-                    Iterator<String> it = resultsListExpected.get(0).keySet().iterator();
-
-                    while (it.hasNext()) {
-                        nextKey = it.next();
-                        if (!nextKey.equals("occurrences")) {
-                            if (result.get(nextKey).toString().equals(resultsListExpected.get(e).get(nextKey).toString())) {
-                                iterations++;
-                            }
-                        }
-
-                        if (iterations == resultsListExpected.get(0).keySet().size() - 1) {
-                            occurrencesObtained++;
-                            iterations = 0;
-                        }
-                    }
-                    iterations = 0;
+            for (Map<String, String> result : results) {
+                List<String> key = new ArrayList<String>(matcher.getColumns().size());
+                for (String column : matcher.getColumns()) {
+                    key.add(ResultsMatcher.csv(result.get(column)));
                 }
-
-                assertThat(occurrencesExpected).overridingErrorMessage("In row " + e + " have been found "
-                        + occurrencesObtained + " results and " + occurrencesExpected + " were expected").isEqualTo(occurrencesObtained);
+                matcher.add(key);
             }
-
+            matcher.verify();
         } else {
             throw new Exception("You must execute a query before trying to get results");
         }
@@ -1388,73 +1362,27 @@ public class CommonG {
      */
     public void resultsMustBeCassandra(DataTable expectedResults) throws Exception {
         if (getCassandraResults() != null) {
-            //Map for query results
-            ColumnDefinitions columns = getCassandraResults().getColumnDefinitions();
-            List<Row> rows = getCassandraResults().all();
-
-            List<Map<String, Object>> resultsListObtained = new ArrayList<Map<String, Object>>();
-            Map<String, Object> results;
-
-            for (int i = 0; i < rows.size(); i++) {
-                results = new HashMap<String, Object>();
-                for (int e = 0; e < columns.size(); e++) {
-                    results.put(columns.getName(e), rows.get(i).getObject(e));
-
-                }
-                resultsListObtained.add(results);
-
-            }
-            getLogger().debug("Results: " + resultsListObtained.toString());
-            //Map for cucumber expected results
-            List<Map<String, Object>> resultsListExpected = new ArrayList<Map<String, Object>>();
-            Map<String, Object> resultsCucumber;
-
-            for (int e = 1; e < expectedResults.getGherkinRows().size(); e++) {
-                resultsCucumber = new HashMap<String, Object>();
-
-                for (int i = 0; i < expectedResults.getGherkinRows().get(0).getCells().size(); i++) {
-                    resultsCucumber.put(expectedResults.getGherkinRows().get(0).getCells().get(i), expectedResults.getGherkinRows().get(e).getCells().get(i));
+            ResultsMatcher matcher = new ResultsMatcher(expectedResults.raw());
+            getLogger().debug("Expected Results: {}", expectedResults.raw());
 
+            ColumnDefinitions columns = getCassandraResults().getColumnDefinitions();
+            int[] indexes = new int[matcher.getColumns().size()];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = columns.getIndexOf(matcher.getColumns().get(i));
+                if (indexes[i] == -1) {
+                    throw new Exception("Column " + matcher.getColumns().get(i) + " not found in Cassandra results");
                 }
-                resultsListExpected.add(resultsCucumber);
             }
-            getLogger().debug("Expected Results: " + resultsListExpected.toString());
-
-            //Comparisons
-            int occurrencesObtained = 0;
-            int iterations = 0;
-            int occurrencesExpected = 0;
-            String nextKey;
-            for (int e = 0; e < resultsListExpected.size(); e++) {
-                iterations = 0;
-                occurrencesObtained = 0;
-                occurrencesExpected = Integer.parseInt(resultsListExpected.get(e).get("occurrences").toString());
-
-                for (int i = 0; i < resultsListObtained.size(); i++) {
-
-                    Iterator<String> it = resultsListExpected.get(0).keySet().iterator();
-
-                    while (it.hasNext()) {
-                        nextKey = it.next();
-                        if (!nextKey.equals("occurrences")) {
-                            if (resultsListObtained.get(i).get(nextKey).toString().equals(resultsListExpected.get(e).get(nextKey).toString())) {
-                                iterations++;
-                            }
-
-                        }
-
-                        if (iterations == resultsListExpected.get(0).keySet().size() - 1) {
-                            occurrencesObtained++;
-                            iterations = 0;
-                        }
-                    }
-
-                    iterations = 0;
+            // Rows are consumed as the driver fetches each page, so only one page is held in memory
+            for (Row row : getCassandraResults()) {
+                List<String> key = new ArrayList<String>(indexes.length);
+                for (int index : indexes) {
+                    key.add(ResultsMatcher.cql(row.getObject(index)));
                 }
-                assertThat(occurrencesExpected).overridingErrorMessage("In row " + e + " have been found "
-                        + occurrencesObtained + " results and " + occurrencesExpected + " were expected").isEqualTo(occurrencesObtained);
-
+                matcher.add(key);
             }
+            getLogger().debug("Obtained {} rows", matcher.getRows());
+            matcher.verify();
         } else {
             throw new Exception("You must execute a query before trying to get results");
         }
@@ -1478,70 +1406,22 @@ public class CommonG {
      */
     public void resultsMustBeMongo(DataTable expectedResults) throws Exception {
         if (getMongoResults() != null) {
-            //Map for cucumber expected results
-            List<Map<String, Object>> resultsListExpected = new ArrayList<Map<String, Object>>();
-            Map<String, Object> resultsCucumber;
-
-            for (int e = 1; e < expectedResults.getGherkinRows().size(); e++) {
-                resultsCucumber = new HashMap<String, Object>();
-
-                for (int i = 0; i < expectedResults.getGherkinRows().get(0).getCells().size(); i++) {
-                    resultsCucumber.put(expectedResults.getGherkinRows().get(0).getCells().get(i), expectedResults.getGherkinRows().get(e).getCells().get(i));
-
+            ResultsMatcher matcher = new ResultsMatcher(expectedResults.raw());
+            getLogger().debug("Expected Results: {}", expectedResults.raw());
+
+            // Documents are consumed batch by batch, in a single pass over the cursor
+            DBCursor cursor = getMongoResults();
+            cursor.batchSize(Integer.parseInt(System.getProperty("MONGO_BATCH_SIZE", DEFAULT_MONGO_BATCH_SIZE)));
+            while (cursor.hasNext()) {
+                DBObject row = cursor.next();
+                List<String> key = new ArrayList<String>(matcher.getColumns().size());
+                for (String column : matcher.getColumns()) {
+                    key.add(ResultsMatcher.bson(row.get(column)));
                 }
-                resultsListExpected.add(resultsCucumber);
+                matcher.add(key);
             }
-            getLogger().debug("Expected Results: " + resultsListExpected.toString());
-
-            //Comparisons
-            int occurrencesObtained = 0;
-            int iterations = 0;
-            int occurrencesExpected = 0;
-            String nextKey;
-            for (int e = 0; e < resultsListExpected.size(); e++) {
-                iterations = 0;
-                occurrencesObtained = 0;
-                occurrencesExpected = Integer.parseInt(resultsListExpected.get(e).get("occurrences").toString());
-
-                String resultsListObtained = "[";
-                DBCursor cursor = getMongoResults();
-                while (cursor.hasNext()) {
-
-                    DBObject row = cursor.next();
-
-                    resultsListObtained = resultsListObtained + row.toString();
-                    if (cursor.hasNext()) {
-                        resultsListObtained = ", " + resultsListObtained;
-                    }
-
-                    Iterator<String> it = resultsListExpected.get(0).keySet().iterator();
-
-                    while (it.hasNext()) {
-                        nextKey = it.next();
-                        if (!nextKey.equals("occurrences")) {
-                            if (row.get(nextKey).toString().equals(resultsListExpected.get(e).get(nextKey).toString())) {
-                                iterations++;
-                            }
-                        }
-
-                        if (iterations == resultsListExpected.get(0).keySet().size() - 1) {
-                            occurrencesObtained++;
-                            iterations = 0;
-                        }
-                    }
-                    iterations = 0;
-                    if (cursor.hasNext()) {
-                        resultsListObtained = resultsListObtained + ",";
-                    }
-                }
-
-                resultsListObtained = resultsListObtained + "]";
-                getLogger().debug("Results: " + resultsListObtained);
-
-                assertThat(occurrencesExpected).overridingErrorMessage("In row " + e + " have been found "
-                        + occurrencesObtained + " results and " + occurrencesExpected + " were expected").isEqualTo(occurrencesObtained);
-            }
-
+            getLogger().debug("Obtained {} documents", matcher.getRows());
+            matcher.verify();
         } else {
             throw new Exception("You must execute a query before trying to get results");
         }
@@ -1588,39 +1468,34 @@ public class CommonG {
     }
 
     /**
-     * Runs a command locally
+     * Runs a command locally, waiting at most BDT_COMMAND_TIMEOUT seconds (forever by default)
      *
      * @param command command used to be run locally
      */
     public void runLocalCommand(String command) throws Exception {
+        runLocalCommand(command, Long.parseLong(System.getProperty("BDT_COMMAND_TIMEOUT", "0")));
+    }
 
-        String result = "";
-        String line;
-        Process p;
+    /**
+     * Runs a command locally
+     *
+     * @param command command used to be run locally
+     * @param timeout seconds to wait before killing the command and its children, 0 waits forever
+     */
+    public void runLocalCommand(String command, long timeout) throws Exception {
+        LocalCommand local = new LocalCommand(command, timeout);
         try {
-            p = Runtime.getRuntime().exec(new String[]{"/bin/sh", "-c", command});
-            p.waitFor();
+            local.run();
         } catch (java.io.IOException e) {
+            this.localCommand = null;
             this.commandExitStatus = 1;
             this.commandResult = "Error";
             return;
         }
 
-        BufferedReader input = new BufferedReader(new InputStreamReader(p.getInputStream()));
-        while ((line = input.readLine()) != null) {
-            result += line;
-        }
-
-        input.close();
-        this.commandResult = result;
-        this.commandExitStatus = p.exitValue();
-
-        p.destroy();
-
-        if (p.isAlive()) {
-            p.destroyForcibly();
-        }
-
+        this.localCommand = local;
+        this.commandResult = local.getResult();
+        this.commandExitStatus = local.getExitStatus();
     }
 
     public int getCommandExitStatus() {
@@ -1689,7 +1564,7 @@ public class CommonG {
                 aux = matcher.group(1);
                 op = matcher.group(2);
             }
-            LinkedHashMap auxData = JsonPath.parse(jsonString).read(aux);
+            Map auxData = jsonPathCache.read(jsonString, aux);
             JSONObject json = new JSONObject(auxData);
             List<String> keys = IteratorUtils.toList(json.keys());
             List<String> stringKeys = new ArrayList<String>();
@@ -1717,17 +1592,16 @@ public class CommonG {
 
             }
         } else {
-            String result = JsonValue.readHjson(jsonString).toString();
-            Object data = JsonPath.parse(result).read(expr);
+            Object data = jsonPathCache.read(jsonString, expr);
             if (position != null) {
-                JSONArray jsonArray = new JSONArray(data.toString());
-                value = jsonArray.get(Integer.parseInt(position)).toString();
-            } else {
-                if (data instanceof LinkedHashMap) {
-                    value = (new JSONObject((LinkedHashMap) data)).toString();
+                if (data instanceof List) {
+                    value = JsonDocuments.toJson(((List) data).get(Integer.parseInt(position)));
                 } else {
-                    value = data.toString();
+                    // e.g. a string holding a json array
+                    value = new JSONArray(data.toString()).get(Integer.parseInt(position)).toString();
                 }
+            } else {
+                value = JsonDocuments.toJson(data);
             }
         }
         return value;
@@ -1742,11 +1616,7 @@ public class CommonG {
      */
 
     public String removeJSONPathElement(String jsonString, String expr) {
-
-        Configuration conf = Configuration.builder().jsonProvider(new GsonJsonProvider()).mappingProvider(new GsonMappingProvider()).build();
-        DocumentContext context = JsonPath.using(conf).parse(jsonString);
-        context.delete(expr);
-        return context.jsonString();
+        return JsonDocuments.parse(jsonString).delete(expr).jsonString();
     }
 
     /**
@@ -1758,7 +1628,7 @@ public class CommonG {
      * @param value      Value to replace key with
      */
     public String replaceJSONPathElement(String jsonString, String key, String value) {
-        return JsonPath.parse(jsonString).set(key, value).jsonString();
+        return JsonDocuments.parse(jsonString).set(key, value).jsonString();
     }
 
     /**
@@ -1825,17 +1695,21 @@ public class CommonG {
     }
 
     public String updateMarathonJson(String json) {
-        return removeJSONPathElement(removeJSONPathElement(removeJSONPathElement(json, ".versionInfo"), ".version"), ".uris.*");
+        return JsonDocuments.parse(json).delete(".versionInfo").delete(".version").delete(".uris.*").jsonString();
     }
 
     public void runCommandLoggerAndEnvVar(int exitStatus, String envVar, Boolean local) {
-        List<String> logOutput = Arrays.asList(this.getCommandResult().split("\n"));
-        StringBuffer log = new StringBuffer();
-        int logLastLines = 25;
-        if (logOutput.size() < 25) {
-            logLastLines = logOutput.size();
+        int logLastLines = LocalCommand.DEFAULT_TAIL_LINES;
+        List<String> logOutput;
+        if (local && localCommand != null) {
+            logOutput = localCommand.getTail(logLastLines);
+        } else {
+            logOutput = Arrays.asList(this.getCommandResult().split("\n"));
+            logOutput = logOutput.subList(Math.max(0, logOutput.size() - logLastLines), logOutput.size());
         }
-        for (String s : logOutput.subList(logOutput.size() - logLastLines, logOutput.size())) {
+        logLastLines = logOutput.size();
+        StringBuffer log = new StringBuffer();
+        for (String s : logOutput) {
             log.append(s).append("\n");
         }
 
@@ -1854,6 +1728,9 @@ public class CommonG {
             } else {
                 this.getLogger().error("Command last {} lines stdout:", logLastLines);
                 this.getLogger().error("{}", log);
+                if (local && localCommand != null && !localCommand.getErrorTail(LocalCommand.DEFAULT_TAIL_LINES).isEmpty()) {
+                    this.getLogger().error("Command last lines stderr:\n{}", String.join("\n", localCommand.getErrorTail(LocalCommand.DEFAULT_TAIL_LINES)));
+                }
             }
         } else {
             if (!("".equals(this.getCommandResult()))) {
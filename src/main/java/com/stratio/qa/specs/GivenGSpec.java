@@ -29,6 +29,7 @@ import org.assertj.core.api.Assertions;
 import org.openqa.selenium.WebElement;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.net.UnknownHostException;
 import java.util.*;
@@ -70,7 +71,7 @@ public class GivenGSpec extends BaseGSpec {
     @Given("^I create a Cassandra index named '(.+?)' in table '(.+?)' using magic_column '(.+?)' using keyspace '(.+?)'$")
     public void createBasicMapping(String index_name, String table, String column, String keyspace) throws Exception {
         String query = "CREATE INDEX " + index_name + " ON " + table + " (" + column + ");";
-        commonspec.getCassandraClient().executeQuery(query);
+        commonspec.getCassandraClient().executeQuery(keyspace, query);
     }
 
     /**
@@ -93,7 +94,6 @@ public class GivenGSpec extends BaseGSpec {
     public void connect(String clusterType, String url) throws DBException, UnknownHostException {
         switch (clusterType) {
             case "Cassandra":
-                commonspec.getCassandraClient().buildCluster();
                 commonspec.getCassandraClient().connect();
                 break;
             case "Mongo":
@@ -110,6 +110,21 @@ public class GivenGSpec extends BaseGSpec {
         }
     }
 
+    /**
+     * Connect to a named Cassandra cluster, used by the Cassandra steps of the rest of the scenario.
+     *
+     * @param name  cluster name
+     * @param hosts comma separated contact points
+     */
+    @Given("^I connect to Cassandra cluster '(.+?)' at '(.+?)'$")
+    public void connectToCassandra(String name, String hosts) {
+        commonspec.setCassandraCluster(name);
+        if (!commonspec.getCassandraClient().isConnected()) {
+            commonspec.getCassandraClient().setHost(hosts);
+        }
+        commonspec.getCassandraClient().connect();
+    }
+
     /**
      * Connect to ElasticSearch using custom parameters
      *
@@ -150,7 +165,6 @@ public class GivenGSpec extends BaseGSpec {
     @Given("^I create a Cassandra table named '(.+?)' using keyspace '(.+?)' with:$")
     public void createTableWithData(String table, String keyspace, DataTable datatable) {
         try {
-            commonspec.getCassandraClient().useKeyspace(keyspace);
             int attrLength = datatable.getGherkinRows().get(0).getCells().size();
             Map<String, String> columns = new HashMap<String, String>();
             ArrayList<String> pk = new ArrayList<String>();
@@ -165,7 +179,7 @@ public class GivenGSpec extends BaseGSpec {
             if (pk.isEmpty()) {
                 throw new Exception("A PK is needed");
             }
-            commonspec.getCassandraClient().createTableWithData(table, columns, pk);
+            commonspec.getCassandraClient().createTableWithData(keyspace, table, columns, pk);
         } catch (Exception e) {
             commonspec.getLogger().debug("Exception captured");
             commonspec.getLogger().debug(e.toString());
@@ -173,6 +187,27 @@ public class GivenGSpec extends BaseGSpec {
         }
     }
 
+    /**
+     * Insert synthetic rows, generated by column from a two column (name, generator) datatable:
+     * sequence[:start], uniform:min:max, zipf:n:exponent, text:length, timestamp[:from[:to]],
+     * uuid or partition:min:max.
+     *
+     * @param rows      number of rows
+     * @param keyspace  Cassandra keyspace
+     * @param table     Cassandra table
+     * @param datatable column generators
+     * @throws InterruptedException exception
+     */
+    @Given("^I generate '(\\d+?)' rows in keyspace '(.+?)' table '(.+?)' with:$")
+    public void generateData(String rows, String keyspace, String table, DataTable datatable) throws InterruptedException {
+        Map<String, String> generators = new LinkedHashMap<String, String>();
+        for (List<String> row : datatable.raw()) {
+            generators.put(row.get(0), row.get(1));
+        }
+        double throughput = commonspec.getCassandraClient().generateData(keyspace, table, generators, Long.parseLong(rows));
+        commonspec.getLogger().debug("Generated {} rows at {} rows/s", rows, Math.round(throughput));
+    }
+
     /**
      * Insert Data
      *
@@ -183,17 +218,8 @@ public class GivenGSpec extends BaseGSpec {
     @Given("^I insert in keyspace '(.+?)' and table '(.+?)' with:$")
     public void insertData(String keyspace, String table, DataTable datatable) {
         try {
-            commonspec.getCassandraClient().useKeyspace(keyspace);
-            int attrLength = datatable.getGherkinRows().get(0).getCells().size();
-            Map<String, Object> fields = new HashMap<String, Object>();
-            for (int e = 1; e < datatable.getGherkinRows().size(); e++) {
-                for (int i = 0; i < attrLength; i++) {
-                    fields.put(datatable.getGherkinRows().get(0).getCells().get(i), datatable.getGherkinRows().get(e).getCells().get(i));
-
-                }
-                commonspec.getCassandraClient().insertData(keyspace + "." + table, fields);
-
-            }
+            List<List<String>> rows = datatable.raw();
+            commonspec.getCassandraClient().insertData(keyspace, table, rows.get(0), rows.subList(1, rows.size()));
         } catch (Exception e) {
             commonspec.getLogger().debug("Exception captured");
             commonspec.getLogger().debug(e.toString());
@@ -679,6 +705,20 @@ public class GivenGSpec extends BaseGSpec {
     }
 
 
+    /**
+     * Insert the documents of a JSON lines file in a MongoDB collection.
+     *
+     * @param dataBase Mongo database
+     * @param collection Mongo collection
+     * @param path JSON lines file, one document per line
+     * @throws IOException exception
+     */
+    @Given("^I insert into MongoDB database '(.+?)' and collection '(.+?)' the documents from file '(.+?)'$")
+    public void insertJsonLinesOnMongoTable(String dataBase, String collection, String path) throws IOException {
+        commonspec.getMongoDBClient().connectToMongoDBDataBase(dataBase);
+        commonspec.getMongoDBClient().insertJsonLinesIntoMongoDBCollection(collection, path);
+    }
+
     /**
      * Insert document in a MongoDB table.
      *
@@ -19,8 +19,12 @@ package com.stratio.qa.specs;
 import com.ning.http.client.AsyncHttpClient;
 import com.ning.http.client.AsyncHttpClientConfig;
 import com.stratio.qa.exceptions.DBException;
+import com.stratio.qa.utils.HtmlUnitCommandExecutor;
+import com.stratio.qa.utils.SeleniumGrid;
 import com.stratio.qa.utils.ThreadProperty;
+import com.stratio.qa.utils.WebDriverPool;
 import com.thoughtworks.selenium.SeleniumException;
+import cucumber.api.Scenario;
 import cucumber.api.java.After;
 import cucumber.api.java.Before;
 import org.openqa.selenium.Dimension;
@@ -51,10 +55,16 @@ public class HookGSpec extends BaseGSpec {
 
     public static final int PAGE_LOAD_TIMEOUT = 120;
 
+    /**
+     * Default seconds for the driver implicit wait (SELENIUM_IMPLICIT_WAIT) and for bdt lookups waiting
+     * for elements (BDT_LOOKUP_TIMEOUT).
+     */
     public static final int IMPLICITLY_WAIT = 10;
 
     public static final int SCRIPT_TIMEOUT = 30;
 
+    private String sessionKey;
+
     /**
      * Default constructor.
      *
@@ -74,12 +84,18 @@ public class HookGSpec extends BaseGSpec {
 
 
     /**
-     * Connect to selenium.
+     * Connect to selenium. Scenarios tagged @htmlunit, or every scenario when
+     * -DBDT_BROWSER_BACKEND=htmlunit, run on an in-JVM browser instead of the grid.
      *
+     * @param scenario starting scenario
      * @throws MalformedURLException
      */
     @Before(order = ORDER_10, value = {"@mobile,@web"})
-    public void seleniumSetup() throws MalformedURLException {
+    public void seleniumSetup(Scenario scenario) throws MalformedURLException {
+        if (isHtmlUnit(scenario)) {
+            htmlUnitSetup();
+            return;
+        }
         String grid = System.getProperty("SELENIUM_GRID");
         if (grid == null) {
             fail("Selenium grid not available");
@@ -94,6 +110,7 @@ public class HookGSpec extends BaseGSpec {
         String version = b.split("_")[1];
         commonspec.setBrowserName(browser);
         commonspec.getLogger().debug("Setting up selenium for {}", browser);
+        sessionKey = b;
 
         DesiredCapabilities capabilities = null;
 
@@ -135,29 +152,84 @@ public class HookGSpec extends BaseGSpec {
         grid = "http://" + grid + "/wd/hub";
         HttpClient.Factory factory = new ApacheHttpClient.Factory(new HttpClientFactory(60000, 60000));
         HttpCommandExecutor executor = new HttpCommandExecutor(new HashMap<String, CommandInfo>(), new URL(grid), factory);
-        commonspec.setDriver(new RemoteWebDriver(executor, capabilities));
+        try {
+            if (WebDriverPool.INSTANCE.isEnabled()) {
+                RemoteWebDriver pooled = SeleniumGrid.INSTANCE.acquire(b, WebDriverPool.INSTANCE);
+                if (pooled != null) {
+                    commonspec.setDriver(pooled);
+                    return;
+                }
+            } else {
+                SeleniumGrid.INSTANCE.acquire(b);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SeleniumException("Interrupted while waiting for a free " + b + " slot", e);
+        }
+        try {
+            commonspec.setDriver(new RemoteWebDriver(executor, capabilities));
+        } catch (RuntimeException e) {
+            SeleniumGrid.INSTANCE.release(b);
+            throw e;
+        }
+        configureDriver(capabilities.getCapability("deviceName") == null);
+    }
+
+    private boolean isHtmlUnit(Scenario scenario) {
+        return HtmlUnitCommandExecutor.BACKEND.equals(System.getProperty("BDT_BROWSER_BACKEND"))
+                || scenario.getSourceTagNames().contains("@" + HtmlUnitCommandExecutor.BACKEND);
+    }
+
+    private void htmlUnitSetup() {
+        commonspec.setBrowserName(HtmlUnitCommandExecutor.BACKEND);
+        commonspec.getLogger().debug("Setting up selenium for {}", HtmlUnitCommandExecutor.BACKEND);
+        sessionKey = HtmlUnitCommandExecutor.BACKEND;
+
+        if (WebDriverPool.INSTANCE.isEnabled()) {
+            RemoteWebDriver pooled = WebDriverPool.INSTANCE.acquire(sessionKey);
+            if (pooled != null) {
+                commonspec.setDriver(pooled);
+                return;
+            }
+        }
+        commonspec.setDriver(HtmlUnitCommandExecutor.newDriver());
+        configureDriver(true);
+    }
+
+    private void configureDriver(boolean desktop) {
         commonspec.getDriver().manage().timeouts().pageLoadTimeout(PAGE_LOAD_TIMEOUT, TimeUnit.SECONDS);
-        commonspec.getDriver().manage().timeouts().implicitlyWait(IMPLICITLY_WAIT, TimeUnit.SECONDS);
+        commonspec.getDriver().manage().timeouts().implicitlyWait(Integer.parseInt(System.getProperty("SELENIUM_IMPLICIT_WAIT", String.valueOf(IMPLICITLY_WAIT))),
+                TimeUnit.SECONDS);
         commonspec.getDriver().manage().timeouts().setScriptTimeout(SCRIPT_TIMEOUT, TimeUnit.SECONDS);
 
         commonspec.getDriver().manage().deleteAllCookies();
-        if (capabilities.getCapability("deviceName") == null) {
+        if (desktop) {
             commonspec.getDriver().manage().window().setSize(new Dimension(1440, 900));
         }
         commonspec.getDriver().manage().window().maximize();
-
     }
 
 
     /**
-     * Close selenium web driver.
+     * Close selenium web driver, or give it back to the session pool if the scenario passed.
+     *
+     * @param scenario finished scenario
      */
     @After(order = ORDER_20, value = {"@mobile,@web"})
-    public void seleniumTeardown() {
+    public void seleniumTeardown(Scenario scenario) {
         if (commonspec.getDriver() != null) {
-            commonspec.getLogger().debug("Shutdown Selenium client");
-            commonspec.getDriver().close();
-            commonspec.getDriver().quit();
+            if (WebDriverPool.INSTANCE.isEnabled()) {
+                commonspec.getLogger().debug("Releasing Selenium client");
+                WebDriverPool.INSTANCE.release(sessionKey, commonspec.getDriver(), !scenario.isFailed());
+            } else {
+                commonspec.getLogger().debug("Shutdown Selenium client");
+                try {
+                    commonspec.getDriver().close();
+                    commonspec.getDriver().quit();
+                } finally {
+                    SeleniumGrid.INSTANCE.release(sessionKey);
+                }
+            }
         }
     }
 
@@ -19,9 +19,9 @@ package com.stratio.qa.specs;
 import com.datastax.driver.core.ColumnDefinitions;
 import com.datastax.driver.core.DataType;
 import com.datastax.driver.core.ResultSet;
-import com.datastax.driver.core.Row;
 import com.mongodb.DBObject;
 import com.stratio.qa.assertions.DBObjectsAssert;
+import com.stratio.qa.utils.DomWait;
 import com.stratio.qa.utils.PreviousWebElements;
 import com.stratio.qa.utils.ThreadProperty;
 import cucumber.api.DataTable;
@@ -35,6 +35,7 @@ import org.json.JSONArray;
 import org.openqa.selenium.WebElement;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 import static com.stratio.qa.assertions.Assertions.assertThat;
@@ -47,6 +48,8 @@ public class ThenGSpec extends BaseGSpec {
 
     public static final int VALUE_SUBSTRING = 3;
 
+    public static final long DEFAULT_SCHEMA_TIMEOUT = 2000;
+
     /**
      * Class constructor.
      *
@@ -87,38 +90,81 @@ public class ThenGSpec extends BaseGSpec {
     }
 
     /**
-     * Checks if a keyspaces exists in Cassandra.
+     * Checks if a keyspaces exists in Cassandra. A keyspace just created is waited for up to
+     * CASSANDRA_SCHEMA_TIMEOUT millis, until its schema change event arrives.
      *
      * @param keyspace
+     * @throws InterruptedException
      */
     @Then("^a Cassandra keyspace '(.+?)' exists$")
-    public void assertKeyspaceOnCassandraExists(String keyspace) {
+    public void assertKeyspaceOnCassandraExists(String keyspace) throws InterruptedException {
+        checkKeyspaceExists(schemaTimeout(), keyspace);
+    }
+
+    /**
+     * Checks if a keyspace is created in Cassandra within {@code timeout} seconds.
+     *
+     * @param timeout
+     * @param keyspace
+     * @throws InterruptedException
+     */
+    @Then("^in less than '(\\d+?)' seconds, a Cassandra keyspace '(.+?)' exists$")
+    public void assertKeyspaceOnCassandraExistsOnTimeOut(Integer timeout, String keyspace) throws InterruptedException {
+        checkKeyspaceExists(TimeUnit.SECONDS.toMillis(timeout), keyspace);
+    }
+
+    private void checkKeyspaceExists(long timeout, String keyspace) throws InterruptedException {
+        commonspec.getCassandraClient().getSchema().awaitKeyspace(keyspace, true, timeout);
         assertThat(commonspec.getCassandraClient().getKeyspaces()).as("The keyspace " + keyspace + "exists on cassandra").contains(keyspace);
     }
 
     /**
-     * Checks if a cassandra keyspace contains a table.
+     * Checks if a cassandra keyspace contains a table. A table just created is waited for up to
+     * CASSANDRA_SCHEMA_TIMEOUT millis, until its schema change event arrives.
      *
      * @param keyspace
      * @param tableName
+     * @throws InterruptedException
      */
     @Then("^a Cassandra keyspace '(.+?)' contains a table '(.+?)'$")
-    public void assertTableExistsOnCassandraKeyspace(String keyspace, String tableName) {
+    public void assertTableExistsOnCassandraKeyspace(String keyspace, String tableName) throws InterruptedException {
+        checkTableExists(schemaTimeout(), keyspace, tableName);
+    }
+
+    /**
+     * Checks if a table is created in a cassandra keyspace within {@code timeout} seconds.
+     *
+     * @param timeout
+     * @param keyspace
+     * @param tableName
+     * @throws InterruptedException
+     */
+    @Then("^in less than '(\\d+?)' seconds, a Cassandra keyspace '(.+?)' contains a table '(.+?)'$")
+    public void assertTableExistsOnCassandraKeyspaceOnTimeOut(Integer timeout, String keyspace, String tableName) throws InterruptedException {
+        checkTableExists(TimeUnit.SECONDS.toMillis(timeout), keyspace, tableName);
+    }
+
+    private void checkTableExists(long timeout, String keyspace, String tableName) throws InterruptedException {
+        commonspec.getCassandraClient().getSchema().awaitTable(keyspace, tableName, true, timeout);
         assertThat(commonspec.getCassandraClient().getTables(keyspace)).as("The table " + tableName + "exists on cassandra").contains(tableName);
     }
 
+    private static long schemaTimeout() {
+        return Long.parseLong(System.getProperty("CASSANDRA_SCHEMA_TIMEOUT", String.valueOf(DEFAULT_SCHEMA_TIMEOUT)));
+    }
+
     /**
      * Checks the number of rows in a cassandra table.
      *
      * @param keyspace
      * @param tableName
      * @param numberRows
+     * @throws InterruptedException
      */
     @Then("^a Cassandra keyspace '(.+?)' contains a table '(.+?)' with '(.+?)' rows$")
-    public void assertRowNumberOfTableOnCassandraKeyspace(String keyspace, String tableName, String numberRows) {
+    public void assertRowNumberOfTableOnCassandraKeyspace(String keyspace, String tableName, String numberRows) throws InterruptedException {
         Long numberRowsLong = Long.parseLong(numberRows);
-        commonspec.getCassandraClient().useKeyspace(keyspace);
-        assertThat(commonspec.getCassandraClient().executeQuery("SELECT COUNT(*) FROM " + tableName + ";").all().get(0).getLong(0)).as("The table " + tableName + "exists on cassandra").
+        assertThat(commonspec.getCassandraClient().countRows(keyspace, tableName)).as("The table " + tableName + "exists on cassandra").
                 isEqualTo(numberRowsLong);
     }
 
@@ -132,28 +178,18 @@ public class ThenGSpec extends BaseGSpec {
      */
     @Then("^a Cassandra keyspace '(.+?)' contains a table '(.+?)' with values:$")
     public void assertValuesOfTable(String keyspace, String tableName, DataTable data) throws InterruptedException {
-        //  USE of Keyspace
-        commonspec.getCassandraClient().useKeyspace(keyspace);
         // Obtain the types and column names of the datatable
         // to return in a hashmap,
         Map<String, String> dataTableColumns = extractColumnNamesAndTypes(data.raw().get(0));
         // check if the table has columns
-        String query = "SELECT * FROM " + tableName + " LIMIT 1;";
+        String query = "SELECT * FROM " + keyspace + "." + tableName + " LIMIT 1;";
         ResultSet res = commonspec.getCassandraClient().executeQuery(query);
         equalsColumns(res.getColumnDefinitions(), dataTableColumns);
-        //receiving the string from the select with the columns
-        // that belong to the dataTable
-        List<String> selectQueries = giveQueriesList(data, tableName, columnNames(data.raw().get(0)));
-        //Check the data  of cassandra with different queries
-        int index = 1;
-        for (String execQuery : selectQueries) {
-            res = commonspec.getCassandraClient().executeQuery(execQuery);
-            List<Row> resAsList = res.all();
-            assertThat(resAsList.size()).as("The query " + execQuery + " not return any result on Cassandra").isGreaterThan(0);
-            assertThat(resAsList.get(0).toString()
-                    .substring(VALUE_SUBSTRING)).as("The resultSet is not as expected").isEqualTo(data.raw().get(index).toString());
-            index++;
-        }
+        // look every expected row up at once, by value
+        List<List<String>> rows = data.raw().subList(1, data.raw().size());
+        List<List<String>> missing = commonspec.getCassandraClient().findMissingRows(keyspace, tableName,
+                columnNames(data.raw().get(0)), rows);
+        assertThat(missing).as(missing.size() + " of " + rows.size() + " rows not found on Cassandra").isEmpty();
     }
 
     @SuppressWarnings("rawtypes")
@@ -167,47 +203,12 @@ public class ThenGSpec extends BaseGSpec {
         }
     }
 
-    private List<String> giveQueriesList(DataTable data, String tableName, String colNames) {
-        List<String> queryList = new ArrayList<String>();
-        for (int i = 1; i < data.raw().size(); i++) {
-            String query = "SELECT " + colNames + " FROM " + tableName;
-            List<String> row = data.raw().get(i);
-            query += conditionWhere(row, colNames.split(",")) + ";";
-            queryList.add(query);
-        }
-        return queryList;
-    }
-
-    private String conditionWhere(List<String> values, String[] columnNames) {
-        StringBuilder condition = new StringBuilder();
-        condition.append(" WHERE ");
-        Pattern numberPat = Pattern.compile("^\\d+(\\.*\\d*)?");
-        Pattern booleanPat = Pattern.compile("true|false");
-        for (int i = 0; i < values.size() - 1; i++) {
-            condition.append(columnNames[i]).append(" =");
-            if (numberPat.matcher(values.get(i)).matches() || booleanPat.matcher(values.get(i)).matches()) {
-                condition.append(" ").append(values.get(i)).append(" AND ");
-            } else {
-                condition.append(" '").append(values.get(i)).append("' AND ");
-            }
-        }
-        condition.append(columnNames[columnNames.length - 1]).append(" =");
-        if (numberPat.matcher(values.get(values.size() - 1)).matches()
-                || booleanPat.matcher(values.get(values.size() - 1)).matches()) {
-            condition.append(" ").append(values.get(values.size() - 1));
-        } else {
-            condition.append(" '").append(values.get(values.size() - 1)).append("'");
-        }
-        return condition.toString();
-    }
-
-    private String columnNames(List<String> firstRow) {
-        StringBuilder columnNamesForQuery = new StringBuilder();
+    private List<String> columnNames(List<String> firstRow) {
+        List<String> columnNames = new ArrayList<String>();
         for (String s : firstRow) {
-            String[] aux = s.split("-");
-            columnNamesForQuery.append(aux[0]).append(",");
+            columnNames.add(s.split("-")[0]);
         }
-        return columnNamesForQuery.toString().substring(0, columnNamesForQuery.length() - 1);
+        return columnNames;
     }
 
     private Map<String, String> extractColumnNamesAndTypes(List<String> firstRow) {
@@ -287,14 +288,15 @@ public class ThenGSpec extends BaseGSpec {
     @Then("^'(\\d+?)' elements? exists? with '([^:]*?):([^:]*?)'$")
     public void assertSeleniumNElementExists(Integer expectedCount, String method, String element) throws ClassNotFoundException, NoSuchFieldException, SecurityException, IllegalArgumentException, IllegalAccessException {
         List<WebElement> wel = commonspec.locateElement(method, element, expectedCount);
-        PreviousWebElements pwel = new PreviousWebElements(wel);
+        PreviousWebElements pwel = new PreviousWebElements(wel, commonspec.getLastElementSnapshot());
         commonspec.setPreviousWebElements(pwel);
     }
 
     /**
      * Checks if {@code expectedCount} webelements are found, whithin a {@code timeout} and with a location
-     * {@code method}. Each negative lookup is followed by a wait of {@code wait} seconds. Selenium times are not
-     * accounted for the mentioned timeout.
+     * {@code method}. Each negative lookup is followed by a wait of up to {@code wait} seconds, which ends early
+     * when the page changes to hold {@code expectedCount} elements. Selenium times are not accounted for the
+     * mentioned timeout.
      *
      * @param timeout
      * @param wait
@@ -313,15 +315,17 @@ public class ThenGSpec extends BaseGSpec {
                                                       String method, String element) throws InterruptedException, ClassNotFoundException, NoSuchFieldException, SecurityException, IllegalArgumentException, IllegalAccessException {
         List<WebElement> wel = null;
         for (int i = 0; i < timeout; i += wait) {
-            wel = commonspec.locateElement(method, element, -1);
+            wel = commonspec.locateElement(method, element, -1, 0);
             if (wel.size() == expectedCount) {
                 break;
-            } else {
-                Thread.sleep(wait * 1000);
+            }
+            if (new DomWait(method, element).count(expectedCount).await(commonspec.getDriver(), TimeUnit.SECONDS.toMillis(wait))) {
+                wel = commonspec.locateElement(method, element, -1, 0);
+                break;
             }
         }
 
-        PreviousWebElements pwel = new PreviousWebElements(wel);
+        PreviousWebElements pwel = new PreviousWebElements(wel, commonspec.getLastElementSnapshot());
         assertThat(this.commonspec, pwel).as("Element count doesnt match").hasSize(expectedCount);
         commonspec.setPreviousWebElements(pwel);
 
@@ -377,7 +381,7 @@ public class ThenGSpec extends BaseGSpec {
     public void assertSeleniumIsDisplayed(Integer index, Boolean isDisplayed) {
         assertThat(this.commonspec, commonspec.getPreviousWebElements()).as("There are less found elements than required")
                 .hasAtLeast(index);
-        assertThat(this.commonspec, commonspec.getPreviousWebElements().getPreviousWebElements().get(index).isDisplayed()).as(
+        assertThat(this.commonspec, commonspec.getPreviousWebElements().isDisplayed(index)).as(
                 "Unexpected element display property").isEqualTo(isDisplayed);
     }
 
@@ -391,7 +395,7 @@ public class ThenGSpec extends BaseGSpec {
     public void assertSeleniumIsEnabled(Integer index, Boolean isEnabled) {
         assertThat(this.commonspec, commonspec.getPreviousWebElements()).as("There are less found elements than required")
                 .hasAtLeast(index);
-        assertThat(this.commonspec, commonspec.getPreviousWebElements().getPreviousWebElements().get(index).isEnabled())
+        assertThat(this.commonspec, commonspec.getPreviousWebElements().isEnabled(index))
                 .as("Unexpected element enabled property").isEqualTo(isEnabled);
     }
 
@@ -405,7 +409,7 @@ public class ThenGSpec extends BaseGSpec {
     public void assertSeleniumIsSelected(Integer index, Boolean isSelected) {
         assertThat(this.commonspec, commonspec.getPreviousWebElements()).as("There are less found elements than required")
                 .hasAtLeast(index);
-        assertThat(this.commonspec, commonspec.getPreviousWebElements().getPreviousWebElements().get(index).isSelected()).as(
+        assertThat(this.commonspec, commonspec.getPreviousWebElements().isSelected(index)).as(
                 "Unexpected element selected property").isEqualTo(isSelected);
     }
 
@@ -420,7 +424,7 @@ public class ThenGSpec extends BaseGSpec {
     public void assertSeleniumHasAttributeValue(Integer index, String attribute, String value) {
         assertThat(this.commonspec, commonspec.getPreviousWebElements()).as("There are less found elements than required")
                 .hasAtLeast(index);
-        String val = commonspec.getPreviousWebElements().getPreviousWebElements().get(index).getAttribute(attribute);
+        String val = commonspec.getPreviousWebElements().getAttribute(index, attribute);
         assertThat(this.commonspec, val).as("Attribute not found").isNotNull();
         assertThat(this.commonspec, val).as("Unexpected value for specified attribute").matches(value);
     }
@@ -784,7 +788,7 @@ public class ThenGSpec extends BaseGSpec {
     public void saveContentWebElementInEnvVar(Integer index, String envVar) {
         assertThat(this.commonspec, commonspec.getPreviousWebElements()).as("There are less found elements than required")
                 .hasAtLeast(index);
-        String text = commonspec.getPreviousWebElements().getPreviousWebElements().get(index).getText();
+        String text = commonspec.getPreviousWebElements().getText(index);
         ThreadProperty.set(envVar, text);
     }
 
@@ -16,7 +16,6 @@
 
 package com.stratio.qa.specs;
 
-import com.csvreader.CsvReader;
 import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
@@ -24,6 +23,7 @@ import com.mongodb.util.JSON;
 import com.ning.http.client.Response;
 import com.stratio.qa.cucumber.converter.ArrayListConverter;
 import com.stratio.qa.cucumber.converter.NullableStringConverter;
+import com.stratio.qa.utils.CsvTable;
 import com.stratio.qa.utils.ThreadProperty;
 import cucumber.api.DataTable;
 import cucumber.api.Transform;
@@ -256,13 +256,6 @@ public class WhenGSpec extends BaseGSpec {
      */
     @When("^I send a '(.+?)' request to '(.+?)'( with user and password '(.+:.+?)')? based on '([^:]+?)'( as '(json|string)')? with:$")
     public void sendRequest(String requestType, String endPoint, String foo, String loginInfo, String baseData, String baz, String type, DataTable modifications) throws Exception {
-        // Retrieve data
-        String retrievedData = commonspec.retrieveData(baseData, type);
-
-        // Modify data
-        commonspec.getLogger().debug("Modifying data {} as {}", retrievedData, type);
-        String modifiedData = commonspec.modifyData(retrievedData, type, modifications).toString();
-
         String user = null;
         String password = null;
         if (loginInfo != null) {
@@ -270,9 +263,23 @@ public class WhenGSpec extends BaseGSpec {
             password = loginInfo.substring(loginInfo.indexOf(':') + 1, loginInfo.length());
         }
 
+        Future<Response> response;
+        if ("json".equals(type)) {
+            // Compiled once per file and table layout, only the values of the table are bound here
+            byte[] body = commonspec.renderRequestBody(baseData, modifications);
+            commonspec.getLogger().debug("Generating request {} to {} with {} bytes as {}", requestType, endPoint, body.length, type);
+            response = commonspec.generateRawRequest(requestType, false, user, password, endPoint, body, type);
+        } else {
+            // Retrieve data
+            String retrievedData = commonspec.retrieveData(baseData, type);
+
+            // Modify data
+            commonspec.getLogger().debug("Modifying data {} as {}", retrievedData, type);
+            String modifiedData = commonspec.modifyData(retrievedData, type, modifications).toString();
 
-        commonspec.getLogger().debug("Generating request {} to {} with data {} as {}", requestType, endPoint, modifiedData, type);
-        Future<Response> response = commonspec.generateRequest(requestType, false, user, password, endPoint, modifiedData, type, "");
+            commonspec.getLogger().debug("Generating request {} to {} with data {} as {}", requestType, endPoint, modifiedData, type);
+            response = commonspec.generateRequest(requestType, false, user, password, endPoint, modifiedData, type, "");
+        }
 
         // Save response
         commonspec.getLogger().debug("Saving response");
@@ -413,7 +420,6 @@ public class WhenGSpec extends BaseGSpec {
     public void sendQueryOfType(String fields, String schema, String type, String magic_column, String table, String keyspace, DataTable modifications) {
         try {
             commonspec.setResultsType("cassandra");
-            commonspec.getCassandraClient().useKeyspace(keyspace);
             commonspec.getLogger().debug("Starting a query of type " + commonspec.getResultsType());
 
             String query = "";
@@ -435,7 +441,7 @@ public class WhenGSpec extends BaseGSpec {
 
             }
             commonspec.getLogger().debug("query: {}", query);
-            commonspec.setCassandraResults(commonspec.getCassandraClient().executeQuery(query));
+            commonspec.setCassandraResults(commonspec.getCassandraClient().executeQuery(keyspace, query));
         } catch (Exception e) {
             commonspec.getLogger().debug("Exception captured");
             commonspec.getLogger().debug(e.toString());
@@ -526,8 +532,7 @@ public class WhenGSpec extends BaseGSpec {
     @When("^I drop a Cassandra table named '(.+?)' using keyspace '(.+?)'$")
     public void dropTableWithData(String table, String keyspace) {
         try {
-            commonspec.getCassandraClient().useKeyspace(keyspace);
-            commonspec.getCassandraClient().dropTable(table);
+            commonspec.getCassandraClient().dropTable(keyspace, table);
         } catch (Exception e) {
             commonspec.getLogger().debug("Exception captured");
             commonspec.getLogger().debug(e.toString());
@@ -544,8 +549,7 @@ public class WhenGSpec extends BaseGSpec {
     @When("^I truncate a Cassandra table named '(.+?)' using keyspace '(.+?)'$")
     public void truncateTable(String table, String keyspace) {
         try {
-            commonspec.getCassandraClient().useKeyspace(keyspace);
-            commonspec.getCassandraClient().truncateTable(table);
+            commonspec.getCassandraClient().truncateTable(keyspace, table);
         } catch (Exception e) {
             commonspec.getLogger().debug("Exception captured");
             commonspec.getLogger().debug(e.toString());
@@ -554,30 +558,13 @@ public class WhenGSpec extends BaseGSpec {
     }
 
     /**
-     * Read csv file and store result in list of maps
+     * Read csv file and store result in list of maps, backed by a column oriented table
      *
      * @param csvFile
      */
     @When("^I read info from csv file '(.+?)'$")
     public void readFromCSV(String csvFile) throws Exception {
-        CsvReader rows = new CsvReader(csvFile);
-
-        String[] columns = null;
-        if (rows.readRecord()) {
-            columns = rows.getValues();
-            rows.setHeaders(columns);
-        }
-
-        List<Map<String, String>> results = new ArrayList<Map<String, String>>();
-        while (rows.readRecord()) {
-            Map<String, String> row = new HashMap<String, String>();
-            for (String column : columns) {
-                row.put(column, rows.get(rows.getIndex(column)));
-            }
-            results.add(row);
-        }
-
-        rows.close();
+        CsvTable results = CsvTable.read(csvFile);
 
         commonspec.setResultsType("csv");
         commonspec.setCSVResults(results);
@@ -817,6 +804,7 @@ public class WhenGSpec extends BaseGSpec {
             commonspec.getLogger().error("Custom file {} hasn't been created:\n{}", absolutePathFile, e.toString());
         } finally {
             out.close();
+            commonspec.forgetRequestBodies(fileName);
         }
 
         Assertions.assertThat(new File(absolutePathFile).isFile());
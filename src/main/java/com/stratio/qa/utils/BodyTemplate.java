@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import com.jayway.jsonpath.DocumentContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Json request body compiled from a base document and a modifications table.
+ * <p>
+ * The table is split into its layout (keys, operations, types and the values that change
+ * the shape of the document) and the values bound on each request: those of ADD, UPDATE,
+ * APPEND, PREPEND, typed REPLACE and ADDTO, and HEADER rows. On compilation the modifications
+ * are applied once with a marker in every bound value, and the written document is cut
+ * around the markers. Rendering a table with the same layout only writes the fragments
+ * and the json of its values, so the document is neither parsed nor written again.
+ * <p>
+ * Layouts whose result depends on the bound values (filter paths, or a text REPLACE over a
+ * bound value) are applied over a copy of the parsed document on each request instead.
+ */
+public final class BodyTemplate {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BodyTemplate.class);
+
+    private static final String MARKER = "bdt-slot-";
+
+    private final Object base;
+
+    private byte[][] fragments;
+
+    private int[] slots;
+
+    private boolean[] embedded;
+
+    /**
+     * Constructor.
+     *
+     * @param base json document
+     * @param rows modifications table (key, operation, value[, type])
+     * @throws Exception when the table contains an unknown modification type
+     */
+    public BodyTemplate(String base, List<List<String>> rows) throws Exception {
+        this.base = JsonDocuments.parse(base).json();
+
+        String marker;
+        do {
+            marker = MARKER + UUID.randomUUID().toString().replace("-", "") + "-";
+        } while (base.contains(marker));
+
+        boolean bound = false;
+        List<List<String>> marked = new ArrayList<List<String>>();
+        for (int i = 0; i < rows.size(); i++) {
+            List<String> row = rows.get(i);
+            String type = type(rows, i);
+            if (RequestTemplate.isBound(row.get(1), type)) {
+                bound = true;
+                List<String> slot = new ArrayList<String>(row);
+                slot.set(2, marker + i + "-");
+                if (isTyped(row.get(1), type)) {
+                    slot.set(3, "string");
+                }
+                marked.add(slot);
+            } else {
+                marked.add(row);
+            }
+        }
+
+        RequestTemplate template = new RequestTemplate(marked);
+        if (bound && template.isFiltered()) {
+            LOGGER.debug("Modification paths with filters, rendering the body on each request");
+            return;
+        }
+        DocumentContext document = JsonDocuments.document(JsonDocuments.copy(this.base));
+        if (!template.apply(document, new HashMap<String, String>(), marker)) {
+            LOGGER.debug("Text replaced over a bound value, rendering the body on each request");
+            return;
+        }
+        split(document.jsonString(), marker);
+
+        // The first request checks the compiled body against the modified document
+        if (!Arrays.equals(modify(rows, new HashMap<String, String>()), render(rows, new HashMap<String, String>()))) {
+            LOGGER.debug("Compiled body does not match the modified document, rendering the body on each request");
+            fragments = null;
+        }
+    }
+
+    /**
+     * Layout of a modifications table: everything but the values bound on each request.
+     * Tables with the same layout share a template.
+     *
+     * @param rows modifications table
+     * @return layout
+     */
+    public static String layout(List<List<String>> rows) {
+        StringBuilder layout = new StringBuilder();
+        for (int i = 0; i < rows.size(); i++) {
+            List<String> row = rows.get(i);
+            String type = type(rows, i);
+            layout.append(row.get(0)).append('\u0000').append(row.get(1)).append('\u0000').append(type).append('\u0000');
+            if (!RequestTemplate.isBound(row.get(1), type) && !"HEADER".equalsIgnoreCase(row.get(1))) {
+                layout.append(row.get(2));
+            }
+            layout.append('\n');
+        }
+        return layout.toString();
+    }
+
+    /**
+     * Whether the body is written from compiled fragments.
+     *
+     * @return boolean
+     */
+    public boolean isCompiled() {
+        return fragments != null;
+    }
+
+    /**
+     * Body for the values of a table with the layout of this template.
+     *
+     * @param rows           modifications table
+     * @param requestHeaders map where HEADER rows are put
+     * @return UTF-8 json
+     * @throws Exception when a typed value cannot be converted
+     */
+    public byte[] render(List<List<String>> rows, Map<String, String> requestHeaders) throws Exception {
+        if (fragments == null) {
+            return modify(rows, requestHeaders);
+        }
+        for (List<String> row : rows) {
+            if ("HEADER".equalsIgnoreCase(row.get(1))) {
+                requestHeaders.put(row.get(0), row.get(2));
+            }
+        }
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream(fragments.length * 64);
+        for (int i = 0; i < slots.length; i++) {
+            write(body, fragments[i]);
+            List<String> row = rows.get(slots[i]);
+            String type = type(rows, slots[i]);
+            String value;
+            if (embedded[i]) {
+                value = toJson(row.get(2));
+                value = value.substring(1, value.length() - 1);
+            } else if (isTyped(row.get(1), type)) {
+                value = toJson(RequestTemplate.typedValue(row.get(2), type));
+            } else {
+                value = toJson(row.get(2));
+            }
+            write(body, value.getBytes(StandardCharsets.UTF_8));
+        }
+        write(body, fragments[slots.length]);
+        return body.toByteArray();
+    }
+
+    private byte[] modify(List<List<String>> rows, Map<String, String> requestHeaders) throws Exception {
+        DocumentContext document = JsonDocuments.document(JsonDocuments.copy(base));
+        new RequestTemplate(rows).apply(document, requestHeaders);
+        return document.jsonString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Cut the written document around the markers. A marker filling a whole string is
+     * replaced with the json of its value, one inside a longer string with the escaped text.
+     */
+    private void split(String json, String marker) {
+        List<byte[]> parts = new ArrayList<byte[]>();
+        List<Integer> holes = new ArrayList<Integer>();
+        List<Boolean> inside = new ArrayList<Boolean>();
+        int from = 0;
+        int at;
+        while ((at = json.indexOf(marker, from)) >= 0) {
+            int end = json.indexOf('-', at + marker.length());
+            int slot = Integer.parseInt(json.substring(at + marker.length(), end));
+            end++;
+            boolean whole = isQuote(json, at - 1) && end < json.length() && json.charAt(end) == '"';
+            parts.add(json.substring(from, whole ? at - 1 : at).getBytes(StandardCharsets.UTF_8));
+            holes.add(slot);
+            inside.add(!whole);
+            from = whole ? end + 1 : end;
+        }
+        parts.add(json.substring(from).getBytes(StandardCharsets.UTF_8));
+
+        fragments = parts.toArray(new byte[parts.size()][]);
+        slots = new int[holes.size()];
+        embedded = new boolean[holes.size()];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = holes.get(i);
+            embedded[i] = inside.get(i);
+        }
+    }
+
+    /**
+     * Whether the character at {@code index} is an unescaped quote.
+     */
+    private static boolean isQuote(String json, int index) {
+        if (index < 0 || json.charAt(index) != '"') {
+            return false;
+        }
+        int escapes = 0;
+        for (int i = index - 1; i >= 0 && json.charAt(i) == '\\'; i--) {
+            escapes++;
+        }
+        return escapes % 2 == 0;
+    }
+
+    private static boolean isTyped(String operation, String typeJsonObject) {
+        return ("REPLACE".equalsIgnoreCase(operation) || "ADDTO".equalsIgnoreCase(operation)) && RequestTemplate.isTyped(typeJsonObject);
+    }
+
+    private static String type(List<List<String>> rows, int row) {
+        return rows.get(0).size() == 4 ? rows.get(row).get(3) : "";
+    }
+
+    /**
+     * Json of a value, written as it is inside a document.
+     */
+    private static String toJson(Object value) {
+        String array = JsonDocuments.CONFIGURATION.jsonProvider().toJson(Collections.singletonList(value));
+        return array.substring(1, array.length() - 1);
+    }
+
+    private static void write(ByteArrayOutputStream body, byte[] bytes) {
+        body.write(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.stratio.qa.utils;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.ColumnMetadata;
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.TableMetadata;
+import com.datastax.driver.core.TypeCodec;
+import com.datastax.driver.core.exceptions.InvalidTypeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads rows of CQL literals into a table through one prepared statement.
+ * <p>
+ * Literals are parsed with the codec of each column type and bound, and the inserts run
+ * asynchronously with at most CASSANDRA_MAX_IN_FLIGHT requests pending. With
+ * CASSANDRA_BATCH_SIZE above one, rows sharing a partition are sent together in unlogged
+ * batches, which the driver routes to a replica of that partition. Rows whose literals
+ * cannot be bound (i.e. function calls such as {@code now()}) are sent as plain statements.
+ */
+public final class CassandraBulkLoader {
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 128;
+
+    public static final int DEFAULT_BATCH_SIZE = 1;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CassandraBulkLoader.class);
+
+    private final CassandraUtils cassandra;
+
+    private final int maxInFlight;
+
+    private final int batchSize;
+
+    /**
+     * Default constructor.
+     *
+     * @param cassandra connected client
+     */
+    public CassandraBulkLoader(CassandraUtils cassandra) {
+        this(cassandra, Integer.parseInt(System.getProperty("CASSANDRA_MAX_IN_FLIGHT", String.valueOf(DEFAULT_MAX_IN_FLIGHT))),
+                Integer.parseInt(System.getProperty("CASSANDRA_BATCH_SIZE", String.valueOf(DEFAULT_BATCH_SIZE))));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param cassandra   connected client
+     * @param maxInFlight maximum number of pending requests
+     * @param batchSize   rows per partition batch, one to disable batching
+     */
+    public CassandraBulkLoader(CassandraUtils cassandra, int maxInFlight, int batchSize) {
+        this.cassandra = cassandra;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Insert rows.
+     *
+     * @param keyspace keyspace
+     * @param table    table
+     * @param columns  inserted columns
+     * @param rows     CQL literals, in the order of {@code columns}
+     * @return number of rows inserted
+     * @throws InterruptedException if interrupted while waiting for pending inserts
+     */
+    public long load(String keyspace, String table, List<String> columns, Iterable<List<String>> rows) throws InterruptedException {
+        TableMetadata metadata = tableMetadata(keyspace, table);
+        List<TypeCodec<Object>> codecs = new ArrayList<>();
+        List<Integer> partitionKey = new ArrayList<>();
+        for (String column : columns) {
+            ColumnMetadata columnMetadata = metadata.getColumn(column);
+            if (columnMetadata == null) {
+                throw new IllegalArgumentException("Unknown column " + column + " in " + keyspace + "." + table);
+            }
+            codecs.add(cassandra.getSession().getCluster().getConfiguration().getCodecRegistry()
+                    .<Object>codecFor(columnMetadata.getType()));
+            if (metadata.getPartitionKey().contains(columnMetadata)) {
+                partitionKey.add(codecs.size() - 1);
+            }
+        }
+        if (batchSize > 1 && partitionKey.size() != metadata.getPartitionKey().size()) {
+            throw new IllegalArgumentException("Every partition key column is needed to batch inserts in " + keyspace + "." + table);
+        }
+
+        StringBuilder names = new StringBuilder();
+        StringBuilder markers = new StringBuilder();
+        for (String column : columns) {
+            names.append(names.length() == 0 ? "" : ", ").append(column);
+            markers.append(markers.length() == 0 ? "?" : ", ?");
+        }
+        String target = keyspace + "." + table;
+        PreparedStatement insert = cassandra.prepare("INSERT INTO " + target + " (" + names + ") VALUES (" + markers + ");");
+
+        Session session = cassandra.getSession();
+        InFlightWindow inFlight = new InFlightWindow(maxInFlight);
+        Map<List<String>, BatchStatement> batches = new HashMap<>();
+        long count = 0;
+        long start = System.nanoTime();
+        try {
+            for (List<String> row : rows) {
+                if (inFlight.failed()) {
+                    break;
+                }
+                count++;
+                Statement statement = bind(insert, codecs, row);
+                if (statement == null) {
+                    statement = new SimpleStatement(new CassandraQueryUtils().insertData(target, toFields(columns, row)));
+                } else if (batchSize > 1) {
+                    List<String> key = new ArrayList<>();
+                    for (Integer index : partitionKey) {
+                        key.add(row.get(index));
+                    }
+                    BatchStatement batch = batches.get(key);
+                    if (batch == null) {
+                        batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+                        batches.put(key, batch);
+                    }
+                    batch.add(statement);
+                    if (batch.size() < batchSize) {
+                        continue;
+                    }
+                    batches.remove(key);
+                    statement = batch;
+                }
+                inFlight.submit(session, statement);
+            }
+            Iterator<BatchStatement> pending = batches.values().iterator();
+            while (pending.hasNext() && !inFlight.failed()) {
+                BatchStatement batch = pending.next();
+                inFlight.submit(session, batch.size() == 1 ? batch.getStatements().iterator().next() : batch);
+            }
+        } finally {
+            try {
+                inFlight.await();
+            } catch (IllegalStateException e) {
+                throw new IllegalStateException("Unable to insert into " + target + ": " + e.getMessage(), e.getCause());
+            }
+        }
+
+        double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+        LOGGER.info("Inserted {} rows into {} in {} s ({} rows/s)", count, target, String.format("%.3f", seconds),
+                Math.round(count / seconds));
+        return count;
+    }
+
+    private TableMetadata tableMetadata(String keyspace, String table) {
+        KeyspaceMetadata keyspaceMetadata = cassandra.getSession().getCluster().getMetadata().getKeyspace(keyspace);
+        TableMetadata metadata = keyspaceMetadata == null ? null : keyspaceMetadata.getTable(table);
+        if (metadata == null) {
+            throw new IllegalArgumentException("Table " + keyspace + "." + table + " does not exist");
+        }
+        return metadata;
+    }
+
+    /**
+     * Bind the literals of a row, or null if any of them is not a plain literal of its column type.
+     */
+    private static BoundStatement bind(PreparedStatement insert, List<TypeCodec<Object>> codecs, List<String> row) {
+        BoundStatement bound = insert.bind();
+        try {
+            for (int i = 0; i < codecs.size(); i++) {
+                bound.set(i, codecs.get(i).parse(row.get(i).trim()), codecs.get(i));
+            }
+        } catch (InvalidTypeException e) {
+            LOGGER.debug("Inserting row as a plain statement: {}", e.getMessage());
+            return null;
+        }
+        return bound;
+    }
+
+    private static Map<String, Object> toFields(List<String> columns, List<String> row) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        for (int i = 0; i < columns.size(); i++) {
+            fields.put(columns.get(i), row.get(i));
+        }
+        return fields;
+    }
+}
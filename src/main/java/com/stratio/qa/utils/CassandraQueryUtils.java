@@ -23,23 +23,17 @@ public class CassandraQueryUtils {
 
 
     public String insertData(String table, Map<String, Object> fields) {
-        String query = "INSERT INTO " + table + " (";
-        for (int i = 0; i < fields.size() - 1; i++) {
-            query += fields.keySet().toArray()[i] + ", ";
-        }
-        query += fields.keySet().toArray()[fields.size() - 1] + ") VALUES (";
-
-        for (int i = 0; i < fields.size() - 1; i++) {
-
-            query += "" + fields.values().toArray()[i] + ", ";
+        StringBuilder columns = new StringBuilder();
+        StringBuilder values = new StringBuilder();
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            if (columns.length() > 0) {
+                columns.append(", ");
+                values.append(", ");
+            }
+            columns.append(field.getKey());
+            values.append(field.getValue());
         }
-
-
-        query += "" + fields.values().toArray()[fields.size() - 1] + ");";
-
-
-        return query;
-
+        return "INSERT INTO " + table + " (" + columns + ") VALUES (" + values + ");";
     }
 
     public String createTable(String table, Map<String, String> colums, ArrayList<String> primaryKey) {
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.stratio.qa.utils;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.ColumnMetadata;
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.TableMetadata;
+import com.datastax.driver.core.TokenRange;
+import com.datastax.driver.core.exceptions.DriverException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the rows of a table by token range.
+ * <p>
+ * The token ring of the cluster is split in sub-ranges (CASSANDRA_COUNT_SPLITS per
+ * parallel worker), and each sub-range is counted with its own {@code COUNT(*)} query so
+ * that no single request has to scan the whole table. CASSANDRA_COUNT_PARALLELISM ranges
+ * are counted at once, and a failed range is retried up to CASSANDRA_COUNT_RETRIES times.
+ */
+public final class CassandraRowCounter {
+
+    public static final int DEFAULT_PARALLELISM = 8;
+
+    public static final int DEFAULT_SPLITS = 4;
+
+    public static final int DEFAULT_RETRIES = 3;
+
+    private static final long PROGRESS_INTERVAL = 5000;
+
+    private static final long RETRY_PAUSE = 500;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CassandraRowCounter.class);
+
+    private final CassandraUtils cassandra;
+
+    private final int parallelism;
+
+    private final int splits;
+
+    private final int retries;
+
+    /**
+     * Default constructor.
+     *
+     * @param cassandra connected client
+     */
+    public CassandraRowCounter(CassandraUtils cassandra) {
+        this(cassandra, Integer.parseInt(System.getProperty("CASSANDRA_COUNT_PARALLELISM", String.valueOf(DEFAULT_PARALLELISM))),
+                Integer.parseInt(System.getProperty("CASSANDRA_COUNT_SPLITS", String.valueOf(DEFAULT_SPLITS))),
+                Integer.parseInt(System.getProperty("CASSANDRA_COUNT_RETRIES", String.valueOf(DEFAULT_RETRIES))));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param cassandra   connected client
+     * @param parallelism ranges counted at once
+     * @param splits      sub-ranges per worker
+     * @param retries     retries of a failed range
+     */
+    public CassandraRowCounter(CassandraUtils cassandra, int parallelism, int splits, int retries) {
+        this.cassandra = cassandra;
+        this.parallelism = Math.max(1, parallelism);
+        this.splits = Math.max(1, splits);
+        this.retries = Math.max(0, retries);
+    }
+
+    /**
+     * Count the rows of a table.
+     *
+     * @param keyspace keyspace
+     * @param table    table
+     * @return number of rows
+     * @throws InterruptedException if interrupted while counting
+     */
+    public long count(String keyspace, String table) throws InterruptedException {
+        Metadata metadata = cassandra.getSession().getCluster().getMetadata();
+        KeyspaceMetadata keyspaceMetadata = metadata.getKeyspace(keyspace);
+        TableMetadata tableMetadata = keyspaceMetadata == null ? null : keyspaceMetadata.getTable(table);
+        if (tableMetadata == null) {
+            throw new IllegalArgumentException("Table " + keyspace + "." + table + " does not exist");
+        }
+        StringBuilder partitionKey = new StringBuilder();
+        for (ColumnMetadata column : tableMetadata.getPartitionKey()) {
+            partitionKey.append(partitionKey.length() == 0 ? "" : ", ").append(Metadata.quoteIfNecessary(column.getName()));
+        }
+        final String target = Metadata.quoteIfNecessary(keyspaceMetadata.getName()) + "." + Metadata.quoteIfNecessary(tableMetadata.getName());
+        String token = "token(" + partitionKey + ")";
+        final PreparedStatement bounded = cassandra.prepare("SELECT COUNT(*) FROM " + target + " WHERE " + token + " > ? AND " + token + " <= ?;");
+        final PreparedStatement open = cassandra.prepare("SELECT COUNT(*) FROM " + target + " WHERE " + token + " > ?;");
+
+        final List<TokenRange> ranges = split(metadata);
+        final AtomicLong rows = new AtomicLong();
+        final AtomicInteger done = new AtomicInteger();
+        final long start = System.currentTimeMillis();
+        final AtomicLong lastProgress = new AtomicLong(start);
+        LOGGER.info("Counting rows of {} in {} token ranges", target, ranges.size());
+
+        ExecutorService workers = Executors.newFixedThreadPool(Math.min(parallelism, ranges.size()));
+        try {
+            List<Future<Long>> counts = new ArrayList<>();
+            for (final TokenRange range : ranges) {
+                counts.add(workers.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws InterruptedException {
+                        long count = countRange(range, bounded, open);
+                        long total = rows.addAndGet(count);
+                        int finished = done.incrementAndGet();
+                        long now = System.currentTimeMillis();
+                        long last = lastProgress.get();
+                        if (now - last >= PROGRESS_INTERVAL && lastProgress.compareAndSet(last, now)) {
+                            LOGGER.info("Counted {}/{} token ranges of {}: {} rows so far", finished, ranges.size(), target, total);
+                        }
+                        return count;
+                    }
+                }));
+            }
+            for (Future<Long> count : counts) {
+                count.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unable to count rows of " + target + ": " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+        LOGGER.info("Counted {} rows of {} in {} ms", rows.get(), target, System.currentTimeMillis() - start);
+        return rows.get();
+    }
+
+    /**
+     * Non wrapping sub-ranges covering the whole ring.
+     */
+    List<TokenRange> split(Metadata metadata) {
+        List<TokenRange> ranges = new ArrayList<>(metadata.getTokenRanges());
+        int perRange = Math.max(1, (parallelism * splits + ranges.size() - 1) / Math.max(1, ranges.size()));
+        List<TokenRange> result = new ArrayList<>();
+        for (TokenRange range : ranges) {
+            for (TokenRange part : perRange > 1 ? range.splitEvenly(perRange) : Collections.singletonList(range)) {
+                result.addAll(part.unwrap());
+            }
+        }
+        return result;
+    }
+
+    long countRange(TokenRange range, PreparedStatement bounded, PreparedStatement open) throws InterruptedException {
+        BoundStatement statement;
+        // After unwrapping, only the range ending at the minimum token ends before it starts
+        if (range.getEnd().compareTo(range.getStart()) <= 0) {
+            statement = open.bind();
+            statement.setToken(0, range.getStart());
+        } else {
+            statement = bounded.bind();
+            statement.setToken(0, range.getStart());
+            statement.setToken(1, range.getEnd());
+        }
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return cassandra.getSession().execute(statement).one().getLong(0);
+            } catch (DriverException e) {
+                if (attempt >= retries) {
+                    throw e;
+                }
+                LOGGER.debug("Retrying token range {} after: {}", range, e.getMessage());
+                TimeUnit.MILLISECONDS.sleep(RETRY_PAUSE * (attempt + 1));
+            }
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.stratio.qa.utils;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.ColumnMetadata;
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.TableMetadata;
+import com.datastax.driver.core.TypeCodec;
+import com.google.common.util.concurrent.RateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes synthetic rows from a {@link DataGenerator} into a table.
+ * <p>
+ * CASSANDRA_GENERATOR_THREADS threads generate blocks of rows and insert them through one
+ * prepared statement, with at most CASSANDRA_MAX_IN_FLIGHT inserts pending and, when
+ * CASSANDRA_GENERATOR_RATE is set, no more than that many rows per second.
+ */
+public final class CassandraRowGenerator {
+
+    private static final long PROGRESS_INTERVAL = 5000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CassandraRowGenerator.class);
+
+    private final CassandraUtils cassandra;
+
+    private final int threads;
+
+    private final int maxInFlight;
+
+    private final double rate;
+
+    /**
+     * Default constructor.
+     *
+     * @param cassandra connected client
+     */
+    public CassandraRowGenerator(CassandraUtils cassandra) {
+        this(cassandra, Integer.parseInt(System.getProperty("CASSANDRA_GENERATOR_THREADS", String.valueOf(Runtime.getRuntime().availableProcessors()))),
+                Integer.parseInt(System.getProperty("CASSANDRA_MAX_IN_FLIGHT", String.valueOf(CassandraBulkLoader.DEFAULT_MAX_IN_FLIGHT))),
+                Double.parseDouble(System.getProperty("CASSANDRA_GENERATOR_RATE", "0")));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param cassandra   connected client
+     * @param threads     generating threads
+     * @param maxInFlight maximum number of pending inserts
+     * @param rate        maximum rows per second, zero for no limit
+     */
+    public CassandraRowGenerator(CassandraUtils cassandra, int threads, int maxInFlight, double rate) {
+        this.cassandra = cassandra;
+        this.threads = Math.max(1, threads);
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.rate = rate;
+    }
+
+    /**
+     * Generate and insert rows.
+     *
+     * @param keyspace  keyspace
+     * @param table     table
+     * @param generator column generators
+     * @param rows      number of rows
+     * @return achieved rows per second
+     * @throws InterruptedException if interrupted while inserting
+     */
+    public double generate(String keyspace, String table, final DataGenerator generator, final long rows) throws InterruptedException {
+        KeyspaceMetadata keyspaceMetadata = cassandra.getSession().getCluster().getMetadata().getKeyspace(keyspace);
+        TableMetadata metadata = keyspaceMetadata == null ? null : keyspaceMetadata.getTable(table);
+        if (metadata == null) {
+            throw new IllegalArgumentException("Table " + keyspace + "." + table + " does not exist");
+        }
+        final List<DataType> types = new ArrayList<>();
+        final List<TypeCodec<Object>> codecs = new ArrayList<>();
+        StringBuilder names = new StringBuilder();
+        StringBuilder markers = new StringBuilder();
+        for (String column : generator.getColumns()) {
+            ColumnMetadata columnMetadata = metadata.getColumn(column);
+            if (columnMetadata == null) {
+                throw new IllegalArgumentException("Unknown column " + column + " in " + keyspace + "." + table);
+            }
+            types.add(columnMetadata.getType());
+            codecs.add(cassandra.getSession().getCluster().getConfiguration().getCodecRegistry()
+                    .<Object>codecFor(columnMetadata.getType()));
+            names.append(names.length() == 0 ? "" : ", ").append(column);
+            markers.append(markers.length() == 0 ? "?" : ", ?");
+        }
+        final String target = keyspace + "." + table;
+        final PreparedStatement insert = cassandra.prepare("INSERT INTO " + target + " (" + names + ") VALUES (" + markers + ");");
+
+        final Session session = cassandra.getSession();
+        final InFlightWindow inFlight = new InFlightWindow(maxInFlight);
+        final RateLimiter limiter = rate > 0 ? RateLimiter.create(rate) : null;
+        final long blocks = DataGenerator.blocks(rows);
+        final AtomicLong nextBlock = new AtomicLong();
+        final AtomicLong written = new AtomicLong();
+        final long start = System.nanoTime();
+        final AtomicLong lastProgress = new AtomicLong(start);
+        LOGGER.info("Generating {} rows into {} with {} threads", rows, target, threads);
+
+        ExecutorService workers = Executors.newFixedThreadPool((int) Math.max(1, Math.min(threads, blocks)));
+        try {
+            List<Future<Void>> tasks = new ArrayList<>();
+            for (int i = 0; i < threads && i < blocks; i++) {
+                tasks.add(workers.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws InterruptedException {
+                        long block;
+                        while ((block = nextBlock.getAndIncrement()) < blocks && !inFlight.failed()) {
+                            DataGenerator.Block values = generator.block(block, rows);
+                            Object[] row;
+                            while ((row = values.next()) != null) {
+                                BoundStatement bound = insert.bind();
+                                for (int c = 0; c < row.length; c++) {
+                                    bound.set(c, convert(row[c], types.get(c)), codecs.get(c));
+                                }
+                                if (limiter != null) {
+                                    limiter.acquire();
+                                }
+                                inFlight.submit(session, bound);
+                            }
+                            long total = written.addAndGet(Math.min(DataGenerator.BLOCK_SIZE, rows - block * DataGenerator.BLOCK_SIZE));
+                            long now = System.nanoTime();
+                            long last = lastProgress.get();
+                            if (now - last >= PROGRESS_INTERVAL * 1000000 && lastProgress.compareAndSet(last, now)) {
+                                LOGGER.info("Generated {}/{} rows into {}", total, rows, target);
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> task : tasks) {
+                task.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unable to generate rows into " + target + ": " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            workers.shutdownNow();
+            try {
+                inFlight.await();
+            } catch (IllegalStateException e) {
+                throw new IllegalStateException("Unable to insert into " + target + ": " + e.getMessage(), e.getCause());
+            }
+        }
+
+        double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+        double throughput = written.get() / seconds;
+        LOGGER.info("Generated {} rows into {} in {} s ({} rows/s)", written.get(), target, String.format("%.3f", seconds),
+                Math.round(throughput));
+        return throughput;
+    }
+
+    /**
+     * Convert a generated value to the java type of a column.
+     *
+     * @param value generated value
+     * @param type  column type
+     * @return value for the column codec
+     */
+    static Object convert(Object value, DataType type) {
+        DataType.Name name = type.getName();
+        if (value instanceof Long) {
+            long number = (Long) value;
+            switch (name) {
+                case INT:
+                    return (int) number;
+                case BIGINT:
+                case COUNTER:
+                    return number;
+                case SMALLINT:
+                    return (short) number;
+                case TINYINT:
+                    return (byte) number;
+                case VARINT:
+                    return BigInteger.valueOf(number);
+                case DECIMAL:
+                    return BigDecimal.valueOf(number);
+                case DOUBLE:
+                    return (double) number;
+                case FLOAT:
+                    return (float) number;
+                case TIMESTAMP:
+                    return new Date(number);
+                case ASCII:
+                case TEXT:
+                case VARCHAR:
+                    return String.valueOf(number);
+                default:
+                    break;
+            }
+        } else if (value instanceof Date) {
+            if (name == DataType.Name.TIMESTAMP) {
+                return value;
+            } else if (name == DataType.Name.BIGINT) {
+                return ((Date) value).getTime();
+            }
+        } else if (value instanceof UUID) {
+            if (name == DataType.Name.UUID) {
+                return value;
+            }
+        }
+        if (name == DataType.Name.ASCII || name == DataType.Name.TEXT || name == DataType.Name.VARCHAR) {
+            return String.valueOf(value);
+        }
+        throw new IllegalArgumentException("Unable to generate " + value.getClass().getSimpleName() + " values for " + type + " columns");
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.stratio.qa.utils;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.ColumnMetadata;
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.TableMetadata;
+import com.datastax.driver.core.TypeCodec;
+import com.datastax.driver.core.exceptions.InvalidTypeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Checks that a table contains a set of rows.
+ * <p>
+ * Expected literals are parsed with the codec of each column type and compared by value
+ * against a hash index of the fetched rows. When the checked columns include the whole
+ * partition key, only the partitions of the expected rows are read, one prepared query per
+ * partition with at most CASSANDRA_MAX_IN_FLIGHT queries pending; otherwise the checked
+ * columns of the table are scanned once, page by page.
+ */
+public final class CassandraRowVerifier {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CassandraRowVerifier.class);
+
+    private final CassandraUtils cassandra;
+
+    private final int maxInFlight;
+
+    /**
+     * Default constructor.
+     *
+     * @param cassandra connected client
+     */
+    public CassandraRowVerifier(CassandraUtils cassandra) {
+        this(cassandra, Integer.parseInt(System.getProperty("CASSANDRA_MAX_IN_FLIGHT",
+                String.valueOf(CassandraBulkLoader.DEFAULT_MAX_IN_FLIGHT))));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param cassandra   connected client
+     * @param maxInFlight maximum number of pending queries
+     */
+    public CassandraRowVerifier(CassandraUtils cassandra, int maxInFlight) {
+        this.cassandra = cassandra;
+        this.maxInFlight = Math.max(1, maxInFlight);
+    }
+
+    /**
+     * Find the expected rows missing from a table.
+     *
+     * @param keyspace keyspace
+     * @param table    table
+     * @param columns  checked columns
+     * @param rows     expected values, in the order of {@code columns}
+     * @return expected rows not found, in their original order
+     * @throws InterruptedException if interrupted while waiting for pending queries
+     */
+    public List<List<String>> missingRows(String keyspace, String table, List<String> columns, List<List<String>> rows)
+            throws InterruptedException {
+        KeyspaceMetadata keyspaceMetadata = cassandra.getSession().getCluster().getMetadata().getKeyspace(keyspace);
+        TableMetadata metadata = keyspaceMetadata == null ? null : keyspaceMetadata.getTable(table);
+        if (metadata == null) {
+            throw new IllegalArgumentException("Table " + keyspace + "." + table + " does not exist");
+        }
+        List<TypeCodec<Object>> codecs = new ArrayList<>();
+        List<Integer> partitionKey = new ArrayList<>();
+        for (String column : columns) {
+            ColumnMetadata columnMetadata = metadata.getColumn(column);
+            if (columnMetadata == null) {
+                throw new IllegalArgumentException("Unknown column " + column + " in " + keyspace + "." + table);
+            }
+            codecs.add(cassandra.getSession().getCluster().getConfiguration().getCodecRegistry()
+                    .<Object>codecFor(columnMetadata.getType()));
+        }
+        for (ColumnMetadata column : metadata.getPartitionKey()) {
+            int index = columns.indexOf(column.getName());
+            if (index < 0) {
+                partitionKey = null;
+                break;
+            }
+            partitionKey.add(index);
+        }
+
+        Map<List<Object>, List<String>> expected = new LinkedHashMap<>();
+        for (List<String> row : rows) {
+            List<Object> values = new ArrayList<>();
+            for (int i = 0; i < codecs.size(); i++) {
+                values.add(parse(codecs.get(i), row.get(i)));
+            }
+            expected.put(values, row);
+        }
+
+        StringBuilder names = new StringBuilder();
+        for (String column : columns) {
+            names.append(names.length() == 0 ? "" : ", ").append(column);
+        }
+        String select = "SELECT " + names + " FROM " + keyspace + "." + table;
+        long start = System.nanoTime();
+        Set<List<Object>> found = partitionKey == null
+                ? scan(select, codecs, expected.keySet())
+                : readPartitions(select, metadata, partitionKey, codecs, expected.keySet());
+        LOGGER.debug("Checked {} rows of {}.{} in {} ms", expected.size(), keyspace, table, (System.nanoTime() - start) / 1000000);
+
+        List<List<String>> missing = new ArrayList<>();
+        for (Map.Entry<List<Object>, List<String>> entry : expected.entrySet()) {
+            if (!found.contains(entry.getKey())) {
+                missing.add(entry.getValue());
+            }
+        }
+        return missing;
+    }
+
+    private Set<List<Object>> readPartitions(String select, TableMetadata metadata, List<Integer> partitionKey,
+            List<TypeCodec<Object>> codecs, Set<List<Object>> expected) throws InterruptedException {
+        StringBuilder where = new StringBuilder();
+        for (ColumnMetadata column : metadata.getPartitionKey()) {
+            where.append(where.length() == 0 ? " WHERE " : " AND ").append(column.getName()).append(" = ?");
+        }
+        PreparedStatement query = cassandra.prepare(select + where + ";");
+
+        Set<List<Object>> partitions = new HashSet<>();
+        for (List<Object> row : expected) {
+            List<Object> key = new ArrayList<>();
+            for (Integer index : partitionKey) {
+                key.add(row.get(index));
+            }
+            partitions.add(key);
+        }
+
+        Set<List<Object>> found = new HashSet<>();
+        List<ResultSetFuture> pending = new ArrayList<>();
+        for (List<Object> key : partitions) {
+            BoundStatement bound = query.bind();
+            for (int i = 0; i < key.size(); i++) {
+                bound.set(i, key.get(i), codecs.get(partitionKey.get(i)));
+            }
+            pending.add(cassandra.getSession().executeAsync(bound));
+            if (pending.size() >= maxInFlight) {
+                collect(pending, codecs, found);
+            }
+        }
+        collect(pending, codecs, found);
+        return found;
+    }
+
+    private Set<List<Object>> scan(String select, List<TypeCodec<Object>> codecs, Set<List<Object>> expected) {
+        LOGGER.debug("Partition key not fully checked, scanning: {}", select);
+        Set<List<Object>> found = new HashSet<>();
+        for (Row row : cassandra.getSession().execute(new SimpleStatement(select + ";"))) {
+            List<Object> values = values(row, codecs);
+            if (expected.contains(values)) {
+                found.add(values);
+                if (found.size() == expected.size()) {
+                    break;
+                }
+            }
+        }
+        return found;
+    }
+
+    private static void collect(List<ResultSetFuture> pending, List<TypeCodec<Object>> codecs, Set<List<Object>> found)
+            throws InterruptedException {
+        try {
+            for (ResultSetFuture future : pending) {
+                for (Row row : future.get()) {
+                    found.add(values(row, codecs));
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause().getMessage(), e.getCause());
+        } finally {
+            pending.clear();
+        }
+    }
+
+    private static List<Object> values(Row row, List<TypeCodec<Object>> codecs) {
+        List<Object> values = new ArrayList<>(codecs.size());
+        for (int i = 0; i < codecs.size(); i++) {
+            values.add(row.get(i, codecs.get(i)));
+        }
+        return values;
+    }
+
+    /**
+     * Parse a DataTable value, which may omit the quotes of string-like literals.
+     *
+     * @param codec column codec
+     * @param value CQL literal, quoted or not
+     * @param <T>   column java type
+     * @return parsed value
+     */
+    static <T> T parse(TypeCodec<T> codec, String value) {
+        String literal = value.trim();
+        try {
+            return codec.parse(literal);
+        } catch (InvalidTypeException e) {
+            return codec.parse("'" + literal.replace("'", "''") + "'");
+        }
+    }
+}
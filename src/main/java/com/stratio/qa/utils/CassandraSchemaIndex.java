@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.stratio.qa.utils;
+
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.SchemaChangeListenerBase;
+import com.datastax.driver.core.TableMetadata;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Names of the keyspaces and tables of a cluster.
+ * <p>
+ * The index is built from the cluster metadata on first use and then kept up to date by
+ * the driver schema change events, so lookups do not walk the whole metadata. Waiting
+ * for a keyspace or table blocks until the matching event arrives.
+ */
+public final class CassandraSchemaIndex extends SchemaChangeListenerBase {
+
+    private Cluster cluster;
+
+    private Map<String, Set<String>> tables;
+
+    @Override
+    public synchronized void onRegister(Cluster registered) {
+        this.cluster = registered;
+        this.tables = null;
+    }
+
+    @Override
+    public synchronized void onUnregister(Cluster unregistered) {
+        if (unregistered == this.cluster) {
+            this.cluster = null;
+            this.tables = null;
+            notifyAll();
+        }
+    }
+
+    @Override
+    public synchronized void onKeyspaceAdded(KeyspaceMetadata keyspace) {
+        if (tables != null) {
+            tables.put(keyspace.getName(), names(keyspace));
+        }
+        notifyAll();
+    }
+
+    @Override
+    public synchronized void onKeyspaceRemoved(KeyspaceMetadata keyspace) {
+        if (tables != null) {
+            tables.remove(keyspace.getName());
+        }
+        notifyAll();
+    }
+
+    @Override
+    public synchronized void onTableAdded(TableMetadata table) {
+        if (tables != null) {
+            Set<String> names = tables.get(table.getKeyspace().getName());
+            if (names == null) {
+                names = new LinkedHashSet<>();
+                tables.put(table.getKeyspace().getName(), names);
+            }
+            names.add(table.getName());
+        }
+        notifyAll();
+    }
+
+    @Override
+    public synchronized void onTableRemoved(TableMetadata table) {
+        if (tables != null) {
+            Set<String> names = tables.get(table.getKeyspace().getName());
+            if (names != null) {
+                names.remove(table.getName());
+            }
+        }
+        notifyAll();
+    }
+
+    /**
+     * Check whether a keyspace exists.
+     *
+     * @param keyspace keyspace name
+     * @return true if it exists
+     */
+    public synchronized boolean existsKeyspace(String keyspace) {
+        return index().containsKey(keyspace);
+    }
+
+    /**
+     * Check whether a table exists.
+     *
+     * @param keyspace keyspace name
+     * @param table    table name
+     * @return true if it exists
+     */
+    public synchronized boolean existsTable(String keyspace, String table) {
+        Set<String> names = index().get(keyspace);
+        return names != null && names.contains(table);
+    }
+
+    /**
+     * Get the keyspace names.
+     *
+     * @return names
+     */
+    public synchronized List<String> getKeyspaces() {
+        return new ArrayList<>(index().keySet());
+    }
+
+    /**
+     * Get the table names of a keyspace.
+     *
+     * @param keyspace keyspace name
+     * @return names, empty if the keyspace does not exist
+     */
+    public synchronized List<String> getTables(String keyspace) {
+        Set<String> names = index().get(keyspace);
+        return names == null ? Collections.<String>emptyList() : new ArrayList<>(names);
+    }
+
+    /**
+     * Wait for a keyspace to be created or dropped.
+     *
+     * @param keyspace keyspace name
+     * @param exists   expected existence
+     * @param timeout  millis
+     * @return true if the keyspace reached the expected state
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized boolean awaitKeyspace(String keyspace, boolean exists, long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (existsKeyspace(keyspace) != exists) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Wait for a table to be created or dropped.
+     *
+     * @param keyspace keyspace name
+     * @param table    table name
+     * @param exists   expected existence
+     * @param timeout  millis
+     * @return true if the table reached the expected state
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized boolean awaitTable(String keyspace, String table, boolean exists, long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (existsTable(keyspace, table) != exists) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    private Map<String, Set<String>> index() {
+        if (tables == null) {
+            if (cluster == null) {
+                throw new IllegalStateException("Schema index is not registered in a cluster");
+            }
+            Map<String, Set<String>> loaded = new HashMap<>();
+            for (KeyspaceMetadata keyspace : cluster.getMetadata().getKeyspaces()) {
+                loaded.put(keyspace.getName(), names(keyspace));
+            }
+            tables = loaded;
+        }
+        return tables;
+    }
+
+    private static Set<String> names(KeyspaceMetadata keyspace) {
+        Set<String> names = new LinkedHashSet<>();
+        for (TableMetadata table : keyspace.getTables()) {
+            names.add(table.getName());
+        }
+        return names;
+    }
+}
@@ -16,16 +16,53 @@
 
 package com.stratio.qa.utils;
 
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
- * Singelton class of cassandra utils.
+ * Singelton registry of cassandra utils, one per named cluster.
+ * <p>
+ * Clusters are created on first use and configured through CASSANDRA_&lt;NAME&gt;_* system
+ * properties, falling back to the CASSANDRA_* ones (see {@link CassandraUtils}).
  */
 public enum CassandraUtil {
     INSTANCE;
 
-    private final CassandraUtils cUtils = new CassandraUtils();
+    public static final String DEFAULT_CLUSTER = "default";
+
+    private final ConcurrentMap<String, CassandraUtils> clusters = new ConcurrentHashMap<>();
 
     public CassandraUtils getCassandraUtils() {
-        return cUtils;
+        return getCassandraUtils(DEFAULT_CLUSTER);
+    }
+
+    /**
+     * Get the utils of a named cluster, creating them if needed.
+     *
+     * @param name cluster name
+     * @return CassandraUtils
+     */
+    public CassandraUtils getCassandraUtils(String name) {
+        CassandraUtils utils = clusters.get(name);
+        if (utils == null) {
+            CassandraUtils created = new CassandraUtils(name);
+            utils = clusters.putIfAbsent(name, created);
+            if (utils == null) {
+                utils = created;
+            }
+        }
+        return utils;
+    }
+
+    /**
+     * Names of the clusters used so far.
+     *
+     * @return sorted names
+     */
+    public Set<String> getClusterNames() {
+        return new TreeSet<>(clusters.keySet());
     }
 
 }
\ No newline at end of file
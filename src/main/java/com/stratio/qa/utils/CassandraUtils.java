@@ -17,57 +17,130 @@
 package com.stratio.qa.utils;
 
 import com.datastax.driver.core.*;
+import com.datastax.driver.core.policies.DCAwareRoundRobinPolicy;
+import com.datastax.driver.core.policies.TokenAwarePolicy;
 import com.stratio.qa.exceptions.DBException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Generic utilities for operations over Cassandra.
+ * <p>
+ * Each instance is a named cluster of {@link CassandraUtil}. Its settings are read from
+ * CASSANDRA_&lt;NAME&gt;_&lt;SETTING&gt; system properties, falling back to CASSANDRA_&lt;SETTING&gt;:
+ * HOST (comma separated contact points), PORT, FETCH_SIZE, LOCAL_DC, CORE_CONNECTIONS,
+ * MAX_CONNECTIONS and MAX_REQUESTS_PER_CONNECTION. Methods taking a keyspace run on a session
+ * bound to it, so they are safe to call from scenarios running in parallel.
  */
 public class CassandraUtils {
 
     private static final Logger LOGGER = LoggerFactory
             .getLogger(CassandraUtils.class);
 
-    private final String host;
+    private static final String DEFAULT_FETCH_SIZE = "5000";
 
-    private Cluster cluster;
+    private static final String DEFAULT_SCRIPT_PARALLELISM = "32";
+
+    private static final long SCHEMA_AGREEMENT_TIMEOUT = 30000;
+
+    private static final long SCHEMA_AGREEMENT_POLL = 200;
+
+    private final String name;
+
+    private String host;
+
+    private final int fetchSize;
+
+    private volatile Cluster cluster;
 
     private Metadata metadata;
 
-    private Session session;
+    private volatile Session session;
+
+    private final Map<String, Session> keyspaceSessions = new ConcurrentHashMap<>();
 
     private CassandraQueryUtils cassandraqueryUtils;
 
+    private final Map<String, PreparedStatement> preparedStatements = new ConcurrentHashMap<>();
+
+    private final CassandraSchemaIndex schema = new CassandraSchemaIndex();
+
     /**
      * Generic contructor of CassandraUtils.
      */
     public CassandraUtils() {
-        this.host = System.getProperty("CASSANDRA_HOST", "127.0.0.1");
+        this(CassandraUtil.DEFAULT_CLUSTER);
+    }
+
+    /**
+     * Constructor of a named cluster.
+     *
+     * @param name cluster name
+     */
+    public CassandraUtils(String name) {
+        this.name = name;
+        this.host = property("HOST", "127.0.0.1");
+        this.fetchSize = Integer.parseInt(property("FETCH_SIZE", DEFAULT_FETCH_SIZE));
+    }
+
+    private String property(String setting, String defaultValue) {
+        String value = null;
+        if (!CassandraUtil.DEFAULT_CLUSTER.equals(name)) {
+            value = System.getProperty("CASSANDRA_" + name.toUpperCase() + "_" + setting);
+        }
+        return value != null ? value : System.getProperty("CASSANDRA_" + setting, defaultValue);
+    }
+
+    /**
+     * Get the cluster name.
+     *
+     * @return name
+     */
+    public String getName() {
+        return this.name;
     }
 
+    /**
+     * Set the contact points used by the next connection.
+     *
+     * @param host comma separated hosts
+     */
+    public void setHost(String host) {
+        this.host = host;
+    }
 
     /**
-     * Connect to Cassandra host.
+     * Connect to Cassandra host. Does nothing if already connected.
      */
-    public void connect() {
+    public synchronized void connect() {
+        if (isConnected()) {
+            return;
+        }
         buildCluster();
         this.cassandraqueryUtils = new CassandraQueryUtils();
         this.metadata = this.cluster.getMetadata();
-        LOGGER.debug("Connected to cluster (" + host + "): "
+        LOGGER.debug("Connected to cluster " + name + " (" + host + "): "
                 + metadata.getClusterName() + "\n");
+        this.preparedStatements.clear();
         this.session = this.cluster.connect();
     }
 
+    /**
+     * Checks if there is an open session.
+     *
+     * @return boolean
+     */
+    public boolean isConnected() {
+        return this.session != null && !this.session.isClosed();
+    }
+
     /**
      * Execute a query over Cassandra.
      *
@@ -78,6 +151,32 @@ public class CassandraUtils {
         return this.session.execute(query);
     }
 
+    /**
+     * Execute a query over Cassandra, resolving unqualified tables in a keyspace.
+     *
+     * @param keyspace
+     * @param query
+     * @return ResultSet
+     */
+    public ResultSet executeQuery(String keyspace, String query) {
+        return getSession(keyspace).execute(query);
+    }
+
+    /**
+     * Prepare a statement once per session.
+     *
+     * @param query CQL statement with bind markers
+     * @return PreparedStatement
+     */
+    public PreparedStatement prepare(String query) {
+        PreparedStatement statement = preparedStatements.get(query);
+        if (statement == null) {
+            statement = this.session.prepare(query);
+            preparedStatements.put(query, statement);
+        }
+        return statement;
+    }
+
     /**
      * Execute a list of queries over Cassandra.
      *
@@ -90,13 +189,42 @@ public class CassandraUtils {
         }
     }
 
+    /**
+     * Count the rows of a table, one token range at a time (see {@link CassandraRowCounter}).
+     *
+     * @param keyspace keyspace
+     * @param table    table
+     * @return number of rows
+     * @throws InterruptedException if interrupted while counting
+     */
+    public long countRows(String keyspace, String table) throws InterruptedException {
+        return new CassandraRowCounter(this).count(keyspace, table);
+    }
+
+    /**
+     * Find the expected rows missing from a table (see {@link CassandraRowVerifier}).
+     *
+     * @param keyspace keyspace
+     * @param table    table
+     * @param columns  checked columns
+     * @param rows     expected values, in the order of {@code columns}
+     * @return expected rows not found
+     * @throws InterruptedException if interrupted while waiting for pending queries
+     */
+    public List<List<String>> findMissingRows(String keyspace, String table, List<String> columns, List<List<String>> rows)
+            throws InterruptedException {
+        return new CassandraRowVerifier(this).missingRows(keyspace, table, columns, rows);
+    }
+
     /**
      * Reconnect to Cassandra host.
      */
-    public void reconnect() {
+    public synchronized void reconnect() {
         metadata = cluster.getMetadata();
-        LOGGER.debug("Connected to cluster (" + host + "): "
+        LOGGER.debug("Connected to cluster " + name + " (" + host + "): "
                 + metadata.getClusterName() + "\n");
+        this.preparedStatements.clear();
+        closeKeyspaceSessions();
         this.session = this.cluster.connect();
     }
 
@@ -105,17 +233,25 @@ public class CassandraUtils {
      *
      * @throws DBException
      */
-    public void disconnect() throws DBException {
+    public synchronized void disconnect() throws DBException {
         if (this.session == null) {
             throw new DBException("The Cassandra is null");
         }
         if (this.cluster.isClosed()) {
             throw new DBException("The cluster has been closed");
         }
+        closeKeyspaceSessions();
         this.session.close();
         this.cluster.close();
     }
 
+    private void closeKeyspaceSessions() {
+        for (Session keyspaceSession : keyspaceSessions.values()) {
+            keyspaceSession.closeAsync();
+        }
+        keyspaceSessions.clear();
+    }
+
     /**
      * Get the metadata of the Cassandra Cluster.
      *
@@ -135,9 +271,38 @@ public class CassandraUtils {
      * Build a Cassandra cluster.
      */
     public void buildCluster() {
-        this.cluster = Cluster.builder().addContactPoint(this.host).build();
+        PoolingOptions pooling = new PoolingOptions();
+        String coreConnections = property("CORE_CONNECTIONS", null);
+        String maxConnections = property("MAX_CONNECTIONS", null);
+        if (coreConnections != null || maxConnections != null) {
+            int core = Integer.parseInt(coreConnections != null ? coreConnections : maxConnections);
+            int max = Integer.parseInt(maxConnections != null ? maxConnections : coreConnections);
+            pooling.setConnectionsPerHost(HostDistance.LOCAL, core, Math.max(core, max));
+        }
+        String maxRequests = property("MAX_REQUESTS_PER_CONNECTION", null);
+        if (maxRequests != null) {
+            pooling.setMaxRequestsPerConnection(HostDistance.LOCAL, Integer.parseInt(maxRequests));
+        }
+        DCAwareRoundRobinPolicy.Builder balancing = DCAwareRoundRobinPolicy.builder();
+        String localDc = property("LOCAL_DC", null);
+        if (localDc != null) {
+            balancing.withLocalDc(localDc);
+        }
+        Cluster.Builder builder = Cluster.builder()
+                .withPort(Integer.parseInt(property("PORT", String.valueOf(ProtocolOptions.DEFAULT_PORT))))
+                .withPoolingOptions(pooling)
+                .withLoadBalancingPolicy(new TokenAwarePolicy(balancing.build()))
+                .withTimestampGenerator(new AtomicMonotonicTimestampGenerator());
+        for (String contactPoint : this.host.split(",")) {
+            if (!contactPoint.trim().isEmpty()) {
+                builder.addContactPoint(contactPoint.trim());
+            }
+        }
+        this.cluster = builder.build();
         this.cluster.getConfiguration().getQueryOptions()
-                .setConsistencyLevel(ConsistencyLevel.ONE);
+                .setConsistencyLevel(ConsistencyLevel.ONE)
+                .setFetchSize(this.fetchSize);
+        this.cluster.register(this.schema);
 
     }
 
@@ -150,6 +315,26 @@ public class CassandraUtils {
         return this.session;
     }
 
+    /**
+     * Get a session bound to a keyspace, opened on first use.
+     *
+     * @param keyspace
+     * @return Session
+     */
+    public Session getSession(String keyspace) {
+        Session keyspaceSession = keyspaceSessions.get(keyspace);
+        if (keyspaceSession == null) {
+            synchronized (keyspaceSessions) {
+                keyspaceSession = keyspaceSessions.get(keyspace);
+                if (keyspaceSession == null) {
+                    keyspaceSession = this.cluster.connect(keyspace);
+                    keyspaceSessions.put(keyspace, keyspaceSession);
+                }
+            }
+        }
+        return keyspaceSession;
+    }
+
     /**
      * Create a keyspace in Cassandra.
      *
@@ -179,6 +364,18 @@ public class CassandraUtils {
         executeQuery(query);
     }
 
+    /**
+     * Create a table in a keyspace.
+     *
+     * @param keyspace
+     * @param table
+     * @param colums
+     * @param pk
+     */
+    public void createTableWithData(String keyspace, String table, Map<String, String> colums, ArrayList<String> pk) {
+        createTableWithData(keyspace + "." + table, colums, pk);
+    }
+
     /**
      * Insert data in a keyspace.
      *
@@ -191,6 +388,36 @@ public class CassandraUtils {
         executeQuery(query);
     }
 
+    /**
+     * Insert rows of CQL literals through a prepared statement, see {@link CassandraBulkLoader}.
+     *
+     * @param keyspace
+     * @param table
+     * @param columns
+     * @param rows
+     * @return number of rows inserted
+     * @throws InterruptedException
+     */
+    public long insertData(String keyspace, String table, List<String> columns, List<List<String>> rows) throws InterruptedException {
+        return new CassandraBulkLoader(this).load(keyspace, table, columns, rows);
+    }
+
+    /**
+     * Insert synthetic rows, see {@link DataGenerator} and {@link CassandraRowGenerator}. The
+     * random seed is CASSANDRA_GENERATOR_SEED.
+     *
+     * @param keyspace
+     * @param table
+     * @param generators generator spec of each column
+     * @param rows       number of rows
+     * @return achieved rows per second
+     * @throws InterruptedException
+     */
+    public double generateData(String keyspace, String table, Map<String, String> generators, long rows) throws InterruptedException {
+        DataGenerator generator = new DataGenerator(generators, Long.parseLong(System.getProperty("CASSANDRA_GENERATOR_SEED", "0")));
+        return new CassandraRowGenerator(this).generate(keyspace, table, generator, rows);
+    }
+
     /**
      * Checks if a keyspace exists in Cassandra.
      *
@@ -199,15 +426,7 @@ public class CassandraUtils {
      * @return boolean
      */
     public boolean existsKeyspace(String keyspace, boolean showLog) {
-        this.metadata = cluster.getMetadata();
-        if (!(this.metadata.getKeyspaces().isEmpty())) {
-            for (KeyspaceMetadata k : metadata.getKeyspaces()) {
-                if (k.getName().equals(keyspace)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return this.schema.existsKeyspace(keyspace);
     }
 
     /**
@@ -216,14 +435,16 @@ public class CassandraUtils {
      * @return {@code List<String>}
      */
     public List<String> getKeyspaces() {
-        ArrayList<String> result = new ArrayList<String>();
-        this.metadata = this.cluster.getMetadata();
-        if (!(metadata.getKeyspaces().isEmpty())) {
-            for (KeyspaceMetadata k : this.metadata.getKeyspaces()) {
-                result.add(k.getName());
-            }
-        }
-        return result;
+        return this.schema.getKeyspaces();
+    }
+
+    /**
+     * Get the schema names index, kept up to date by schema change events.
+     *
+     * @return CassandraSchemaIndex
+     */
+    public CassandraSchemaIndex getSchema() {
+        return this.schema;
     }
 
     /**
@@ -232,6 +453,7 @@ public class CassandraUtils {
      * @param keyspace
      */
     public void dropKeyspace(String keyspace) {
+        closeKeyspaceSession(keyspace);
         executeQuery(this.cassandraqueryUtils
                 .dropKeyspaceQuery(false, keyspace));
     }
@@ -243,12 +465,21 @@ public class CassandraUtils {
      * @param keyspace
      */
     public void dropKeyspace(boolean ifExists, String keyspace) {
+        closeKeyspaceSession(keyspace);
         executeQuery(this.cassandraqueryUtils.dropKeyspaceQuery(ifExists,
                 keyspace));
     }
 
+    private void closeKeyspaceSession(String keyspace) {
+        Session keyspaceSession = keyspaceSessions.remove(keyspace);
+        if (keyspaceSession != null) {
+            keyspaceSession.closeAsync();
+        }
+    }
+
     /**
-     * Use a keyspace in Cassandra.
+     * Use a keyspace in Cassandra. This changes the keyspace of the session shared by every
+     * scenario, methods taking a keyspace should be preferred.
      *
      * @param keyspace
      */
@@ -265,16 +496,7 @@ public class CassandraUtils {
      * @return boolean
      */
     public boolean existsTable(String keyspace, String table, boolean showLog) {
-        this.metadata = this.cluster.getMetadata();
-
-        if (!(this.metadata.getKeyspace(keyspace).getTables().isEmpty())) {
-            for (TableMetadata t : this.metadata.getKeyspace(keyspace).getTables()) {
-                if (t.getName().equals(table)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return this.schema.existsTable(keyspace, table);
     }
 
     /**
@@ -284,15 +506,7 @@ public class CassandraUtils {
      * @return {@code List<String>}
      */
     public List<String> getTables(String keyspace) {
-        ArrayList<String> result = new ArrayList<String>();
-        this.metadata = this.cluster.getMetadata();
-        if ((!existsKeyspace(keyspace, false)) || (this.metadata.getKeyspace(keyspace).getTables().isEmpty())) {
-            return result;
-        }
-        for (TableMetadata t : this.metadata.getKeyspace(keyspace).getTables()) {
-            result.add(t.getName());
-        }
-        return result;
+        return this.schema.getTables(keyspace);
     }
 
     /**
@@ -304,6 +518,16 @@ public class CassandraUtils {
         executeQuery(this.cassandraqueryUtils.dropTableQuery(false, table));
     }
 
+    /**
+     * Drop a table of a keyspace.
+     *
+     * @param keyspace
+     * @param table
+     */
+    public void dropTable(String keyspace, String table) {
+        dropTable(keyspace + "." + table);
+    }
+
     /**
      * Truncate a table of a keyspace.
      *
@@ -313,11 +537,29 @@ public class CassandraUtils {
         executeQuery(this.cassandraqueryUtils.truncateTableQuery(false, table));
     }
 
+    /**
+     * Truncate a table of a keyspace.
+     *
+     * @param keyspace
+     * @param table
+     */
+    public void truncateTable(String keyspace, String table) {
+        truncateTable(keyspace + "." + table);
+    }
+
 
     /**
      * Load a {@code keyspace} in Cassandra using the CQL sentences in the
-     * script path. The script is executed if the keyspace does not exists in
-     * Cassandra.
+     * script path. The keyspace is created if it does not exists in Cassandra.
+     * <p>
+     * The script is streamed statement by statement. Schema changes, queries and order
+     * sensitive data changes (conditional or with an explicit timestamp) run one at a time,
+     * in order, waiting for schema agreement after each schema change; the other data
+     * changes between them run concurrently, at most CASSANDRA_SCRIPT_PARALLELISM at once,
+     * and keep the script order through their client side timestamps.
+     * <p>
+     * The script runs on the session bound to {@code keyspace}. A USE statement moves the rest of
+     * the script to the session of that keyspace instead of changing a shared session.
      *
      * @param keyspace The name of the keyspace.
      * @param path     The path of the CQL script.
@@ -327,35 +569,74 @@ public class CassandraUtils {
         if (md == null) {
             LOGGER.info("Creating keyspace {} using {}", keyspace, path);
             createKeyspace(keyspace);
+        } else {
+            LOGGER.info("Using existing keyspace {}", keyspace);
+        }
+        int parallelism = Integer.parseInt(System.getProperty("CASSANDRA_SCRIPT_PARALLELISM", DEFAULT_SCRIPT_PARALLELISM));
+        long statements = 0;
+        Session scriptSession = getSession(keyspace);
+        try (CqlScript script = CqlScript.open(path)) {
+            InFlightWindow pending = new InFlightWindow(parallelism);
+            String cql;
+            while ((cql = script.next()) != null) {
+                statements++;
+                LOGGER.debug("Executing: {}", cql);
+                if (CqlScript.isDataChange(cql) && !CqlScript.isOrderSensitive(cql)) {
+                    pending.submit(scriptSession, new SimpleStatement(cql));
+                    if (pending.failed()) {
+                        break;
+                    }
+                    continue;
+                }
+                pending.await();
+                String used = CqlScript.usedKeyspace(cql);
+                if (used != null) {
+                    scriptSession = getSession(used);
+                    continue;
+                }
+                ResultSet result = scriptSession.execute(cql);
+                if (CqlScript.isSchemaChange(cql)) {
+                    awaitSchemaAgreement(result);
+                }
+            }
+            pending.await();
+        } catch (IOException e) {
+            LOGGER.error("IO Exception loading a cql script", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted loading " + path, e);
         }
-        List<String> scriptLines = loadScript(path);
-        LOGGER.info("Executing {} lines ", scriptLines.size());
-        for (String cql : scriptLines) {
-            ResultSet result = session.execute(cql);
-            LOGGER.debug("Executing: {}", cql);
+        LOGGER.info("Executed {} statements from {}", statements, path);
+    }
+
+    private void awaitSchemaAgreement(ResultSet result) throws InterruptedException {
+        if (result.getExecutionInfo().isSchemaInAgreement()) {
+            return;
+        }
+        long deadline = System.currentTimeMillis() + SCHEMA_AGREEMENT_TIMEOUT;
+        while (!this.cluster.getMetadata().checkSchemaAgreement()) {
+            if (System.currentTimeMillis() >= deadline) {
+                LOGGER.warn("Schema not in agreement after {} ms", SCHEMA_AGREEMENT_TIMEOUT);
+                return;
+            }
+            Thread.sleep(SCHEMA_AGREEMENT_POLL);
         }
-        LOGGER.info("Using existing keyspace {}", keyspace);
     }
 
     /**
-     * Load the lines of a CQL script containing one statement per line into a
-     * list. l
+     * Load the statements of a CQL script into a list. Large scripts should be
+     * read with {@link CqlScript} instead.
      *
      * @param path The path of the CQL script.
      * @return The contents of the script.
      */
     public static List<String> loadScript(String path) {
         List<String> result = new ArrayList<String>();
-        URL url = CassandraUtils.class.getResource(path);
-        LOGGER.debug(url.toString());
-        LOGGER.info("Loading script from: " + url);
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(
-                url.openStream(), "UTF8"))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                if (line.length() > 0 && !line.startsWith("#")) {
-                    result.add(line);
-                }
+        LOGGER.info("Loading script from: " + path);
+        try (CqlScript script = CqlScript.open(path)) {
+            String cql;
+            while ((cql = script.next()) != null) {
+                result.add(cql);
             }
         } catch (IOException e) {
             LOGGER.error("IO Exception loading a cql script", e);
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import org.reflections.Reflections;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Singleton index of the com.stratio classes, scanned once per JVM on first use.
+ */
+public enum ClasspathIndex {
+    INSTANCE;
+
+    public static final String ROOT_PACKAGE = "com.stratio";
+
+    private final ConcurrentMap<Class<?>, Set<Class<?>>> subTypes = new ConcurrentHashMap<>();
+
+    private Reflections reflections;
+
+    private synchronized Reflections getReflections() {
+        if (reflections == null) {
+            reflections = new Reflections(ROOT_PACKAGE);
+        }
+        return reflections;
+    }
+
+    /**
+     * Get every known subtype of a class or interface.
+     *
+     * @param type supertype
+     * @param <T>  supertype
+     * @return unmodifiable set of subtypes
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Set<Class<? extends T>> getSubTypesOf(Class<T> type) {
+        Set<Class<?>> found = subTypes.get(type);
+        if (found == null) {
+            found = Collections.<Class<?>>unmodifiableSet(new LinkedHashSet<Class<?>>(getReflections().getSubTypesOf(type)));
+            subTypes.putIfAbsent(type, found);
+        }
+        return (Set<Class<? extends T>>) (Set<?>) found;
+    }
+
+    /**
+     * Get the known subtypes of a class or interface declared under a package.
+     *
+     * @param type        supertype
+     * @param packageName package, including its subpackages
+     * @param <T>         supertype
+     * @return subtypes
+     */
+    public <T> Set<Class<? extends T>> getSubTypesOf(Class<T> type, String packageName) {
+        Set<Class<? extends T>> found = new LinkedHashSet<>();
+        for (Class<? extends T> subType : getSubTypesOf(type)) {
+            if (subType.getName().startsWith(packageName + ".")) {
+                found.add(subType);
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.stratio.qa.utils;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Streaming reader of the statements in a CQL script.
+ * <p>
+ * Statements end with a semicolon, except the last one of the script, and may span several
+ * lines. Quoted strings, quoted identifiers and {@code $$} strings are kept as they are;
+ * {@code --}, {@code //} and {@code /* *}{@code /} comments are dropped, as well as lines
+ * starting with {@code #}. {@code BEGIN BATCH ... APPLY BATCH} blocks are read as a single
+ * statement.
+ */
+public final class CqlScript implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Pattern BATCH_START = Pattern.compile("(?i)BEGIN\\s+((UNLOGGED|COUNTER)\\s+)?BATCH\\b");
+
+    private static final Pattern BATCH_END = Pattern.compile("(?i)\\bAPPLY\\s+BATCH$");
+
+    private static final Pattern LITERAL = Pattern.compile("'[^']*+(?:''[^']*+)*+'|\"[^\"]*+(?:\"\"[^\"]*+)*+\"|\\$\\$.*?\\$\\$", Pattern.DOTALL);
+
+    private static final Pattern CONDITION = Pattern.compile("(?i)\\bIF\\b");
+
+    private static final Pattern EXPLICIT_TIMESTAMP = Pattern.compile("(?i)\\b(USING|AND)\\s+TIMESTAMP\\b");
+
+    private static final Pattern USE = Pattern.compile("(?i)USE\\s+(\\w+|\"(?:[^\"]|\"\")+\")\\s*;?");
+
+    private final Reader reader;
+
+    private final StringBuilder statement = new StringBuilder();
+
+    private int lookahead = -2;
+
+    private boolean lineStart = true;
+
+    /**
+     * Constructor.
+     *
+     * @param reader script source, closed with this script
+     */
+    public CqlScript(Reader reader) {
+        this.reader = reader instanceof BufferedReader ? reader : new BufferedReader(reader, BUFFER_SIZE);
+    }
+
+    /**
+     * Open a script from the classpath or, if there is no such resource, from the file system.
+     *
+     * @param path script path
+     * @return script
+     * @throws IOException if the script cannot be opened
+     */
+    public static CqlScript open(String path) throws IOException {
+        URL url = CqlScript.class.getResource(path);
+        InputStream input = url != null ? url.openStream() : Files.newInputStream(Paths.get(path));
+        return new CqlScript(new InputStreamReader(input, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Read the next statement.
+     *
+     * @return statement without its terminator, or null at the end of the script
+     * @throws IOException if the script cannot be read
+     */
+    public String next() throws IOException {
+        statement.setLength(0);
+        int c;
+        while ((c = read()) != -1) {
+            if (c == '\n') {
+                lineStart = true;
+                statement.append('\n');
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                statement.append((char) c);
+                continue;
+            }
+            boolean firstOfLine = lineStart;
+            lineStart = false;
+            if (c == '#' && firstOfLine) {
+                skipLine();
+            } else if ((c == '-' && peek() == '-') || (c == '/' && peek() == '/')) {
+                skipLine();
+            } else if (c == '/' && peek() == '*') {
+                read();
+                skipBlock();
+                statement.append(' ');
+            } else if (c == '\'' || c == '"') {
+                copyQuoted((char) c);
+            } else if (c == '$' && peek() == '$') {
+                read();
+                copyDollarQuoted();
+            } else if (c == ';') {
+                String cql = statement.toString().trim();
+                if (isOpenBatch(cql)) {
+                    statement.append(';');
+                } else if (!cql.isEmpty()) {
+                    return cql;
+                }
+            } else {
+                statement.append((char) c);
+            }
+        }
+        String cql = statement.toString().trim();
+        return cql.isEmpty() ? null : cql;
+    }
+
+    /**
+     * Check whether a statement only changes data, so it can run concurrently with others.
+     *
+     * @param cql statement
+     * @return true for INSERT, UPDATE, DELETE and batches
+     */
+    public static boolean isDataChange(String cql) {
+        String keyword = firstKeyword(cql);
+        return "INSERT".equals(keyword) || "UPDATE".equals(keyword) || "DELETE".equals(keyword) || "BEGIN".equals(keyword);
+    }
+
+    /**
+     * Check whether a data change depends on the order it is applied in: conditional (lightweight
+     * transaction) statements and statements with an explicit {@code USING TIMESTAMP}. Plain
+     * data changes keep the script order through their client side timestamps.
+     *
+     * @param cql statement
+     * @return true if it must run after every previous statement
+     */
+    public static boolean isOrderSensitive(String cql) {
+        String code = LITERAL.matcher(cql).replaceAll("''");
+        return CONDITION.matcher(code).find() || EXPLICIT_TIMESTAMP.matcher(code).find();
+    }
+
+    /**
+     * Keyspace selected by a USE statement.
+     *
+     * @param cql statement
+     * @return keyspace as written (quoted if it was), or null if the statement is not a USE
+     */
+    public static String usedKeyspace(String cql) {
+        Matcher matcher = USE.matcher(cql);
+        return matcher.matches() ? matcher.group(1) : null;
+    }
+
+    /**
+     * Check whether a statement changes the schema.
+     *
+     * @param cql statement
+     * @return true for CREATE, ALTER and DROP
+     */
+    public static boolean isSchemaChange(String cql) {
+        String keyword = firstKeyword(cql);
+        return "CREATE".equals(keyword) || "ALTER".equals(keyword) || "DROP".equals(keyword);
+    }
+
+    private static boolean isOpenBatch(String cql) {
+        return BATCH_START.matcher(cql).lookingAt()
+                && !BATCH_END.matcher(cql.substring(Math.max(0, cql.length() - 32))).find();
+    }
+
+    private static String firstKeyword(String cql) {
+        int end = 0;
+        while (end < cql.length() && Character.isLetter(cql.charAt(end))) {
+            end++;
+        }
+        return cql.substring(0, end).toUpperCase(Locale.ROOT);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private int read() throws IOException {
+        if (lookahead != -2) {
+            int c = lookahead;
+            lookahead = -2;
+            return c;
+        }
+        return reader.read();
+    }
+
+    private int peek() throws IOException {
+        if (lookahead == -2) {
+            lookahead = reader.read();
+        }
+        return lookahead;
+    }
+
+    private void skipLine() throws IOException {
+        int c;
+        while ((c = read()) != -1 && c != '\n') {
+            continue;
+        }
+        lineStart = true;
+        statement.append('\n');
+    }
+
+    private void skipBlock() throws IOException {
+        int c;
+        while ((c = read()) != -1) {
+            if (c == '*' && peek() == '/') {
+                read();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Copy a quoted string or identifier; doubled quotes are read as two consecutive quoted parts.
+     */
+    private void copyQuoted(char quote) throws IOException {
+        statement.append(quote);
+        int c;
+        while ((c = read()) != -1) {
+            statement.append((char) c);
+            if (c == quote) {
+                return;
+            }
+        }
+    }
+
+    private void copyDollarQuoted() throws IOException {
+        statement.append("$$");
+        int c;
+        while ((c = read()) != -1) {
+            if (c == '$' && peek() == '$') {
+                read();
+                statement.append("$$");
+                return;
+            }
+            statement.append((char) c);
+        }
+    }
+}
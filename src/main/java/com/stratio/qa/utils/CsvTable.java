@@ -0,0 +1,579 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Read only, column oriented view of a csv file.
+ * <p>
+ * The file is memory mapped and split at line boundaries into chunks that are parsed in
+ * parallel. Each chunk keeps one int id per cell and a dictionary holding every distinct
+ * value once as raw bytes plus offsets; values are only decoded when a row asks for them.
+ * Rows are exposed as lightweight maps from header to value.
+ * <p>
+ * Parsing follows the defaults of {@code com.csvreader.CsvReader}: comma delimiter,
+ * double quote qualifier with doubled quotes as escape, whitespace trimmed around values,
+ * empty lines skipped and ISO-8859-1 as default charset.
+ */
+public final class CsvTable extends AbstractList<Map<String, String>> {
+
+    public static final long DEFAULT_CHUNK_SIZE = 64L * 1024 * 1024;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CsvTable.class);
+
+    private static final byte DELIMITER = ',';
+
+    private static final byte QUOTE = '"';
+
+    private final List<String> columns;
+
+    private final Map<String, Integer> index;
+
+    private final Block[] blocks;
+
+    private final int[] firstRows;
+
+    private final int size;
+
+    private CsvTable(List<String> columns, List<Block> blocks) {
+        this.columns = Collections.unmodifiableList(columns);
+        this.index = new LinkedHashMap<>();
+        for (int i = 0; i < columns.size(); i++) {
+            if (index.containsKey(columns.get(i))) {
+                index.remove(columns.get(i));
+            }
+            index.put(columns.get(i), i);
+        }
+        List<Block> filled = new ArrayList<>();
+        for (Block block : blocks) {
+            if (block.rows > 0) {
+                filled.add(block);
+            }
+        }
+        this.blocks = filled.toArray(new Block[filled.size()]);
+        this.firstRows = new int[this.blocks.length];
+        long rows = 0;
+        for (int i = 0; i < this.blocks.length; i++) {
+            firstRows[i] = (int) rows;
+            rows += this.blocks[i].rows;
+        }
+        if (rows > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too many csv records: " + rows);
+        }
+        this.size = (int) rows;
+    }
+
+    /**
+     * Read a csv file using the default charset, chunk size and parser threads.
+     *
+     * @param file csv file, first record is the header
+     * @return table
+     * @throws IOException
+     */
+    public static CsvTable read(String file) throws IOException {
+        return read(Paths.get(file), Charset.forName(System.getProperty("CSV_CHARSET", StandardCharsets.ISO_8859_1.name())),
+                Long.parseLong(System.getProperty("CSV_CHUNK_SIZE", String.valueOf(DEFAULT_CHUNK_SIZE))),
+                Integer.parseInt(System.getProperty("CSV_PARSER_THREADS", String.valueOf(Runtime.getRuntime().availableProcessors()))));
+    }
+
+    /**
+     * Read a csv file.
+     *
+     * @param file      csv file, first record is the header
+     * @param charset   file charset
+     * @param chunkSize approximate number of bytes parsed by each task
+     * @param threads   maximum number of parser threads
+     * @return table
+     * @throws IOException
+     */
+    public static CsvTable read(Path file, Charset charset, long chunkSize, int threads) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            RecordParser header = new RecordParser(channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(length, Integer.MAX_VALUE)));
+            List<String> columns = new ArrayList<>();
+            if (!header.next()) {
+                return new CsvTable(columns, Collections.<Block>emptyList());
+            }
+            for (int i = 0; i < header.count; i++) {
+                columns.add(new String(header.data, header.start(i), header.ends[i] - header.start(i), charset));
+            }
+
+            List<Long> bounds = new ArrayList<>();
+            long position = header.pos;
+            bounds.add(position);
+            while (position + chunkSize < length) {
+                position = nextLine(channel, position + chunkSize, length);
+                if (position < length) {
+                    bounds.add(position);
+                }
+            }
+            bounds.add(length);
+
+            List<Block> blocks = parse(channel, bounds, columns.size(), charset, threads);
+            LOGGER.debug("Read {} from {} chunks", file, blocks.size());
+            return new CsvTable(columns, blocks);
+        }
+    }
+
+    /**
+     * Parse every chunk. A chunk ending inside a quoted value is merged with the next one and
+     * parsed again; chunks after it started at a record boundary and stay valid.
+     */
+    private static List<Block> parse(FileChannel channel, List<Long> bounds, int columns, Charset charset, int threads)
+            throws IOException {
+        List<Block> blocks = new ArrayList<>();
+        if (bounds.size() == 2 || threads <= 1) {
+            for (int i = 0; i < bounds.size() - 1; i++) {
+                blocks.add(parse(channel, bounds.get(i), bounds.get(i + 1), columns, charset));
+            }
+        } else {
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, bounds.size() - 1));
+            try {
+                List<Future<Block>> futures = new ArrayList<>();
+                for (int i = 0; i < bounds.size() - 1; i++) {
+                    final long start = bounds.get(i);
+                    final long end = bounds.get(i + 1);
+                    futures.add(executor.submit(new Callable<Block>() {
+                        @Override
+                        public Block call() throws IOException {
+                            return parse(channel, start, end, columns, charset);
+                        }
+                    }));
+                }
+                for (Future<Block> future : futures) {
+                    blocks.add(future.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading csv file", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        int i = 0;
+        while (i < blocks.size()) {
+            if (blocks.get(i).unterminated && i + 1 < blocks.size()) {
+                bounds.remove(i + 1);
+                blocks.remove(i + 1);
+                blocks.set(i, parse(channel, bounds.get(i), bounds.get(i + 1), columns, charset));
+            } else {
+                i++;
+            }
+        }
+        return blocks;
+    }
+
+    private static Block parse(FileChannel channel, long start, long end, int columns, Charset charset) throws IOException {
+        if (end - start > Integer.MAX_VALUE) {
+            throw new IOException("Csv chunk too large to map: " + (end - start) + " bytes");
+        }
+        RecordParser parser = new RecordParser(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+        Block block = new Block(columns, charset);
+        while (parser.next()) {
+            block.add(parser);
+        }
+        block.unterminated = parser.unterminated;
+        block.seal();
+        return block;
+    }
+
+    /**
+     * Position right after the first line feed found from {@code from}, or {@code length}.
+     */
+    private static long nextLine(FileChannel channel, long from, long length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long position = from;
+        while (position < length) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return length;
+    }
+
+    /**
+     * Header names, in file order.
+     *
+     * @return columns
+     */
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    @Override
+    public Map<String, String> get(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row: " + row + ", size: " + size);
+        }
+        int block = Arrays.binarySearch(firstRows, row);
+        if (block < 0) {
+            block = -block - 2;
+        }
+        return new Row(blocks[block], row - firstRows[block]);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Read only row view.
+     */
+    private final class Row extends AbstractMap<String, String> {
+
+        private final Block block;
+
+        private final int row;
+
+        Row(Block block, int row) {
+            this.block = block;
+            this.row = row;
+        }
+
+        @Override
+        public String get(Object key) {
+            Integer column = index.get(key);
+            return column == null ? null : block.value(column, row);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return index.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return index.size();
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            return new AbstractSet<Entry<String, String>>() {
+                @Override
+                public Iterator<Entry<String, String>> iterator() {
+                    final Iterator<Entry<String, Integer>> columns = index.entrySet().iterator();
+                    return new Iterator<Entry<String, String>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return columns.hasNext();
+                        }
+
+                        @Override
+                        public Entry<String, String> next() {
+                            Entry<String, Integer> column = columns.next();
+                            return new SimpleImmutableEntry<>(column.getKey(), block.value(column.getValue(), row));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return index.size();
+                }
+            };
+        }
+    }
+
+    /**
+     * Cell ids of a chunk, one array per column, plus the dictionary of distinct values.
+     */
+    private static final class Block {
+
+        private final Charset charset;
+
+        private int[][] cells;
+
+        private int rows;
+
+        private byte[] arena = new byte[1024];
+
+        private int arenaSize;
+
+        private int[] offsets = new int[64];
+
+        private int[] hashes = new int[64];
+
+        private int entries;
+
+        private int[] slots = new int[128];
+
+        private String[] decoded;
+
+        private boolean unterminated;
+
+        Block(int columns, Charset charset) {
+            this.charset = charset;
+            this.cells = new int[columns][16];
+        }
+
+        void add(RecordParser record) {
+            if (rows == cells[0].length) {
+                for (int c = 0; c < cells.length; c++) {
+                    cells[c] = Arrays.copyOf(cells[c], rows * 2);
+                }
+            }
+            for (int c = 0; c < cells.length; c++) {
+                if (c < record.count) {
+                    int start = record.start(c);
+                    cells[c][rows] = intern(record.data, start, record.ends[c] - start);
+                } else {
+                    cells[c][rows] = intern(record.data, 0, 0);
+                }
+            }
+            rows++;
+        }
+
+        void seal() {
+            slots = null;
+            hashes = null;
+            decoded = new String[entries];
+        }
+
+        String value(int column, int row) {
+            int id = cells[column][row];
+            String[] values = decoded;
+            String value = values[id];
+            if (value == null) {
+                value = new String(arena, offsets[id], offsets[id + 1] - offsets[id], charset);
+                values[id] = value;
+            }
+            return value;
+        }
+
+        private int intern(byte[] bytes, int from, int length) {
+            int hash = 1;
+            for (int i = from; i < from + length; i++) {
+                hash = 31 * hash + bytes[i];
+            }
+            hash ^= hash >>> 16;
+
+            int mask = slots.length - 1;
+            int slot = hash & mask;
+            while (slots[slot] != 0) {
+                int id = slots[slot] - 1;
+                if (hashes[id] == hash && matches(id, bytes, from, length)) {
+                    return id;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            int id = entries++;
+            if (entries + 1 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                hashes = Arrays.copyOf(hashes, hashes.length * 2);
+            }
+            if (arenaSize + length > arena.length) {
+                arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + length));
+            }
+            System.arraycopy(bytes, from, arena, arenaSize, length);
+            offsets[id] = arenaSize;
+            arenaSize += length;
+            offsets[id + 1] = arenaSize;
+            hashes[id] = hash;
+            slots[slot] = id + 1;
+
+            if (entries * 2 > slots.length) {
+                rehash();
+            }
+            return id;
+        }
+
+        private boolean matches(int id, byte[] bytes, int from, int length) {
+            int offset = offsets[id];
+            if (offsets[id + 1] - offset != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (arena[offset + i] != bytes[from + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void rehash() {
+            int[] resized = new int[slots.length * 2];
+            int mask = resized.length - 1;
+            for (int id = 0; id < entries; id++) {
+                int slot = hashes[id] & mask;
+                while (resized[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                resized[slot] = id + 1;
+            }
+            slots = resized;
+        }
+    }
+
+    /**
+     * Splits a mapped region into records, leaving the unescaped bytes of every field in
+     * {@code data} and the end of each field in {@code ends}.
+     */
+    private static final class RecordParser {
+
+        private final ByteBuffer buffer;
+
+        private final int limit;
+
+        private int pos;
+
+        private byte[] data = new byte[256];
+
+        private int size;
+
+        private int[] ends = new int[16];
+
+        private int count;
+
+        private boolean unterminated;
+
+        RecordParser(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+            this.limit = buffer.limit();
+        }
+
+        int start(int field) {
+            return field == 0 ? 0 : ends[field - 1];
+        }
+
+        boolean next() {
+            count = 0;
+            size = 0;
+            while (pos < limit && isLineEnd(buffer.get(pos))) {
+                pos++;
+            }
+            if (pos >= limit) {
+                return false;
+            }
+            while (true) {
+                readField();
+                if (pos >= limit) {
+                    return true;
+                }
+                byte b = buffer.get(pos++);
+                if (b != DELIMITER) {
+                    if (b == '\r' && pos < limit && buffer.get(pos) == '\n') {
+                        pos++;
+                    }
+                    return true;
+                }
+            }
+        }
+
+        private void readField() {
+            int start = size;
+            while (pos < limit && isBlank(buffer.get(pos))) {
+                pos++;
+            }
+            if (pos < limit && buffer.get(pos) == QUOTE) {
+                pos++;
+                boolean closed = false;
+                while (pos < limit) {
+                    byte b = buffer.get(pos++);
+                    if (b == QUOTE) {
+                        if (pos < limit && buffer.get(pos) == QUOTE) {
+                            append(QUOTE);
+                            pos++;
+                        } else {
+                            closed = true;
+                            break;
+                        }
+                    } else {
+                        append(b);
+                    }
+                }
+                if (!closed) {
+                    unterminated = true;
+                }
+                start = size;
+            }
+            while (pos < limit) {
+                byte b = buffer.get(pos);
+                if (b == DELIMITER || isLineEnd(b)) {
+                    break;
+                }
+                append(b);
+                pos++;
+            }
+            while (size > start && isBlank(data[size - 1])) {
+                size--;
+            }
+            if (count == ends.length) {
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            ends[count++] = size;
+        }
+
+        private void append(byte b) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = b;
+        }
+
+        private static boolean isLineEnd(byte b) {
+            return b == '\n' || b == '\r';
+        }
+
+        private static boolean isBlank(byte b) {
+            return b == ' ' || b == '\t';
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.stratio.qa.utils;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.UUID;
+
+/**
+ * Deterministic generator of synthetic rows.
+ * <p>
+ * Each column has a generator spec:
+ * <ul>
+ * <li>{@code sequence[:start]}: row number, plus {@code start}</li>
+ * <li>{@code uniform:min:max}: uniform integers, both ends included</li>
+ * <li>{@code zipf:n:exponent}: integers from 1 to {@code n}, 1 being the most frequent</li>
+ * <li>{@code text:length}: random alphanumeric text</li>
+ * <li>{@code timestamp[:from[:to]]}: uniform dates between two yyyy-MM-dd days, 2016 by default</li>
+ * <li>{@code uuid}: random type 4 UUIDs</li>
+ * <li>{@code partition:min:max}: partition ids, each repeated on consecutive rows a uniform
+ * number of times between min and max</li>
+ * </ul>
+ * Rows are generated in blocks of {@link #BLOCK_SIZE}, each with its own random source derived
+ * from the seed and the block number, so the same seed gives the same rows whatever the number
+ * of threads generating them.
+ */
+public final class DataGenerator {
+
+    public static final int BLOCK_SIZE = 10000;
+
+    private static final int MAX_ZIPF_VALUES = 10000000;
+
+    private static final char[] ALPHANUMERIC = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789".toCharArray();
+
+    private final List<String> columns;
+
+    private final List<Spec> specs;
+
+    private final long seed;
+
+    /**
+     * Constructor.
+     *
+     * @param specs generator spec of each column, in column order
+     * @param seed  random seed
+     */
+    public DataGenerator(Map<String, String> specs, long seed) {
+        this.columns = Collections.unmodifiableList(new ArrayList<>(specs.keySet()));
+        this.specs = new ArrayList<>();
+        for (Map.Entry<String, String> spec : specs.entrySet()) {
+            this.specs.add(Spec.parse(spec.getKey(), spec.getValue()));
+        }
+        this.seed = seed;
+    }
+
+    /**
+     * Generated columns.
+     *
+     * @return column names
+     */
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Number of blocks needed for some rows.
+     *
+     * @param rows total rows
+     * @return blocks
+     */
+    public static long blocks(long rows) {
+        return (rows + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    }
+
+    /**
+     * Rows of a block.
+     *
+     * @param block block number
+     * @param rows  total rows
+     * @return generator of the block rows
+     */
+    public Block block(long block, long rows) {
+        long first = block * BLOCK_SIZE;
+        return new Block(block, first, Math.min(rows, first + BLOCK_SIZE));
+    }
+
+    /**
+     * Consecutive rows sharing a random source.
+     */
+    public final class Block {
+
+        private final long number;
+
+        private final long end;
+
+        private final Random random;
+
+        private long next;
+
+        private long partition = -1;
+
+        private long partitionLeft;
+
+        private Block(long number, long first, long end) {
+            this.number = number;
+            this.next = first;
+            this.end = end;
+            this.random = new Random(mix(seed ^ (number * 0x9E3779B97F4A7C15L)));
+        }
+
+        /**
+         * Next row values: Long, String, Date or UUID depending on the column spec.
+         *
+         * @return values, or null at the end of the block
+         */
+        public Object[] next() {
+            if (next >= end) {
+                return null;
+            }
+            Object[] values = new Object[specs.size()];
+            boolean partitionAdvanced = false;
+            for (int i = 0; i < values.length; i++) {
+                Spec spec = specs.get(i);
+                if (spec.kind == Kind.PARTITION && !partitionAdvanced) {
+                    if (partitionLeft == 0) {
+                        partition++;
+                        partitionLeft = uniform(spec.min, spec.max);
+                    }
+                    partitionLeft--;
+                    partitionAdvanced = true;
+                }
+                values[i] = value(spec);
+            }
+            next++;
+            return values;
+        }
+
+        private Object value(Spec spec) {
+            switch (spec.kind) {
+                case SEQUENCE:
+                    return spec.min + next;
+                case UNIFORM:
+                    return uniform(spec.min, spec.max);
+                case ZIPF:
+                    int index = Arrays.binarySearch(spec.cdf, random.nextDouble());
+                    return (long) (index >= 0 ? index + 1 : Math.min(-index, spec.cdf.length));
+                case TEXT:
+                    char[] text = new char[(int) spec.min];
+                    for (int i = 0; i < text.length; i++) {
+                        text[i] = ALPHANUMERIC[random.nextInt(ALPHANUMERIC.length)];
+                    }
+                    return new String(text);
+                case TIMESTAMP:
+                    return new Date(uniform(spec.min, spec.max));
+                case UUID:
+                    long most = (random.nextLong() & ~0xF000L) | 0x4000L;
+                    long least = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+                    return new UUID(most, least);
+                case PARTITION:
+                    return number * BLOCK_SIZE + partition;
+                default:
+                    throw new IllegalStateException("Unknown generator " + spec.kind);
+            }
+        }
+
+        private long uniform(long min, long max) {
+            return min + (long) (random.nextDouble() * ((double) max - min + 1));
+        }
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return z ^ (z >>> 33);
+    }
+
+    private enum Kind {
+        SEQUENCE, UNIFORM, ZIPF, TEXT, TIMESTAMP, UUID, PARTITION
+    }
+
+    private static final class Spec {
+
+        private final Kind kind;
+
+        private final long min;
+
+        private final long max;
+
+        private final double[] cdf;
+
+        private Spec(Kind kind, long min, long max, double[] cdf) {
+            this.kind = kind;
+            this.min = min;
+            this.max = max;
+            this.cdf = cdf;
+        }
+
+        private static Spec parse(String column, String spec) {
+            String[] parts = spec.trim().split(":");
+            try {
+                Kind kind = Kind.valueOf(parts[0].trim().toUpperCase());
+                switch (kind) {
+                    case SEQUENCE:
+                        return new Spec(kind, parts.length > 1 ? Long.parseLong(parts[1].trim()) : 0, 0, null);
+                    case UNIFORM:
+                    case PARTITION:
+                        long min = Long.parseLong(parts[1].trim());
+                        long max = Long.parseLong(parts[2].trim());
+                        if (max < min || (kind == Kind.PARTITION && min < 1)) {
+                            throw new IllegalArgumentException("Wrong range");
+                        }
+                        return new Spec(kind, min, max, null);
+                    case ZIPF:
+                        return new Spec(kind, 0, 0, zipf(Integer.parseInt(parts[1].trim()), Double.parseDouble(parts[2].trim())));
+                    case TEXT:
+                        return new Spec(kind, Integer.parseInt(parts[1].trim()), 0, null);
+                    case TIMESTAMP:
+                        return new Spec(kind, day(parts.length > 1 ? parts[1] : "2016-01-01"),
+                                day(parts.length > 2 ? parts[2] : "2017-01-01") - 1, null);
+                    default:
+                        return new Spec(kind, 0, 0, null);
+                }
+            } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException | ParseException e) {
+                throw new IllegalArgumentException("Wrong generator '" + spec + "' for column " + column, e);
+            }
+        }
+
+        private static long day(String day) throws ParseException {
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            return format.parse(day.trim()).getTime();
+        }
+
+        private static double[] zipf(int n, double exponent) {
+            if (n < 1 || n > MAX_ZIPF_VALUES) {
+                throw new IllegalArgumentException("Zipf values out of range");
+            }
+            double[] cdf = new double[n];
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += 1 / Math.pow(i + 1, exponent);
+                cdf[i] = sum;
+            }
+            for (int i = 0; i < n; i++) {
+                cdf[i] /= sum;
+            }
+            return cdf;
+        }
+    }
+}
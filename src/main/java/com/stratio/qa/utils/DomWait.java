@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.stratio.qa.utils;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * Waits for a condition on the page elements without polling from the test.
+ * <p>
+ * The condition is checked inside the browser, and re-checked by a MutationObserver each
+ * time the document changes, so the wait returns as soon as the page reaches the expected
+ * state. A single wait never blocks the browser for more than {@link #MAX_SCRIPT_WAIT}
+ * millis, to stay under the driver script timeout. Drivers without asynchronous script
+ * support are polled every {@link #POLL_TIME} millis instead.
+ */
+public final class DomWait {
+
+    public static final long POLL_TIME = 100;
+
+    public static final long MAX_SCRIPT_WAIT = 10000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DomWait.class);
+
+    private static final String WAIT = "var method = arguments[0], value = arguments[1], count = arguments[2],"
+            + "  visible = arguments[3], text = arguments[4], timeout = arguments[5],"
+            + "  done = arguments[arguments.length - 1];"
+            + ElementSnapshot.LOCATE
+            + "function holds() {"
+            + "  var found = locate(method, value).filter(function (e) {"
+            + "    return (!visible || displayed(e))"
+            + "      && (text === null || (e.innerText || e.textContent || '').indexOf(text) !== -1);"
+            + "  });"
+            + "  return count < 0 ? found.length > 0 : found.length === count;"
+            + "}"
+            + "if (holds()) { done(true); return; }"
+            + "var finished = false, scheduled = false, observer, timer, poll;"
+            + "function finish(result) {"
+            + "  if (finished) { return; }"
+            + "  finished = true;"
+            + "  observer.disconnect(); clearTimeout(timer); clearInterval(poll);"
+            + "  done(result);"
+            + "}"
+            + "function check() {"
+            + "  scheduled = false;"
+            + "  try { if (holds()) { finish(true); } } catch (e) { finish(false); }"
+            + "}"
+            + "observer = new MutationObserver(function () {"
+            + "  if (!scheduled) { scheduled = true; setTimeout(check, 0); }"
+            + "});"
+            + "observer.observe(document, {subtree: true, childList: true, attributes: true, characterData: true});"
+            + "poll = setInterval(check, 250);"
+            + "timer = setTimeout(function () { finish(holds()); }, timeout);";
+
+    private final String method;
+
+    private final String element;
+
+    private int count = -1;
+
+    private boolean visible;
+
+    private String text;
+
+    /**
+     * Constructor.
+     *
+     * @param method  id, name, class, xpath or css
+     * @param element locator
+     */
+    public DomWait(String method, String element) {
+        this.method = method;
+        this.element = element;
+    }
+
+    /**
+     * Wait for an exact number of matching elements. By default at least one is expected.
+     *
+     * @param expectedCount number of elements, -1 for at least one
+     * @return this wait
+     */
+    public DomWait count(int expectedCount) {
+        this.count = expectedCount;
+        return this;
+    }
+
+    /**
+     * Only count displayed elements.
+     *
+     * @return this wait
+     */
+    public DomWait visible() {
+        this.visible = true;
+        return this;
+    }
+
+    /**
+     * Only count elements whose text contains the given one.
+     *
+     * @param expectedText text
+     * @return this wait
+     */
+    public DomWait containing(String expectedText) {
+        this.text = expectedText;
+        return this;
+    }
+
+    /**
+     * Block until the condition holds or the timeout expires.
+     *
+     * @param driver  driver used for testing
+     * @param timeout millis
+     * @return true if the condition holds
+     */
+    public boolean await(WebDriver driver, long timeout) {
+        long deadline = System.currentTimeMillis() + timeout;
+        boolean scripted = driver instanceof JavascriptExecutor;
+        while (true) {
+            long remaining = Math.max(0, deadline - System.currentTimeMillis());
+            if (scripted) {
+                try {
+                    Object result = ((JavascriptExecutor) driver).executeAsyncScript(WAIT, method, element, count, visible,
+                            text, Math.min(remaining, MAX_SCRIPT_WAIT));
+                    if (Boolean.TRUE.equals(result)) {
+                        return true;
+                    }
+                } catch (WebDriverException e) {
+                    LOGGER.debug("Observing {} not available, polling: {}", element, e.getMessage());
+                    scripted = false;
+                }
+            } else {
+                if (holds(driver)) {
+                    return true;
+                }
+                if (remaining > 0) {
+                    try {
+                        Thread.sleep(Math.min(remaining, POLL_TIME));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                }
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                return !scripted && holds(driver);
+            }
+        }
+    }
+
+    private boolean holds(WebDriver driver) {
+        List<WebElement> found = driver.findElements(by(method, element));
+        int matching = 0;
+        for (WebElement candidate : found) {
+            if ((!visible || candidate.isDisplayed()) && (text == null || candidate.getText().contains(text))) {
+                matching++;
+            }
+        }
+        return count < 0 ? matching > 0 : matching == count;
+    }
+
+    /**
+     * WebDriver locator for a bdt search method.
+     *
+     * @param method  id, name, class, xpath or css
+     * @param element locator
+     * @return locator
+     */
+    public static By by(String method, String element) {
+        switch (method) {
+            case "id":
+                return By.id(element);
+            case "name":
+                return By.name(element);
+            case "class":
+                return By.className(element);
+            case "xpath":
+                return By.xpath(element);
+            case "css":
+                return By.cssSelector(element);
+            default:
+                throw new IllegalArgumentException("Unknown search method: " + method);
+        }
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.Point;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Elements located, and their state read, in a single script round trip.
+ * <p>
+ * The snapshot holds text, attributes, visibility, enabled and selected state, location and
+ * size of every element found. Before it is read, the page mutation counter installed by
+ * the script is checked, and a changed page makes readers fall back to live WebDriver calls.
+ * With BDT_SNAPSHOT_TTL set to a positive number of millis, the check is skipped within that
+ * time of the last one if no WebDriver action has been performed since (see
+ * {@link #actionPerformed()}), missing changes made by the page itself.
+ * <p>
+ * Text is only kept for leaf elements laid out with collapsed white space, whose rendered
+ * text is what {@link WebElement#getText()} returns; for the rest it is read live.
+ */
+public final class ElementSnapshot {
+
+    public static final long DEFAULT_TTL = 0;
+
+    private static final AtomicLong ACTIONS = new AtomicLong();
+
+    private static volatile boolean actionsTracked;
+
+    /**
+     * Attributes WebDriver reports as "true" or null from the element properties; they are
+     * always read live.
+     */
+    private static final Set<String> BOOLEAN_ATTRIBUTES = new HashSet<>(Arrays.asList("async", "autofocus", "autoplay",
+            "checked", "compact", "complete", "controls", "declare", "defaultchecked", "defaultselected", "defer",
+            "disabled", "draggable", "ended", "formnovalidate", "hidden", "indeterminate", "iscontenteditable", "ismap",
+            "itemscope", "loop", "multiple", "muted", "nohref", "noresize", "noshade", "novalidate", "nowrap", "open",
+            "paused", "pubdate", "readonly", "required", "reversed", "scoped", "seamless", "seeking", "selected",
+            "spellcheck", "truespeed", "willvalidate"));
+
+    private static final String VERSION =
+            "if (window.__bdtDomVersion === undefined) {"
+            + "  window.__bdtDomVersion = 0;"
+            + "  new MutationObserver(function () { window.__bdtDomVersion++; })"
+            + "    .observe(document, {subtree: true, childList: true, attributes: true, characterData: true});"
+            + "}";
+
+    /**
+     * Script functions locating elements by bdt method and checking their visibility; shared
+     * with {@link DomWait}.
+     */
+    static final String LOCATE =
+            "function all(selector) { return Array.prototype.slice.call(document.querySelectorAll(selector)); }"
+            + "function byAttribute(name, value) {"
+            + "  return all('[' + name + '=\"' + value.replace(/\\\\/g, '\\\\\\\\').replace(/\"/g, '\\\\\"') + '\"]');"
+            + "}"
+            + "function locate(method, value) {"
+            + "  if (method === 'id') { return byAttribute('id', value); }"
+            + "  if (method === 'name') { return byAttribute('name', value); }"
+            + "  if (method === 'class') { return Array.prototype.slice.call(document.getElementsByClassName(value)); }"
+            + "  if (method === 'css') { return all(value); }"
+            + "  var found = [], result = document.evaluate(value, document, null, XPathResult.ORDERED_NODE_SNAPSHOT_TYPE, null);"
+            + "  for (var i = 0; i < result.snapshotLength; i++) {"
+            + "    if (result.snapshotItem(i).nodeType === 1) { found.push(result.snapshotItem(i)); }"
+            + "  }"
+            + "  return found;"
+            + "}"
+            + "function displayed(e) {"
+            + "  if (!e.getClientRects().length) { return false; }"
+            + "  for (var n = e; n && n.nodeType === 1; n = n.parentElement) {"
+            + "    var style = window.getComputedStyle(n);"
+            + "    if (style.display === 'none' || style.opacity === '0') { return false; }"
+            + "  }"
+            + "  var visibility = window.getComputedStyle(e).visibility;"
+            + "  return visibility !== 'hidden' && visibility !== 'collapse';"
+            + "}";
+
+    private static final String SNAPSHOT = VERSION + LOCATE
+            + "var found = locate(arguments[0], arguments[1]);"
+            + "function state(e) {"
+            + "  var rect = e.getBoundingClientRect(), attributes = {}, properties = {}, shown = displayed(e);"
+            + "  for (var i = 0; i < e.attributes.length; i++) { attributes[e.attributes[i].name] = e.attributes[i].value; }"
+            + "  if (e.value !== undefined && e.value !== null) { properties.value = String(e.value); }"
+            + "  if (typeof e.href === 'string') { properties.href = e.href; }"
+            + "  if (typeof e.src === 'string') { properties.src = e.src; }"
+            + "  var tag = e.tagName.toLowerCase(), text = null;"
+            + "  if (!shown) {"
+            + "    text = '';"
+            + "  } else if (!e.children.length && !/^(option|select|textarea)$/.test(tag)"
+            + "      && /^(normal|nowrap)$/.test(window.getComputedStyle(e).whiteSpace)) {"
+            + "    text = (e.innerText || '').replace(/\\u00a0/g, ' ').replace(/\\s+/g, ' ').trim();"
+            + "  }"
+            + "  var disabled = e.matches ? e.matches(':disabled') : e.disabled === true;"
+            + "  var selected = tag === 'option' ? e.selected"
+            + "    : (tag === 'input' && (e.type === 'checkbox' || e.type === 'radio')) ? e.checked : false;"
+            + "  return {text: text, attributes: attributes, properties: properties, displayed: shown,"
+            + "    enabled: !disabled, selected: !!selected,"
+            + "    x: Math.round(rect.left + window.pageXOffset), y: Math.round(rect.top + window.pageYOffset),"
+            + "    width: Math.round(rect.width), height: Math.round(rect.height)};"
+            + "}"
+            + "return [window.__bdtDomVersion, found, found.map(state)];";
+
+    private static final String CURRENT_VERSION = "return window.__bdtDomVersion === undefined ? -1 : window.__bdtDomVersion;";
+
+    private final WebDriver driver;
+
+    private final List<WebElement> elements;
+
+    private final List<State> states;
+
+    private final Object version;
+
+    private long actions;
+
+    private long takenAt;
+
+    private ElementSnapshot(WebDriver driver, List<WebElement> elements, List<State> states, Object version, long actions) {
+        this.driver = driver;
+        this.elements = elements;
+        this.states = states;
+        this.version = version;
+        this.actions = actions;
+        this.takenAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Locate elements and read their state.
+     *
+     * @param driver  driver used for testing
+     * @param method  id, name, class, xpath or css
+     * @param element locator
+     * @return snapshot
+     * @throws org.openqa.selenium.WebDriverException if the script fails, i.e. invalid locators
+     */
+    @SuppressWarnings("unchecked")
+    public static ElementSnapshot take(WebDriver driver, String method, String element) {
+        List<Object> result = (List<Object>) ((JavascriptExecutor) driver).executeScript(SNAPSHOT, method, element);
+        long actions = ACTIONS.get();
+
+        List<WebElement> elements = new ArrayList<>();
+        for (Object found : (List<Object>) result.get(1)) {
+            elements.add((WebElement) found);
+        }
+        List<State> states = new ArrayList<>();
+        for (Object state : (List<Object>) result.get(2)) {
+            states.add(new State((Map<String, Object>) state));
+        }
+        return new ElementSnapshot(driver, elements, states, result.get(0), actions);
+    }
+
+    /**
+     * Record a WebDriver action that may have changed the page.
+     */
+    public static void actionPerformed() {
+        actionsTracked = true;
+        ACTIONS.incrementAndGet();
+    }
+
+    public List<WebElement> getElements() {
+        return elements;
+    }
+
+    /**
+     * Check whether the snapshot still describes the page.
+     *
+     * @return true if the state can be read from the snapshot
+     */
+    public synchronized boolean isFresh() {
+        long ttl = Long.parseLong(System.getProperty("BDT_SNAPSHOT_TTL", String.valueOf(DEFAULT_TTL)));
+        if (ttl > 0 && actionsTracked && actions == ACTIONS.get() && System.currentTimeMillis() - takenAt <= ttl) {
+            return true;
+        }
+        long current = ACTIONS.get();
+        Object pageVersion;
+        try {
+            pageVersion = ((JavascriptExecutor) driver).executeScript(CURRENT_VERSION);
+        } catch (RuntimeException e) {
+            return false;
+        }
+        if (version instanceof Number && pageVersion instanceof Number
+                && ((Number) version).longValue() >= 0
+                && ((Number) version).longValue() == ((Number) pageVersion).longValue()) {
+            actions = current;
+            takenAt = System.currentTimeMillis();
+            return true;
+        }
+        return false;
+    }
+
+    public State getState(int index) {
+        return states.get(index);
+    }
+
+    /**
+     * State of an element when the snapshot was taken.
+     */
+    public static final class State {
+
+        private final String text;
+
+        private final Map<String, String> attributes;
+
+        private final Map<String, String> properties;
+
+        private final boolean displayed;
+
+        private final boolean enabled;
+
+        private final boolean selected;
+
+        private final Point location;
+
+        private final Dimension size;
+
+        @SuppressWarnings("unchecked")
+        State(Map<String, Object> state) {
+            this.text = state.get("text") == null ? null : String.valueOf(state.get("text"));
+            this.attributes = toStrings((Map<String, Object>) state.get("attributes"));
+            this.properties = toStrings((Map<String, Object>) state.get("properties"));
+            this.displayed = Boolean.TRUE.equals(state.get("displayed"));
+            this.enabled = Boolean.TRUE.equals(state.get("enabled"));
+            this.selected = Boolean.TRUE.equals(state.get("selected"));
+            this.location = new Point(toInt(state.get("x")), toInt(state.get("y")));
+            this.size = new Dimension(toInt(state.get("width")), toInt(state.get("height")));
+        }
+
+        private static Map<String, String> toStrings(Map<String, Object> values) {
+            if (values == null) {
+                return Collections.emptyMap();
+            }
+            Map<String, String> strings = new HashMap<>();
+            for (Map.Entry<String, Object> value : values.entrySet()) {
+                strings.put(value.getKey().toLowerCase(), String.valueOf(value.getValue()));
+            }
+            return strings;
+        }
+
+        private static int toInt(Object value) {
+            return value instanceof Number ? ((Number) value).intValue() : 0;
+        }
+
+        /**
+         * Check whether {@link #getText()} can answer as WebDriver would.
+         *
+         * @return false if the text must be read live
+         */
+        public boolean hasText() {
+            return text != null;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public boolean isDisplayed() {
+            return displayed;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public boolean isSelected() {
+            return selected;
+        }
+
+        public Point getLocation() {
+            return location;
+        }
+
+        public Dimension getSize() {
+            return size;
+        }
+
+        /**
+         * Check whether {@link #getAttribute(String)} can answer as WebDriver would.
+         *
+         * @param name attribute name
+         * @return false if the attribute must be read live
+         */
+        public boolean hasAttribute(String name) {
+            String key = name.toLowerCase();
+            if (BOOLEAN_ATTRIBUTES.contains(key)) {
+                return false;
+            }
+            if ("value".equals(key)) {
+                return properties.containsKey(key);
+            }
+            return attributes.containsKey(key);
+        }
+
+        /**
+         * Attribute value as returned by WebDriver; value, href and src come from the
+         * element properties.
+         *
+         * @param name attribute name
+         * @return value
+         */
+        public String getAttribute(String name) {
+            String key = name.toLowerCase();
+            if (properties.containsKey(key) && ("value".equals(key) || attributes.containsKey(key))) {
+                return properties.get(key);
+            }
+            return attributes.get(key);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Content addressed storage for evidences.
+ * <p>
+ * Every distinct content is stored once, named after its SHA-256 hash, and each evidence
+ * file is a hard link to it (or a copy, when links are not supported). Identical
+ * screenshots or page sources taken across retries and outline examples share the same
+ * stored file.
+ */
+public class EvidenceStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EvidenceStore.class);
+
+    private final File root;
+
+    /**
+     * Content written into an output stream.
+     */
+    public interface Content {
+        void writeTo(OutputStream output) throws IOException;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param root directory holding the stored contents
+     */
+    public EvidenceStore(File root) {
+        this.root = root;
+    }
+
+    /**
+     * Store some bytes and link them from an evidence file.
+     *
+     * @param content   bytes
+     * @param extension stored file extension, i.e. ".png"
+     * @param evidence  evidence file to create
+     * @return stored file
+     * @throws IOException
+     */
+    public File store(final byte[] content, String extension, File evidence) throws IOException {
+        return store(new Content() {
+            @Override
+            public void writeTo(OutputStream output) throws IOException {
+                output.write(content);
+            }
+        }, extension, evidence);
+    }
+
+    /**
+     * Stream some content into the store, hashing it on the fly, and link it from an
+     * evidence file.
+     *
+     * @param content   content to be written
+     * @param extension stored file extension, i.e. ".png"
+     * @param evidence  evidence file to create
+     * @return stored file
+     * @throws IOException
+     */
+    public File store(Content content, String extension, File evidence) throws IOException {
+        Files.createDirectories(root.toPath());
+        Path temp = Files.createTempFile(root.toPath(), "evidence", extension);
+        File stored;
+        try {
+            MessageDigest digest = newDigest();
+            try (OutputStream output = new DigestOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)), digest)) {
+                content.writeTo(output);
+            }
+            stored = new File(root, toHex(digest.digest()) + extension);
+            if (stored.exists()) {
+                LOGGER.debug("Evidence {} already stored as {}", evidence, stored);
+            } else {
+                Files.move(temp, stored.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        link(stored, evidence);
+        return stored;
+    }
+
+    private void link(File stored, File evidence) throws IOException {
+        if (evidence.getParentFile() != null) {
+            Files.createDirectories(evidence.getParentFile().toPath());
+        }
+        try {
+            Files.createLink(evidence.toPath(), stored.toPath());
+        } catch (FileAlreadyExistsException e) {
+            Files.copy(stored.toPath(), evidence.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | UnsupportedOperationException e) {
+            LOGGER.debug("Unable to link {}, copying it: {}", evidence, e.getMessage());
+            Files.copy(stored.toPath(), evidence.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static MessageDigest newDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Background writer for test evidences (Singleton).
+ * <p>
+ * Evidences are grabbed from the browser on the test thread and handed over here to be
+ * stitched, encoded and written. The queue is bounded by BDT_EVIDENCE_QUEUE; when it is
+ * full the test thread writes the evidence itself. Reporters must call
+ * {@link #awaitPending(long)} before reading the evidences.
+ */
+public enum EvidenceWriter {
+    INSTANCE;
+
+    public static final int DEFAULT_THREADS = 2;
+
+    public static final int DEFAULT_QUEUE_SIZE = 16;
+
+    public static final long DEFAULT_AWAIT_SECONDS = 120;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EvidenceWriter.class);
+
+    private final ThreadPoolExecutor executor;
+
+    private int pending;
+
+    EvidenceWriter() {
+        final AtomicInteger count = new AtomicInteger();
+        int threads = Integer.parseInt(System.getProperty("BDT_EVIDENCE_THREADS", String.valueOf(DEFAULT_THREADS)));
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(Integer.parseInt(System.getProperty("BDT_EVIDENCE_QUEUE", String.valueOf(DEFAULT_QUEUE_SIZE)))),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "evidence-writer-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Queue an evidence to be written.
+     *
+     * @param evidence file being written, used for logging
+     * @param task     work producing the file
+     */
+    public void submit(final String evidence, final Callable<?> task) {
+        synchronized (this) {
+            pending++;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.call();
+                    LOGGER.debug("Evidence written to {}", evidence);
+                } catch (Exception e) {
+                    LOGGER.error("Exception on evidence capture " + evidence, e);
+                } finally {
+                    synchronized (EvidenceWriter.this) {
+                        pending--;
+                        EvidenceWriter.this.notifyAll();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Wait for every queued evidence to be written.
+     *
+     * @param timeoutSeconds maximum wait
+     * @return true if nothing is pending
+     * @throws InterruptedException
+     */
+    public synchronized boolean awaitPending(long timeoutSeconds) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeoutSeconds);
+        while (pending > 0) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                LOGGER.warn("{} evidences still pending after {} seconds", pending, timeoutSeconds);
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Number of evidences queued or being written.
+     *
+     * @return pending evidences
+     */
+    public synchronized int getPending() {
+        return pending;
+    }
+}
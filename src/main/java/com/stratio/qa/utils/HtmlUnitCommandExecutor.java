@@ -0,0 +1,515 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.stratio.qa.utils;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.HasCapabilities;
+import org.openqa.selenium.Keys;
+import org.openqa.selenium.Point;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.UnsupportedCommandException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+import org.openqa.selenium.interactions.internal.Coordinates;
+import org.openqa.selenium.internal.Locatable;
+import org.openqa.selenium.remote.CapabilityType;
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.CommandExecutor;
+import org.openqa.selenium.remote.DesiredCapabilities;
+import org.openqa.selenium.remote.DriverCommand;
+import org.openqa.selenium.remote.ErrorCodes;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.openqa.selenium.remote.Response;
+import org.openqa.selenium.remote.SessionId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs WebDriver commands against an in-JVM HtmlUnit browser.
+ * <p>
+ * A {@link RemoteWebDriver} built on this executor behaves like a grid session for the
+ * steps (elements, scripts, cookies, frames, windows and keyboard/mouse actions), but
+ * starts in milliseconds and needs no grid. Screenshots are not available, so it suits
+ * scenarios checking text and form flows only.
+ */
+public final class HtmlUnitCommandExecutor implements CommandExecutor {
+
+    public static final String BACKEND = "htmlunit";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HtmlUnitCommandExecutor.class);
+
+    private static final String ELEMENT = "ELEMENT";
+
+    private static final Set<Keys> MODIFIERS = new HashSet<>(Arrays.asList(Keys.SHIFT, Keys.LEFT_SHIFT, Keys.CONTROL,
+            Keys.LEFT_CONTROL, Keys.ALT, Keys.LEFT_ALT, Keys.META, Keys.COMMAND));
+
+    private final Map<String, WebElement> elements = new HashMap<>();
+
+    private final Map<WebElement, String> ids = new HashMap<>();
+
+    private final Set<Keys> pressed = new HashSet<>();
+
+    private HtmlUnitDriver driver;
+
+    private SessionId sessionId;
+
+    private Coordinates mouse;
+
+    private long lastId;
+
+    /**
+     * Start a browser session backed by HtmlUnit.
+     *
+     * @return driver
+     */
+    public static RemoteWebDriver newDriver() {
+        return new RemoteWebDriver(new HtmlUnitCommandExecutor(), DesiredCapabilities.htmlUnitWithJs());
+    }
+
+    /**
+     * Check whether a driver runs on this backend.
+     *
+     * @param driver driver used for testing
+     * @return true for HtmlUnit sessions
+     */
+    public static boolean isHtmlUnit(WebDriver driver) {
+        return driver instanceof HasCapabilities
+                && BACKEND.equals(((HasCapabilities) driver).getCapabilities().getBrowserName());
+    }
+
+    @Override
+    public synchronized Response execute(Command command) {
+        String name = command.getName();
+        if (DriverCommand.NEW_SESSION.equals(name)) {
+            return response(newSession());
+        }
+        if (driver == null) {
+            throw new UnsupportedCommandException("No htmlunit session for " + name);
+        }
+        Map<String, ?> parameters = command.getParameters();
+        if (DriverCommand.QUIT.equals(name)) {
+            quit();
+            return response(null);
+        }
+        return response(toWire(dispatch(name, parameters)));
+    }
+
+    private Map<String, Object> newSession() {
+        driver = new HtmlUnitDriver(true);
+        sessionId = new SessionId(UUID.randomUUID().toString());
+        Map<String, Object> capabilities = new HashMap<>(driver.getCapabilities().asMap());
+        capabilities.put(CapabilityType.BROWSER_NAME, BACKEND);
+        capabilities.put(CapabilityType.PLATFORM, String.valueOf(driver.getCapabilities().getPlatform()));
+        capabilities.put(CapabilityType.TAKES_SCREENSHOT, false);
+        LOGGER.debug("Started htmlunit session {}", sessionId);
+        return capabilities;
+    }
+
+    private void quit() {
+        try {
+            driver.quit();
+        } finally {
+            driver = null;
+            forgetElements();
+            pressed.clear();
+        }
+    }
+
+    /**
+     * Drop element references once the page they belong to is gone; later uses fail as stale.
+     */
+    private void forgetElements() {
+        elements.clear();
+        ids.clear();
+        mouse = null;
+    }
+
+    private Object dispatch(String name, Map<String, ?> parameters) {
+        switch (name) {
+            case DriverCommand.GET:
+                forgetElements();
+                driver.get(string(parameters, "url"));
+                return null;
+            case DriverCommand.GET_CURRENT_URL:
+                return driver.getCurrentUrl();
+            case DriverCommand.GET_TITLE:
+                return driver.getTitle();
+            case DriverCommand.GET_PAGE_SOURCE:
+                return driver.getPageSource();
+            case DriverCommand.GO_BACK:
+                driver.navigate().back();
+                return null;
+            case DriverCommand.GO_FORWARD:
+                driver.navigate().forward();
+                return null;
+            case DriverCommand.REFRESH:
+                driver.navigate().refresh();
+                return null;
+            case DriverCommand.CLOSE:
+                driver.close();
+                return null;
+            case DriverCommand.FIND_ELEMENT:
+                return driver.findElement(by(parameters));
+            case DriverCommand.FIND_ELEMENTS:
+                return driver.findElements(by(parameters));
+            case DriverCommand.FIND_CHILD_ELEMENT:
+                return element(parameters).findElement(by(parameters));
+            case DriverCommand.FIND_CHILD_ELEMENTS:
+                return element(parameters).findElements(by(parameters));
+            case DriverCommand.GET_ACTIVE_ELEMENT:
+                return driver.switchTo().activeElement();
+            case DriverCommand.CLICK_ELEMENT:
+                element(parameters).click();
+                return null;
+            case DriverCommand.CLEAR_ELEMENT:
+                element(parameters).clear();
+                return null;
+            case DriverCommand.SUBMIT_ELEMENT:
+                element(parameters).submit();
+                return null;
+            case DriverCommand.SEND_KEYS_TO_ELEMENT:
+                element(parameters).sendKeys(keys(parameters.get("value")));
+                return null;
+            case DriverCommand.GET_ELEMENT_TEXT:
+                return element(parameters).getText();
+            case DriverCommand.GET_ELEMENT_TAG_NAME:
+                return element(parameters).getTagName();
+            case DriverCommand.GET_ELEMENT_ATTRIBUTE:
+                return element(parameters).getAttribute(string(parameters, "name"));
+            case DriverCommand.GET_ELEMENT_VALUE_OF_CSS_PROPERTY:
+                return element(parameters).getCssValue(string(parameters, "propertyName"));
+            case DriverCommand.IS_ELEMENT_DISPLAYED:
+                return element(parameters).isDisplayed();
+            case DriverCommand.IS_ELEMENT_ENABLED:
+                return element(parameters).isEnabled();
+            case DriverCommand.IS_ELEMENT_SELECTED:
+                return element(parameters).isSelected();
+            case DriverCommand.GET_ELEMENT_LOCATION:
+            case DriverCommand.GET_ELEMENT_LOCATION_ONCE_SCROLLED_INTO_VIEW:
+                return point(element(parameters).getLocation());
+            case DriverCommand.GET_ELEMENT_SIZE:
+                return dimension(element(parameters).getSize());
+            case DriverCommand.ELEMENT_EQUALS:
+                return element(parameters).equals(elements.get(string(parameters, "other")));
+            case DriverCommand.EXECUTE_SCRIPT:
+                return driver.executeScript(string(parameters, "script"), arguments(parameters));
+            case DriverCommand.EXECUTE_ASYNC_SCRIPT:
+                return driver.executeAsyncScript(string(parameters, "script"), arguments(parameters));
+            case DriverCommand.GET_ALL_COOKIES:
+                return cookies();
+            case DriverCommand.ADD_COOKIE:
+                driver.manage().addCookie(cookie(parameters.get("cookie")));
+                return null;
+            case DriverCommand.DELETE_COOKIE:
+                driver.manage().deleteCookieNamed(string(parameters, "name"));
+                return null;
+            case DriverCommand.DELETE_ALL_COOKIES:
+                driver.manage().deleteAllCookies();
+                return null;
+            case DriverCommand.SWITCH_TO_FRAME:
+                switchToFrame(fromWire(parameters.get("id")));
+                return null;
+            case DriverCommand.SWITCH_TO_PARENT_FRAME:
+                driver.switchTo().parentFrame();
+                return null;
+            case DriverCommand.SWITCH_TO_WINDOW:
+                driver.switchTo().window(string(parameters, "name"));
+                return null;
+            case DriverCommand.GET_CURRENT_WINDOW_HANDLE:
+                return driver.getWindowHandle();
+            case DriverCommand.GET_WINDOW_HANDLES:
+                return new ArrayList<>(driver.getWindowHandles());
+            case DriverCommand.GET_WINDOW_SIZE:
+                return dimension(driver.manage().window().getSize());
+            case DriverCommand.SET_WINDOW_SIZE:
+                driver.manage().window().setSize(new Dimension(number(parameters, "width"), number(parameters, "height")));
+                return null;
+            case DriverCommand.GET_WINDOW_POSITION:
+                return point(driver.manage().window().getPosition());
+            case DriverCommand.SET_WINDOW_POSITION:
+                driver.manage().window().setPosition(new Point(number(parameters, "x"), number(parameters, "y")));
+                return null;
+            case DriverCommand.MAXIMIZE_CURRENT_WINDOW:
+                driver.manage().window().maximize();
+                return null;
+            case DriverCommand.IMPLICITLY_WAIT:
+                driver.manage().timeouts().implicitlyWait(number(parameters, "ms"), TimeUnit.MILLISECONDS);
+                return null;
+            case DriverCommand.SET_SCRIPT_TIMEOUT:
+                driver.manage().timeouts().setScriptTimeout(number(parameters, "ms"), TimeUnit.MILLISECONDS);
+                return null;
+            case DriverCommand.SET_TIMEOUT:
+                setTimeout(string(parameters, "type"), number(parameters, "ms"));
+                return null;
+            case DriverCommand.SEND_KEYS_TO_ACTIVE_ELEMENT:
+                sendKeys(keys(parameters.get("value")));
+                return null;
+            case DriverCommand.MOVE_TO:
+                if (parameters.get("element") != null) {
+                    mouse = ((Locatable) elements.get(string(parameters, "element"))).getCoordinates();
+                }
+                driver.getMouse().mouseMove(mouse());
+                return null;
+            case DriverCommand.CLICK:
+                driver.getMouse().click(mouse());
+                return null;
+            case DriverCommand.DOUBLE_CLICK:
+                driver.getMouse().doubleClick(mouse());
+                return null;
+            case DriverCommand.MOUSE_DOWN:
+                driver.getMouse().mouseDown(mouse());
+                return null;
+            case DriverCommand.MOUSE_UP:
+                driver.getMouse().mouseUp(mouse());
+                return null;
+            default:
+                throw new UnsupportedCommandException(name + " is not available in the htmlunit backend");
+        }
+    }
+
+    private Response response(Object value) {
+        Response response = new Response(sessionId);
+        response.setStatus(ErrorCodes.SUCCESS);
+        response.setValue(value);
+        return response;
+    }
+
+    private WebElement element(Map<String, ?> parameters) {
+        WebElement element = elements.get(string(parameters, "id"));
+        if (element == null) {
+            throw new StaleElementReferenceException("Unknown element " + parameters.get("id"));
+        }
+        return element;
+    }
+
+    private Object[] arguments(Map<String, ?> parameters) {
+        Object args = fromWire(parameters.get("args"));
+        return args instanceof List ? ((List<?>) args).toArray() : new Object[0];
+    }
+
+    private void switchToFrame(Object frame) {
+        if (frame == null) {
+            driver.switchTo().defaultContent();
+        } else if (frame instanceof Number) {
+            driver.switchTo().frame(((Number) frame).intValue());
+        } else if (frame instanceof WebElement) {
+            driver.switchTo().frame((WebElement) frame);
+        } else {
+            driver.switchTo().frame(String.valueOf(frame));
+        }
+    }
+
+    private void setTimeout(String type, int millis) {
+        if ("implicit".equals(type)) {
+            driver.manage().timeouts().implicitlyWait(millis, TimeUnit.MILLISECONDS);
+        } else if ("script".equals(type)) {
+            driver.manage().timeouts().setScriptTimeout(millis, TimeUnit.MILLISECONDS);
+        } else {
+            try {
+                driver.manage().timeouts().pageLoadTimeout(millis, TimeUnit.MILLISECONDS);
+            } catch (RuntimeException e) {
+                LOGGER.debug("Ignoring {} timeout: {}", type, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Keys sent to the page; a lone modifier toggles it, as the wire protocol does.
+     */
+    private void sendKeys(CharSequence[] keys) {
+        if (keys.length == 1 && keys[0] instanceof Keys && MODIFIERS.contains(keys[0])) {
+            Keys modifier = (Keys) keys[0];
+            if (pressed.remove(modifier)) {
+                driver.getKeyboard().releaseKey(modifier);
+            } else {
+                pressed.add(modifier);
+                driver.getKeyboard().pressKey(modifier);
+            }
+        } else {
+            driver.getKeyboard().sendKeys(keys);
+        }
+    }
+
+    private Coordinates mouse() {
+        if (mouse == null) {
+            mouse = ((Locatable) driver.switchTo().activeElement()).getCoordinates();
+        }
+        return mouse;
+    }
+
+    private List<Map<String, Object>> cookies() {
+        List<Map<String, Object>> cookies = new ArrayList<>();
+        for (Cookie cookie : driver.manage().getCookies()) {
+            Map<String, Object> value = new HashMap<>();
+            value.put("name", cookie.getName());
+            value.put("value", cookie.getValue());
+            value.put("path", cookie.getPath());
+            value.put("domain", cookie.getDomain());
+            value.put("secure", cookie.isSecure());
+            value.put("httpOnly", cookie.isHttpOnly());
+            if (cookie.getExpiry() != null) {
+                value.put("expiry", TimeUnit.MILLISECONDS.toSeconds(cookie.getExpiry().getTime()));
+            }
+            cookies.add(value);
+        }
+        return cookies;
+    }
+
+    private static Cookie cookie(Object cookie) {
+        if (cookie instanceof Cookie) {
+            return (Cookie) cookie;
+        }
+        Map<?, ?> value = (Map<?, ?>) cookie;
+        Date expiry = value.get("expiry") instanceof Number
+                ? new Date(TimeUnit.SECONDS.toMillis(((Number) value.get("expiry")).longValue())) : null;
+        return new Cookie((String) value.get("name"), (String) value.get("value"), (String) value.get("domain"),
+                (String) value.get("path"), expiry, Boolean.TRUE.equals(value.get("secure")),
+                Boolean.TRUE.equals(value.get("httpOnly")));
+    }
+
+    private static By by(Map<String, ?> parameters) {
+        String using = string(parameters, "using");
+        String value = string(parameters, "value");
+        switch (using) {
+            case "id":
+                return By.id(value);
+            case "name":
+                return By.name(value);
+            case "class name":
+                return By.className(value);
+            case "css selector":
+                return By.cssSelector(value);
+            case "xpath":
+                return By.xpath(value);
+            case "link text":
+                return By.linkText(value);
+            case "partial link text":
+                return By.partialLinkText(value);
+            case "tag name":
+                return By.tagName(value);
+            default:
+                throw new UnsupportedCommandException("Unknown locator strategy: " + using);
+        }
+    }
+
+    private static CharSequence[] keys(Object value) {
+        if (value instanceof CharSequence[]) {
+            return (CharSequence[]) value;
+        }
+        List<CharSequence> keys = new ArrayList<>();
+        for (Object key : (Collection<?>) value) {
+            keys.add(key instanceof CharSequence ? (CharSequence) key : String.valueOf(key));
+        }
+        return keys.toArray(new CharSequence[keys.size()]);
+    }
+
+    private static String string(Map<String, ?> parameters, String key) {
+        Object value = parameters.get(key);
+        return value == null ? null : String.valueOf(value);
+    }
+
+    private static int number(Map<String, ?> parameters, String key) {
+        return ((Number) parameters.get(key)).intValue();
+    }
+
+    private static Map<String, Object> point(Point point) {
+        Map<String, Object> value = new HashMap<>();
+        value.put("x", point.getX());
+        value.put("y", point.getY());
+        return value;
+    }
+
+    private static Map<String, Object> dimension(Dimension dimension) {
+        Map<String, Object> value = new HashMap<>();
+        value.put("width", dimension.getWidth());
+        value.put("height", dimension.getHeight());
+        return value;
+    }
+
+    /**
+     * Replace HtmlUnit elements by references the remote driver turns into remote elements.
+     */
+    private Object toWire(Object value) {
+        if (value instanceof WebElement) {
+            String id = ids.get(value);
+            if (id == null) {
+                id = String.valueOf(++lastId);
+                elements.put(id, (WebElement) value);
+                ids.put((WebElement) value, id);
+            }
+            Map<String, Object> reference = new HashMap<>();
+            reference.put(ELEMENT, id);
+            return reference;
+        }
+        if (value instanceof Collection) {
+            List<Object> converted = new ArrayList<>();
+            for (Object item : (Collection<?>) value) {
+                converted.add(toWire(item));
+            }
+            return converted;
+        }
+        if (value instanceof Map) {
+            Map<Object, Object> converted = new HashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                converted.put(entry.getKey(), toWire(entry.getValue()));
+            }
+            return converted;
+        }
+        return value;
+    }
+
+    /**
+     * Replace element references sent by the remote driver by HtmlUnit elements.
+     */
+    private Object fromWire(Object value) {
+        if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            if (map.containsKey(ELEMENT)) {
+                return elements.get(String.valueOf(map.get(ELEMENT)));
+            }
+            Map<Object, Object> converted = new HashMap<>();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                converted.put(entry.getKey(), fromWire(entry.getValue()));
+            }
+            return converted;
+        }
+        if (value instanceof Collection) {
+            List<Object> converted = new ArrayList<>();
+            for (Object item : (Collection<?>) value) {
+                converted.add(fromWire(item));
+            }
+            return converted;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import com.ning.http.client.Response;
+import com.ning.http.client.cookie.Cookie;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+
+/**
+ * Recorded http interactions of a feature.
+ * <p>
+ * Enabled with -DBDT_HTTP_MODE=record|replay. Each feature gets its own cassette file
+ * (one json interaction per line) under BDT_CASSETTE_DIR (src/test/resources/cassettes by
+ * default). Interactions are indexed by method, endpoint and normalized body; repeated
+ * requests are answered in the order they were recorded. In replay mode the network is
+ * never used and any request missing from the cassette, or sent more times than
+ * recorded, fails.
+ */
+public final class HttpCassette {
+
+    public static final String MODE_PROPERTY = "BDT_HTTP_MODE";
+
+    public static final String DIR_PROPERTY = "BDT_CASSETTE_DIR";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HttpCassette.class);
+
+    private static final Map<String, HttpCassette> CASSETTES = new ConcurrentHashMap<String, HttpCassette>();
+
+    private final File file;
+
+    private final boolean replay;
+
+    private final Map<String, List<Map<String, Object>>> index = new HashMap<String, List<Map<String, Object>>>();
+
+    private final Map<String, Integer> played = new HashMap<String, Integer>();
+
+    private HttpCassette(File file, boolean replay) throws IOException {
+        this.file = file;
+        this.replay = replay;
+        if (replay) {
+            load();
+        } else {
+            // A new recording replaces the previous one
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    /**
+     * Cassette for the feature being run in this thread.
+     *
+     * @return cassette, or null if record/replay mode is not enabled
+     * @throws IOException when the cassette cannot be read
+     */
+    public static HttpCassette forCurrentFeature() throws IOException {
+        String mode = System.getProperty(MODE_PROPERTY, "");
+        if (!"record".equalsIgnoreCase(mode) && !"replay".equalsIgnoreCase(mode)) {
+            return null;
+        }
+        String feature = ThreadProperty.get("feature") == null ? "default" : ThreadProperty.get("feature");
+        String name = feature.replaceAll("[^A-Za-z0-9._-]", "_") + ".cassette";
+        File file = new File(System.getProperty(DIR_PROPERTY, "src/test/resources/cassettes"), name);
+
+        synchronized (CASSETTES) {
+            HttpCassette cassette = CASSETTES.get(file.getPath());
+            if (cassette == null) {
+                cassette = new HttpCassette(file, "replay".equalsIgnoreCase(mode));
+                CASSETTES.put(file.getPath(), cassette);
+            }
+            return cassette;
+        }
+    }
+
+    public boolean isReplay() {
+        return replay;
+    }
+
+    /**
+     * Answer a request from the cassette.
+     *
+     * @param method   http method
+     * @param endPoint endpoint, without protocol nor host
+     * @param data     request body
+     * @param type     body type (json|string)
+     * @return completed response
+     * @throws Exception when the request was not recorded, or not that many times
+     */
+    public synchronized Future<Response> replay(String method, String endPoint, String data, String type) throws Exception {
+        String key = key(method, endPoint, data, type);
+        List<Map<String, Object>> interactions = index.get(key);
+        if (interactions == null) {
+            throw new Exception(mismatch(method, endPoint, data, type));
+        }
+        Integer count = played.get(key);
+        int position = count == null ? 0 : count;
+        if (position >= interactions.size()) {
+            throw new Exception("Request sent more times than recorded in cassette " + file + ": "
+                    + method.toUpperCase() + " " + endPoint + " was recorded " + interactions.size() + " time(s)");
+        }
+        played.put(key, position + 1);
+        return CompletableFuture.completedFuture((Response) new ReplayedResponse(interactions.get(position)));
+    }
+
+    /**
+     * Store an interaction.
+     *
+     * @param method   http method
+     * @param endPoint endpoint, without protocol nor host
+     * @param url      full url
+     * @param data     request body
+     * @param type     body type (json|string)
+     * @param headers  request headers
+     * @param response response obtained
+     * @return completed response
+     * @throws Exception when the response cannot be obtained or the cassette written
+     */
+    public synchronized Future<Response> record(String method, String endPoint, String url, String data, String type,
+                                                Map<String, String> headers, Future<Response> response) throws Exception {
+        Response obtained = response.get();
+
+        Map<String, Object> interaction = new LinkedHashMap<String, Object>();
+        interaction.put("key", key(method, endPoint, data, type));
+        interaction.put("method", method.toUpperCase());
+        interaction.put("url", url);
+        interaction.put("body", data);
+        interaction.put("headers", new TreeMap<String, String>(headers));
+        interaction.put("status", obtained.getStatusCode());
+        interaction.put("statusText", obtained.getStatusText());
+
+        Map<String, Object> responseHeaders = new TreeMap<String, Object>();
+        for (Map.Entry<String, List<String>> header : obtained.getHeaders().entrySet()) {
+            responseHeaders.put(header.getKey(), new ArrayList<String>(header.getValue()));
+        }
+        interaction.put("responseHeaders", responseHeaders);
+
+        List<Object> cookies = new ArrayList<Object>();
+        for (Cookie cookie : obtained.getCookies()) {
+            Map<String, Object> c = new LinkedHashMap<String, Object>();
+            c.put("name", cookie.getName());
+            c.put("value", cookie.getValue());
+            c.put("domain", cookie.getDomain());
+            c.put("path", cookie.getPath());
+            c.put("maxAge", cookie.getMaxAge());
+            c.put("secure", cookie.isSecure());
+            c.put("httpOnly", cookie.isHttpOnly());
+            cookies.add(c);
+        }
+        interaction.put("cookies", cookies);
+        interaction.put("response", obtained.getResponseBody());
+
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND), StandardCharsets.UTF_8))) {
+            writer.write(JsonDocuments.toJson(interaction));
+            writer.write("\n");
+        }
+        LOGGER.debug("Recorded {} {} in {}", method, endPoint, file);
+        return CompletableFuture.completedFuture(obtained);
+    }
+
+    /**
+     * Matching key of a request: method, endpoint and body. Json bodies are written with
+     * sorted keys so that key order does not matter.
+     *
+     * @param method   http method
+     * @param endPoint endpoint
+     * @param data     body
+     * @param type     body type
+     * @return String
+     */
+    static String key(String method, String endPoint, String data, String type) {
+        String body = data == null ? "" : data;
+        if ("json".equals(type) && !body.isEmpty()) {
+            try {
+                body = JsonDocuments.toJson(sorted(JsonDocuments.CONFIGURATION.jsonProvider().parse(body)));
+            } catch (Exception e) {
+                LOGGER.debug("Body is not valid json, matching it as text");
+            }
+        }
+        return method.toUpperCase() + " " + endPoint + " " + body;
+    }
+
+    private static Object sorted(Object tree) {
+        if (tree instanceof Map) {
+            Map<String, Object> result = new TreeMap<String, Object>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) tree).entrySet()) {
+                result.put(String.valueOf(entry.getKey()), sorted(entry.getValue()));
+            }
+            return result;
+        } else if (tree instanceof List) {
+            List<Object> result = new ArrayList<Object>();
+            for (Object element : (List<?>) tree) {
+                result.add(sorted(element));
+            }
+            return result;
+        }
+        return tree;
+    }
+
+    private String mismatch(String method, String endPoint, String data, String type) {
+        StringBuilder report = new StringBuilder();
+        report.append("Request not found in cassette ").append(file).append(": ")
+                .append(method.toUpperCase()).append(" ").append(endPoint);
+        if (data != null && !data.isEmpty()) {
+            report.append(" with body ").append(key(method, endPoint, data, type).substring(method.length() + endPoint.length() + 2));
+        }
+        String prefix = method.toUpperCase() + " " + endPoint + " ";
+        List<String> candidates = new ArrayList<String>();
+        for (String recorded : index.keySet()) {
+            if (recorded.startsWith(prefix)) {
+                candidates.add(recorded.substring(prefix.length()));
+            }
+        }
+        if (candidates.isEmpty()) {
+            report.append(". No interaction was recorded for that method and endpoint");
+        } else {
+            Collections.sort(candidates);
+            report.append(". Recorded bodies for that method and endpoint:");
+            for (String candidate : candidates) {
+                report.append("\n  ").append(candidate);
+            }
+        }
+        return report.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void load() throws IOException {
+        if (!file.exists()) {
+            throw new IOException("Cassette not found: " + file.getAbsolutePath());
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(file.toPath()), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                Map<String, Object> interaction = (Map<String, Object>) JsonDocuments.CONFIGURATION.jsonProvider().parse(line);
+                String key = (String) interaction.get("key");
+                List<Map<String, Object>> interactions = index.get(key);
+                if (interactions == null) {
+                    interactions = new ArrayList<Map<String, Object>>();
+                    index.put(key, interactions);
+                }
+                interactions.add(interaction);
+            }
+        }
+        LOGGER.debug("Loaded {} requests from cassette {}", index.size(), file);
+    }
+}
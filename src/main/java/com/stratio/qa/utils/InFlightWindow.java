@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.stratio.qa.utils;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Bounded number of asynchronous Cassandra requests pending at once.
+ * <p>
+ * The first failure is kept and rethrown by {@link #await()}; later submissions are still
+ * accepted, callers check {@link #failed()} to stop early.
+ */
+final class InFlightWindow {
+
+    private final int size;
+
+    private final Semaphore permits;
+
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    InFlightWindow(int size) {
+        this.size = Math.max(1, size);
+        this.permits = new Semaphore(this.size);
+    }
+
+    /**
+     * Send a statement, blocking while the window is full.
+     */
+    void submit(Session session, Statement statement) throws InterruptedException {
+        permits.acquire();
+        ResultSetFuture future;
+        try {
+            future = session.executeAsync(statement);
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        Futures.addCallback(future, new FutureCallback<ResultSet>() {
+            @Override
+            public void onSuccess(ResultSet result) {
+                permits.release();
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                failure.compareAndSet(null, t);
+                permits.release();
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    boolean failed() {
+        return failure.get() != null;
+    }
+
+    /**
+     * Wait for every pending statement.
+     *
+     * @throws IllegalStateException with the first failure as cause
+     */
+    void await() throws InterruptedException {
+        permits.acquire(size);
+        permits.release(size);
+        Throwable first = failure.get();
+        if (first != null) {
+            throw new IllegalStateException(first.getMessage(), first);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.spi.json.JsonProvider;
+import com.jayway.jsonpath.spi.json.JsonSmartJsonProvider;
+import com.jayway.jsonpath.spi.mapper.JsonSmartMappingProvider;
+import org.hjson.JsonObject;
+import org.hjson.JsonValue;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Internal json representation.
+ * <p>
+ * Json values are kept as trees of the jsonpath provider configured here (maps, lists
+ * and simple values). Text is only parsed when it comes in (templates, responses,
+ * environment variables) and only written when it goes out (request bodies, saved
+ * variables).
+ */
+public final class JsonDocuments {
+
+    /**
+     * Single jsonpath configuration used by every json operation.
+     */
+    public static final Configuration CONFIGURATION = Configuration.builder()
+            .jsonProvider(new JsonSmartJsonProvider())
+            .mappingProvider(new JsonSmartMappingProvider())
+            .build();
+
+    private JsonDocuments() {
+    }
+
+    /**
+     * Parse a json (or hjson) string into a mutable document.
+     * <p>
+     * The text is read once and the resulting tree is handed over to jsonpath, so
+     * no intermediate string is produced.
+     *
+     * @param json source text
+     * @return document
+     */
+    public static DocumentContext parse(String json) {
+        return document(toNative(JsonValue.readHjson(json)));
+    }
+
+    /**
+     * Wrap a json tree into a document, without copying it.
+     *
+     * @param tree map, list or simple value
+     * @return document
+     */
+    public static DocumentContext document(Object tree) {
+        return JsonPath.using(CONFIGURATION).parse(tree);
+    }
+
+    /**
+     * Write a json tree.
+     * <p>
+     * Simple values are written as their plain string representation, so a string
+     * value is returned without quotes.
+     *
+     * @param tree map, list or simple value
+     * @return String
+     */
+    public static String toJson(Object tree) {
+        if (tree instanceof Map || tree instanceof List) {
+            return CONFIGURATION.jsonProvider().toJson(tree);
+        }
+        return String.valueOf(tree);
+    }
+
+    /**
+     * Convert an hjson value into the jsonpath provider representation.
+     *
+     * @param value hjson value
+     * @return map, list, string, number, boolean or null
+     */
+    public static Object toNative(JsonValue value) {
+        JsonProvider provider = CONFIGURATION.jsonProvider();
+        if (value.isObject()) {
+            Object map = provider.createMap();
+            for (JsonObject.Member member : value.asObject()) {
+                provider.setProperty(map, member.getName(), toNative(member.getValue()));
+            }
+            return map;
+        } else if (value.isArray()) {
+            Object array = provider.createArray();
+            int i = 0;
+            for (JsonValue element : value.asArray()) {
+                provider.setArrayIndex(array, i++, toNative(element));
+            }
+            return array;
+        } else if (value.isString()) {
+            return value.asString();
+        } else if (value.isNumber()) {
+            return toNumber(value.asDouble());
+        } else if (value.isBoolean()) {
+            return value.asBoolean();
+        }
+        return null;
+    }
+
+    /**
+     * Convert an org.json value into the jsonpath provider representation.
+     *
+     * @param value JSONObject, JSONArray or simple value
+     * @return map, list, string, number, boolean or null
+     */
+    public static Object fromJSON(Object value) {
+        JsonProvider provider = CONFIGURATION.jsonProvider();
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            Object map = provider.createMap();
+            Iterator<?> keys = object.keys();
+            while (keys.hasNext()) {
+                String key = (String) keys.next();
+                provider.setProperty(map, key, fromJSON(object.get(key)));
+            }
+            return map;
+        } else if (value instanceof JSONArray) {
+            JSONArray jsonArray = (JSONArray) value;
+            Object array = provider.createArray();
+            for (int i = 0; i < jsonArray.length(); i++) {
+                provider.setArrayIndex(array, i, fromJSON(jsonArray.get(i)));
+            }
+            return array;
+        } else if (value instanceof Double || value instanceof Float) {
+            return toNumber(((Number) value).doubleValue());
+        } else if (JSONObject.NULL.equals(value)) {
+            return null;
+        }
+        return value;
+    }
+
+    /**
+     * Deep copy of a json tree. Simple values are immutable and shared.
+     *
+     * @param tree map, list or simple value
+     * @return copy
+     */
+    public static Object copy(Object tree) {
+        JsonProvider provider = CONFIGURATION.jsonProvider();
+        if (tree instanceof Map) {
+            Object map = provider.createMap();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) tree).entrySet()) {
+                provider.setProperty(map, entry.getKey(), copy(entry.getValue()));
+            }
+            return map;
+        } else if (tree instanceof List) {
+            Object array = provider.createArray();
+            int i = 0;
+            for (Object element : (List<?>) tree) {
+                provider.setArrayIndex(array, i++, copy(element));
+            }
+            return array;
+        }
+        return tree;
+    }
+
+    /**
+     * Integral values are kept as integers so they are written without decimals,
+     * as org.json and hjson do.
+     *
+     * @param value number
+     * @return Integer, Long or Double
+     */
+    public static Number toNumber(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < (1L << 53)) {
+            long longValue = (long) value;
+            if (longValue >= Integer.MIN_VALUE && longValue <= Integer.MAX_VALUE) {
+                return (int) longValue;
+            }
+            return longValue;
+        }
+        return value;
+    }
+}
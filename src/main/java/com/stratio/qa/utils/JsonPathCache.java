@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.ReadContext;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Bounded caches for parsed json documents and compiled jsonpath expressions.
+ * <p>
+ * Documents are keyed by their source text, so extracting several values from the
+ * same response or environment variable only parses it once. Cached documents are
+ * shared between lookups and must be treated as read only.
+ */
+public class JsonPathCache {
+
+    public static final int DEFAULT_MAX_DOCUMENTS = 8;
+
+    public static final int DEFAULT_MAX_EXPRESSIONS = 256;
+
+    private static final Map<String, JsonPath> EXPRESSIONS = Collections.synchronizedMap(
+            new LruMap<String, JsonPath>(Integer.parseInt(System.getProperty("JSONPATH_EXPRESSIONS_CACHE", String.valueOf(DEFAULT_MAX_EXPRESSIONS)))));
+
+    private final Map<String, ReadContext> documents;
+
+    /**
+     * Default constructor.
+     */
+    public JsonPathCache() {
+        this(Integer.parseInt(System.getProperty("JSONPATH_DOCUMENTS_CACHE", String.valueOf(DEFAULT_MAX_DOCUMENTS))));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxDocuments maximum number of parsed documents kept
+     */
+    public JsonPathCache(int maxDocuments) {
+        this.documents = new LruMap<String, ReadContext>(maxDocuments);
+    }
+
+    /**
+     * Compile a jsonpath expression, reusing a previous compilation when possible.
+     *
+     * @param expr jsonpath expression
+     * @return compiled expression
+     */
+    public static JsonPath compile(String expr) {
+        JsonPath path = EXPRESSIONS.get(expr);
+        if (path == null) {
+            path = JsonPath.compile(expr);
+            EXPRESSIONS.put(expr, path);
+        }
+        return path;
+    }
+
+    /**
+     * Get the parsed document for a json (or hjson) string.
+     *
+     * @param json source text
+     * @return read only document
+     */
+    public synchronized ReadContext parse(String json) {
+        ReadContext document = documents.get(json);
+        if (document == null) {
+            document = JsonDocuments.parse(json);
+            documents.put(json, document);
+        }
+        return document;
+    }
+
+    /**
+     * Evaluate a jsonpath expression over a json (or hjson) string.
+     *
+     * @param json source text
+     * @param expr jsonpath expression
+     * @param <T>  expected type
+     * @return evaluation result
+     */
+    public <T> T read(String json, String expr) {
+        return parse(json).read(compile(expr));
+    }
+
+    /**
+     * Discard every cached document.
+     */
+    public synchronized void clear() {
+        documents.clear();
+    }
+
+    /**
+     * Number of cached documents.
+     *
+     * @return size
+     */
+    public synchronized int size() {
+        return documents.size();
+    }
+}
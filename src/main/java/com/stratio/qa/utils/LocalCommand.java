@@ -0,0 +1,353 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a command through {@code /bin/sh -c}, draining stdout and stderr while it runs.
+ * <p>
+ * Every line is streamed to the logger as soon as it is read. Stdout lines are concatenated
+ * into the result (up to BDT_COMMAND_OUTPUT_LIMIT chars) and the last lines of each stream
+ * are kept in a bounded buffer. When BDT_COMMAND_SPILL_DIR is set, the complete stdout is
+ * also written to a file in that directory. A command running longer than its timeout is
+ * killed together with every process it started.
+ */
+public class LocalCommand {
+
+    public static final int TIMEOUT_EXIT_STATUS = 124;
+
+    public static final int DEFAULT_TAIL_LINES = 25;
+
+    public static final int DEFAULT_OUTPUT_LIMIT = 16 * 1024 * 1024;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalCommand.class);
+
+    private final String command;
+
+    private final long timeout;
+
+    private final int outputLimit;
+
+    private final LineTail stdout = new LineTail(DEFAULT_TAIL_LINES);
+
+    private final LineTail stderr = new LineTail(DEFAULT_TAIL_LINES);
+
+    private final StringBuilder result = new StringBuilder();
+
+    private boolean truncated;
+
+    private File spillFile;
+
+    private boolean spillFailed;
+
+    private int exitStatus;
+
+    private boolean timedOut;
+
+    /**
+     * Constructor.
+     *
+     * @param command command to be run
+     * @param timeout seconds to wait for the command, 0 waits forever
+     */
+    public LocalCommand(String command, long timeout) {
+        this.command = command;
+        this.timeout = timeout;
+        this.outputLimit = Integer.parseInt(System.getProperty("BDT_COMMAND_OUTPUT_LIMIT", String.valueOf(DEFAULT_OUTPUT_LIMIT)));
+    }
+
+    /**
+     * Run the command and wait for it to finish or time out.
+     *
+     * @return this command
+     * @throws IOException          if the command cannot be started
+     * @throws InterruptedException
+     */
+    public LocalCommand run() throws IOException, InterruptedException {
+        String spillDir = System.getProperty("BDT_COMMAND_SPILL_DIR");
+        Writer spillWriter = null;
+        if (spillDir != null) {
+            try {
+                spillFile = File.createTempFile("command-", ".log", new File(spillDir));
+                spillWriter = new BufferedWriter(new FileWriter(spillFile));
+            } catch (IOException e) {
+                // The command still runs, its output is only kept in memory
+                spillFailed = true;
+                if (spillFile != null && !spillFile.delete()) {
+                    LOGGER.debug("Unable to delete {}", spillFile);
+                }
+                spillFile = null;
+                LOGGER.warn("Unable to write output of '{}' to {}, not spilling it: {}", command, spillDir, e.getMessage());
+            }
+        }
+        final Writer spill = spillWriter;
+
+        Process process;
+        try {
+            process = Runtime.getRuntime().exec(new String[]{"/bin/sh", "-c", command});
+            process.getOutputStream().close();
+        } catch (IOException e) {
+            closeSpill(spill);
+            throw e;
+        }
+
+        Thread out = pump(process.getInputStream(), "stdout", new LineConsumer() {
+            @Override
+            public void accept(String line) {
+                stdout.add(line);
+                if (result.length() + line.length() <= outputLimit) {
+                    result.append(line);
+                } else if (!truncated) {
+                    truncated = true;
+                    LOGGER.warn("Output of '{}' exceeds {} chars, result truncated", command, outputLimit);
+                }
+                if (spill != null && !spillFailed) {
+                    try {
+                        spill.write(line);
+                        spill.write('\n');
+                    } catch (IOException e) {
+                        // Keep draining stdout, or the command would block on a full pipe
+                        spillFailed = true;
+                        LOGGER.warn("Unable to write output of '{}' to {}, no longer spilling it: {}", command, spillFile, e.getMessage());
+                    }
+                }
+            }
+        });
+        Thread err = pump(process.getErrorStream(), "stderr", new LineConsumer() {
+            @Override
+            public void accept(String line) {
+                stderr.add(line);
+            }
+        });
+
+        try {
+            if (timeout > 0) {
+                if (!process.waitFor(timeout, TimeUnit.SECONDS)) {
+                    timedOut = true;
+                    LOGGER.error("Command '{}' timed out after {} seconds, killing it", command, timeout);
+                    killTree(pid(process));
+                    process.destroyForcibly();
+                    process.waitFor(1, TimeUnit.SECONDS);
+                }
+            } else {
+                process.waitFor();
+            }
+            out.join(timedOut ? TimeUnit.SECONDS.toMillis(1) : 0);
+            err.join(timedOut ? TimeUnit.SECONDS.toMillis(1) : 0);
+        } finally {
+            if (process.isAlive()) {
+                process.destroyForcibly();
+            }
+            if (spill != null) {
+                synchronized (result) {
+                    closeSpill(spill);
+                }
+                if (!spillFailed) {
+                    LOGGER.debug("Output of '{}' stored in {}", command, spillFile);
+                }
+            }
+        }
+
+        exitStatus = timedOut ? TIMEOUT_EXIT_STATUS : process.exitValue();
+        return this;
+    }
+
+    private Thread pump(final InputStream stream, final String name, final LineConsumer consumer) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        LOGGER.debug("{}: {}", name, line);
+                        synchronized (result) {
+                            consumer.accept(line);
+                        }
+                    }
+                } catch (IOException e) {
+                    LOGGER.debug("Stopped reading {} of '{}': {}", name, command, e.getMessage());
+                }
+            }
+        }, "command-" + name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Concatenated stdout lines.
+     *
+     * @return result
+     */
+    public String getResult() {
+        synchronized (result) {
+            return result.toString();
+        }
+    }
+
+    public int getExitStatus() {
+        return exitStatus;
+    }
+
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    private void closeSpill(Writer spill) {
+        if (spill == null) {
+            return;
+        }
+        try {
+            spill.close();
+        } catch (IOException e) {
+            spillFailed = true;
+            LOGGER.warn("Unable to write output of '{}' to {}: {}", command, spillFile, e.getMessage());
+        }
+    }
+
+    /**
+     * File holding the complete stdout, if BDT_COMMAND_SPILL_DIR was set. It is incomplete
+     * if writing it failed, see {@link #isSpillFailed()}.
+     *
+     * @return file or null
+     */
+    public File getSpillFile() {
+        return spillFile;
+    }
+
+    public boolean isSpillFailed() {
+        return spillFailed;
+    }
+
+    /**
+     * Last stdout lines.
+     *
+     * @param lines maximum number of lines, up to {@link #DEFAULT_TAIL_LINES}
+     * @return lines, oldest first
+     */
+    public List<String> getTail(int lines) {
+        return stdout.last(lines);
+    }
+
+    /**
+     * Last stderr lines.
+     *
+     * @param lines maximum number of lines, up to {@link #DEFAULT_TAIL_LINES}
+     * @return lines, oldest first
+     */
+    public List<String> getErrorTail(int lines) {
+        return stderr.last(lines);
+    }
+
+    private static long pid(Process process) {
+        try {
+            return ((Number) Process.class.getMethod("pid").invoke(process)).longValue();
+        } catch (NoSuchMethodException e) {
+            try {
+                Field field = process.getClass().getDeclaredField("pid");
+                field.setAccessible(true);
+                return field.getLong(process);
+            } catch (ReflectiveOperationException | RuntimeException ex) {
+                return -1;
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Kill a process and, recursively, its children.
+     */
+    private static void killTree(long pid) throws InterruptedException {
+        if (pid <= 0) {
+            return;
+        }
+        List<Long> children = new ArrayList<>();
+        try {
+            Process pgrep = new ProcessBuilder("pgrep", "-P", String.valueOf(pid)).redirectErrorStream(true).start();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(pgrep.getInputStream()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.trim().matches("\\d+")) {
+                        children.add(Long.parseLong(line.trim()));
+                    }
+                }
+            }
+            pgrep.waitFor();
+            new ProcessBuilder("kill", "-9", String.valueOf(pid)).redirectErrorStream(true).start().waitFor();
+        } catch (IOException e) {
+            LOGGER.warn("Unable to kill process {}: {}", pid, e.getMessage());
+        }
+        for (Long child : children) {
+            killTree(child);
+        }
+    }
+
+    private interface LineConsumer {
+        void accept(String line) throws IOException;
+    }
+
+    /**
+     * Ring buffer with the last lines of a stream.
+     */
+    private static final class LineTail {
+
+        private final String[] lines;
+
+        private int next;
+
+        private int size;
+
+        LineTail(int capacity) {
+            this.lines = new String[capacity];
+        }
+
+        synchronized void add(String line) {
+            lines[next] = line;
+            next = (next + 1) % lines.length;
+            size = Math.min(size + 1, lines.length);
+        }
+
+        synchronized List<String> last(int count) {
+            int n = Math.min(count, size);
+            List<String> tail = new ArrayList<>(n);
+            for (int i = n; i > 0; i--) {
+                tail.add(lines[(next - i + lines.length) % lines.length]);
+            }
+            return tail;
+        }
+    }
+}
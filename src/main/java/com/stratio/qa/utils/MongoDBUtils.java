@@ -23,7 +23,15 @@ import cucumber.api.DataTable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.List;
@@ -31,16 +39,25 @@ import java.util.Set;
 
 /**
  * Generic operations over MongoDB Driver.
+ * <p>
+ * Inserts are sent as unordered bulk writes of MONGO_INSERT_BATCH_SIZE documents, with the
+ * MONGO_WRITE_CONCERN write concern (ACKNOWLEDGED by default).
  */
 public class MongoDBUtils {
 
     private static final Logger LOGGER = LoggerFactory
             .getLogger(MongoDBUtils.class);
 
+    private static final String DEFAULT_INSERT_BATCH_SIZE = "1000";
+
     private final String host;
 
     private final int port;
 
+    private final int insertBatchSize;
+
+    private final WriteConcern writeConcern;
+
     private MongoClient mongoClient;
 
     private DB dataBase;
@@ -51,6 +68,12 @@ public class MongoDBUtils {
     public MongoDBUtils() {
         this.host = System.getProperty("MONGO_HOST", "127.0.0.1");
         this.port = Integer.parseInt(System.getProperty("MONGO_PORT", "27017"));
+        this.insertBatchSize = Math.max(1, Integer.parseInt(System.getProperty("MONGO_INSERT_BATCH_SIZE", DEFAULT_INSERT_BATCH_SIZE)));
+        String concern = System.getProperty("MONGO_WRITE_CONCERN", "ACKNOWLEDGED");
+        this.writeConcern = WriteConcern.valueOf(concern.toUpperCase());
+        if (this.writeConcern == null) {
+            throw new IllegalArgumentException("Unknown MongoDB write concern " + concern);
+        }
     }
 
     /**
@@ -196,22 +219,41 @@ public class MongoDBUtils {
      *
      * @param collection
      * @param table
+     * @return number of documents inserted
+     */
+    public long insertIntoMongoDBCollection(String collection, DataTable table) {
+        List<List<String>> rows = table.raw();
+        List<String[]> colRel = coltoArrayList(rows.get(0));
+        BulkInsert bulk = new BulkInsert(collection);
+        for (int i = 1; i < rows.size(); i++) {
+            bulk.add(toDocument(colRel, rows.get(i)));
+        }
+        return bulk.finish();
+    }
+
+    /**
+     * Insert the documents of a JSON lines file (one document per line) in a MongoDB
+     * Collection. The file is read from the classpath, or else from the filesystem, as it
+     * is inserted.
+     *
+     * @param collection
+     * @param path
+     * @return number of documents inserted
+     * @throws IOException
      */
-    public void insertIntoMongoDBCollection(String collection, DataTable table) {
-        // Primero pasamos la fila del datatable a un hashmap de ColumnName-Type
-        List<String[]> colRel = coltoArrayList(table);
-        // Vamos insertando fila a fila
-        for (int i = 1; i < table.raw().size(); i++) {
-            // Obtenemos la fila correspondiente
-            BasicDBObject doc = new BasicDBObject();
-            List<String> row = table.raw().get(i);
-            for (int x = 0; x < row.size(); x++) {
-                String[] colNameType = colRel.get(x);
-                Object data = castSTringTo(colNameType[1], row.get(x));
-                doc.put(colNameType[0], data);
+    public long insertJsonLinesIntoMongoDBCollection(String collection, String path) throws IOException {
+        URL url = MongoDBUtils.class.getResource(path);
+        InputStream input = url != null ? url.openStream() : Files.newInputStream(Paths.get(path));
+        BulkInsert bulk = new BulkInsert(collection);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    bulk.add((DBObject) JSON.parse(line));
+                }
             }
-            this.dataBase.getCollection(collection).insert(doc);
         }
+        return bulk.finish();
     }
 
     /**
@@ -237,18 +279,11 @@ public class MongoDBUtils {
     public List<DBObject> readFromMongoDBCollection(String collection,
                                                     DataTable table) {
         List<DBObject> res = new ArrayList<DBObject>();
-        List<String[]> colRel = coltoArrayList(table);
+        List<List<String>> rows = table.raw();
+        List<String[]> colRel = coltoArrayList(rows.get(0));
         DBCollection aux = this.dataBase.getCollection(collection);
-        for (int i = 1; i < table.raw().size(); i++) {
-            // Obtenemos la fila correspondiente
-            BasicDBObject doc = new BasicDBObject();
-            List<String> row = table.raw().get(i);
-            for (int x = 0; x < row.size(); x++) {
-                String[] colNameType = colRel.get(x);
-                Object data = castSTringTo(colNameType[1], row.get(x));
-                doc.put(colNameType[0], data);
-            }
-            DBCursor cursor = aux.find(doc);
+        for (int i = 1; i < rows.size(); i++) {
+            DBCursor cursor = aux.find(toDocument(colRel, rows.get(i)));
             try {
                 while (cursor.hasNext()) {
                     res.add(cursor.next());
@@ -261,10 +296,8 @@ public class MongoDBUtils {
 
     }
 
-    private List<String[]> coltoArrayList(DataTable table) {
+    private List<String[]> coltoArrayList(List<String> firstRow) {
         List<String[]> res = new ArrayList<String[]>();
-        // Primero se obiente la primera fila del datatable
-        List<String> firstRow = table.raw().get(0);
         for (int i = 0; i < firstRow.size(); i++) {
             String[] colTypeArray = firstRow.get(i).split("-");
             res.add(colTypeArray);
@@ -272,20 +305,77 @@ public class MongoDBUtils {
         return res;
     }
 
-    private Object castSTringTo(String dataType, String data) {
+    private static BasicDBObject toDocument(List<String[]> colRel, List<String> row) {
+        BasicDBObject doc = new BasicDBObject();
+        for (int x = 0; x < row.size(); x++) {
+            String[] colNameType = colRel.get(x);
+            doc.put(colNameType[0], castSTringTo(colNameType[1], row.get(x)));
+        }
+        return doc;
+    }
+
+    static Object castSTringTo(String dataType, String data) {
         switch (dataType) {
             case "String":
                 return data;
             case "Integer":
                 return Integer.parseInt(data);
             case "Double":
-                return Double.parseDouble(dataType);
+                return Double.parseDouble(data);
             case "Boolean":
-                return Boolean.parseBoolean(dataType);
+                return Boolean.parseBoolean(data);
             case "Timestamp":
-                return Timestamp.valueOf(dataType);
+                return Timestamp.valueOf(data);
             default:
                 return null;
         }
     }
+
+    /**
+     * Documents of a collection sent as unordered bulk writes.
+     */
+    private final class BulkInsert {
+
+        private final DBCollection collection;
+
+        private final long start = System.nanoTime();
+
+        private BulkWriteOperation bulk;
+
+        private int pending;
+
+        private long count;
+
+        private BulkInsert(String collection) {
+            this.collection = dataBase.getCollection(collection);
+        }
+
+        private void add(DBObject document) {
+            if (bulk == null) {
+                bulk = collection.initializeUnorderedBulkOperation();
+            }
+            bulk.insert(document);
+            pending++;
+            count++;
+            if (pending >= insertBatchSize) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            if (pending > 0) {
+                bulk.execute(writeConcern);
+                bulk = null;
+                pending = 0;
+            }
+        }
+
+        private long finish() {
+            flush();
+            double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+            LOGGER.info("Inserted {} documents into {} in {} s ({} documents/s)", count, collection.getName(),
+                    String.format("%.3f", seconds), Math.round(count / seconds));
+            return count;
+        }
+    }
 }
@@ -24,16 +24,72 @@ public final class PreviousWebElements {
 
     private List<WebElement> previousWebElements;
 
+    private ElementSnapshot snapshot;
+
     public PreviousWebElements(List<WebElement> previousWebElements) {
         this.previousWebElements = previousWebElements;
     }
 
+    /**
+     * Constructor keeping the state read when the elements were located.
+     *
+     * @param previousWebElements elements
+     * @param snapshot            snapshot the elements come from, ignored if it holds other elements
+     */
+    public PreviousWebElements(List<WebElement> previousWebElements, ElementSnapshot snapshot) {
+        this.previousWebElements = previousWebElements;
+        if (snapshot != null && snapshot.getElements() == previousWebElements) {
+            this.snapshot = snapshot;
+        }
+    }
+
     public List<WebElement> getPreviousWebElements() {
         return previousWebElements;
     }
 
     public void setPreviousWebElements(List<WebElement> previousWebElements) {
         this.previousWebElements = previousWebElements;
+        this.snapshot = null;
+    }
+
+    public int size() {
+        return previousWebElements.size();
+    }
+
+    public boolean isDisplayed(int index) {
+        ElementSnapshot.State state = getState(index);
+        return state != null ? state.isDisplayed() : previousWebElements.get(index).isDisplayed();
+    }
+
+    public boolean isEnabled(int index) {
+        ElementSnapshot.State state = getState(index);
+        return state != null ? state.isEnabled() : previousWebElements.get(index).isEnabled();
+    }
+
+    public boolean isSelected(int index) {
+        ElementSnapshot.State state = getState(index);
+        return state != null ? state.isSelected() : previousWebElements.get(index).isSelected();
+    }
+
+    public String getText(int index) {
+        ElementSnapshot.State state = getState(index);
+        return state != null && state.hasText() ? state.getText() : previousWebElements.get(index).getText();
+    }
+
+    public String getAttribute(int index, String attribute) {
+        ElementSnapshot.State state = getState(index);
+        return state != null && state.hasAttribute(attribute) ? state.getAttribute(attribute)
+                : previousWebElements.get(index).getAttribute(attribute);
+    }
+
+    /**
+     * Snapshot state of an element, or null if it has to be read live.
+     */
+    private ElementSnapshot.State getState(int index) {
+        if (snapshot == null || index >= previousWebElements.size() || !snapshot.isFresh()) {
+            return null;
+        }
+        return snapshot.getState(index);
     }
 
-}
\ No newline at end of file
+}
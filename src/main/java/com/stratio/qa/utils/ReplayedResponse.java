@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.stratio.qa.utils;
+
+import com.ning.http.client.FluentCaseInsensitiveStringsMap;
+import com.ning.http.client.Response;
+import com.ning.http.client.cookie.Cookie;
+import com.ning.http.client.uri.Uri;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Response of an interaction recorded in a {@link HttpCassette}.
+ */
+final class ReplayedResponse implements Response {
+
+    private final Map<String, Object> interaction;
+
+    private final String body;
+
+    private final Map<String, List<String>> headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+
+    private final List<Cookie> cookies = new ArrayList<Cookie>();
+
+    private final Uri uri;
+
+    @SuppressWarnings("unchecked")
+    ReplayedResponse(Map<String, Object> interaction) {
+        this.interaction = interaction;
+        this.body = interaction.get("response") == null ? "" : (String) interaction.get("response");
+        this.uri = Uri.create((String) interaction.get("url"));
+        Map<String, Object> recordedHeaders = (Map<String, Object>) interaction.get("responseHeaders");
+        if (recordedHeaders != null) {
+            for (Map.Entry<String, Object> header : recordedHeaders.entrySet()) {
+                List<String> values = new ArrayList<String>();
+                for (Object value : (List<Object>) header.getValue()) {
+                    values.add(String.valueOf(value));
+                }
+                headers.put(header.getKey(), values);
+            }
+        }
+        if (interaction.get("cookies") != null) {
+            for (Object c : (List<Object>) interaction.get("cookies")) {
+                Map<String, Object> cookie = (Map<String, Object>) c;
+                cookies.add(new Cookie((String) cookie.get("name"), (String) cookie.get("value"), false,
+                        (String) cookie.get("domain"), (String) cookie.get("path"), ((Number) cookie.get("maxAge")).longValue(),
+                        (Boolean) cookie.get("secure"), (Boolean) cookie.get("httpOnly")));
+            }
+        }
+    }
+
+    @Override
+    public int getStatusCode() {
+        return ((Number) interaction.get("status")).intValue();
+    }
+
+    @Override
+    public String getStatusText() {
+        return (String) interaction.get("statusText");
+    }
+
+    @Override
+    public byte[] getResponseBodyAsBytes() {
+        return body.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public ByteBuffer getResponseBodyAsByteBuffer() {
+        return ByteBuffer.wrap(getResponseBodyAsBytes());
+    }
+
+    @Override
+    public InputStream getResponseBodyAsStream() {
+        return new ByteArrayInputStream(getResponseBodyAsBytes());
+    }
+
+    /**
+     * Recorded bodies are stored as text, the charset is not used.
+     */
+    @Override
+    public String getResponseBodyExcerpt(int maxLength, String charset) {
+        return getResponseBodyExcerpt(maxLength);
+    }
+
+    /**
+     * Recorded bodies are stored as text, the charset is not used.
+     */
+    @Override
+    public String getResponseBody(String charset) {
+        return body;
+    }
+
+    @Override
+    public String getResponseBodyExcerpt(int maxLength) {
+        return body.substring(0, Math.min(body.length(), maxLength));
+    }
+
+    @Override
+    public String getResponseBody() {
+        return body;
+    }
+
+    @Override
+    public Uri getUri() {
+        return uri;
+    }
+
+    @Override
+    public String getContentType() {
+        return getHeader("Content-Type");
+    }
+
+    @Override
+    public String getHeader(String name) {
+        List<String> values = headers.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    @Override
+    public List<String> getHeaders(String name) {
+        List<String> values = headers.get(name);
+        return values == null ? Collections.<String>emptyList() : Collections.unmodifiableList(values);
+    }
+
+    @Override
+    public FluentCaseInsensitiveStringsMap getHeaders() {
+        return new FluentCaseInsensitiveStringsMap(headers);
+    }
+
+    @Override
+    public boolean isRedirected() {
+        int status = getStatusCode();
+        return status >= 300 && status < 400 && getHeader("Location") != null;
+    }
+
+    @Override
+    public List<Cookie> getCookies() {
+        return Collections.unmodifiableList(cookies);
+    }
+
+    @Override
+    public boolean hasResponseStatus() {
+        return interaction.get("status") != null;
+    }
+
+    @Override
+    public boolean hasResponseHeaders() {
+        return !headers.isEmpty();
+    }
+
+    @Override
+    public boolean hasResponseBody() {
+        return !body.isEmpty();
+    }
+
+    /**
+     * Address the request was recorded against, unresolved since no connection is made.
+     *
+     * @return SocketAddress
+     */
+    public SocketAddress getRemoteAddress() {
+        return InetSocketAddress.createUnresolved(uri.getHost(), uri.getExplicitPort());
+    }
+
+    /**
+     * No local socket is bound when replaying.
+     *
+     * @return null
+     */
+    public SocketAddress getLocalAddress() {
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "Replayed " + interaction.get("method") + " " + interaction.get("url") + " -> " + interaction.get("status");
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.JsonPath;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Json modifications table compiled for a parsed document.
+ * <p>
+ * Modification paths are compiled and typed values are built once, then every modification
+ * is applied over the same document tree. Values are used as written in the table, whose
+ * placeholders have already been replaced by ReplacementAspect. See {@link BodyTemplate}
+ * for request bodies compiled with the document.
+ */
+public class RequestTemplate {
+
+    private final List<Modification> modifications = new ArrayList<Modification>();
+
+    private final Map<String, String> headers = new LinkedHashMap<String, String>();
+
+    private boolean filtered;
+
+    /**
+     * Constructor.
+     *
+     * @param rows modifications table (key, operation, value[, type])
+     * @throws Exception when the table contains an unknown modification type
+     */
+    public RequestTemplate(List<List<String>> rows) throws Exception {
+        String typeJsonObject = "";
+        for (int i = 0; i < rows.size(); i++) {
+            String composeKey = rows.get(i).get(0);
+            String operation = rows.get(i).get(1);
+            String newValue = rows.get(i).get(2);
+
+            if (rows.get(0).size() == 4) {
+                typeJsonObject = rows.get(i).get(3);
+            }
+            filtered |= composeKey.contains("[?(");
+
+            switch (operation.toUpperCase()) {
+                case "HEADER":
+                    headers.put(composeKey, newValue);
+                    break;
+                case "DELETE":
+                case "ADD":
+                case "UPDATE":
+                case "APPEND":
+                case "PREPEND":
+                case "REPLACE":
+                case "ADDTO":
+                    modifications.add(new Modification(composeKey, operation.toUpperCase(), newValue, typeJsonObject));
+                    break;
+                default:
+                    throw new Exception("Modification type does not exist: " + operation);
+            }
+        }
+    }
+
+    /**
+     * Whether any modification changes the body, HEADER rows aside.
+     *
+     * @return boolean
+     */
+    public boolean modifiesBody() {
+        return !modifications.isEmpty();
+    }
+
+    /**
+     * Apply the modifications over a document.
+     *
+     * @param document       document to be modified, it can be null if {@link #modifiesBody()} is false
+     * @param requestHeaders map where HEADER rows are put
+     */
+    public void apply(DocumentContext document, Map<String, String> requestHeaders) {
+        apply(document, requestHeaders, null);
+    }
+
+    /**
+     * Apply the modifications over a document, stopping if a text REPLACE finds {@code marker}
+     * in the value it rewrites.
+     *
+     * @param document       document to be modified
+     * @param requestHeaders map where HEADER rows are put
+     * @param marker         text that must not be rewritten, or null
+     * @return false if a modification was not applied because of the marker
+     */
+    boolean apply(DocumentContext document, Map<String, String> requestHeaders, String marker) {
+        requestHeaders.putAll(headers);
+        for (Modification modification : modifications) {
+            if (!modification.apply(document, marker)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether any path selects nodes with a filter expression, so it depends on the values
+     * of the document.
+     *
+     * @return boolean
+     */
+    boolean isFiltered() {
+        return filtered;
+    }
+
+    /**
+     * Whether the value of a row is inserted as is (or typed) in the document, so it can
+     * change without changing the shape of the modified document. HEADER rows are not.
+     *
+     * @param operation      modification type
+     * @param typeJsonObject type column, empty if there is none
+     * @return boolean
+     */
+    static boolean isBound(String operation, String typeJsonObject) {
+        switch (operation.toUpperCase()) {
+            case "ADD":
+            case "UPDATE":
+            case "APPEND":
+            case "PREPEND":
+                return true;
+            case "REPLACE":
+            case "ADDTO":
+                return isTyped(typeJsonObject);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Typed value for REPLACE and ADDTO modifications.
+     *
+     * @param newValue       value as written in the modifications table
+     * @param typeJsonObject type of the value (array|object|string|number|boolean|null)
+     * @return Object
+     */
+    static Object typedValue(String newValue, String typeJsonObject) {
+        switch (typeJsonObject) {
+            case "array":
+                return JsonDocuments.fromJSON("[]".equals(newValue) ? new JSONArray() : new JSONArray(newValue));
+            case "object":
+                return JsonDocuments.fromJSON("{}".equals(newValue) ? new JSONObject() : new JSONObject(newValue));
+            case "number":
+                return JsonDocuments.toNumber(Double.valueOf(newValue));
+            case "boolean":
+                return Boolean.valueOf(newValue);
+            case "null":
+                return null;
+            default:
+                return newValue;
+        }
+    }
+
+    static boolean isTyped(String typeJsonObject) {
+        switch (typeJsonObject) {
+            case "array":
+            case "object":
+            case "string":
+            case "number":
+            case "boolean":
+            case "null":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static final class Modification {
+
+        private final String operation;
+
+        private final String value;
+
+        private final String typeJsonObject;
+
+        private final boolean typed;
+
+        private final Object typedValue;
+
+        private final JsonPath path;
+
+        private final String key;
+
+        Modification(String composeKey, String operation, String value, String typeJsonObject) {
+            this.operation = operation;
+            this.value = value;
+            this.typeJsonObject = typeJsonObject;
+            this.typed = isTyped(typeJsonObject) && ("REPLACE".equals(operation) || "ADDTO".equals(operation));
+            this.typedValue = typed ? typedValue(value, typeJsonObject) : null;
+
+            if ("ADD".equals(operation)) {
+                // Get the last key
+                if (composeKey.contains(".")) {
+                    this.key = composeKey.substring(composeKey.lastIndexOf('.') + 1);
+                    this.path = JsonPathCache.compile(composeKey.substring(0, composeKey.lastIndexOf('.')));
+                } else {
+                    this.key = composeKey;
+                    this.path = JsonPathCache.compile("$");
+                }
+            } else {
+                this.key = null;
+                this.path = JsonPathCache.compile(composeKey);
+            }
+        }
+
+        boolean apply(DocumentContext document, String marker) {
+            String newValue = value;
+            Object newTypedValue = null;
+            if (typed) {
+                newTypedValue = JsonDocuments.copy(typedValue);
+            }
+
+            switch (operation) {
+                case "DELETE":
+                    document.delete(path);
+                    break;
+                case "ADD":
+                    document.put(path, key, newValue);
+                    break;
+                case "UPDATE":
+                    document.set(path, newValue);
+                    break;
+                case "APPEND":
+                    String appendValue = document.read(path);
+                    document.set(path, appendValue + newValue);
+                    break;
+                case "PREPEND":
+                    String prependValue = document.read(path);
+                    document.set(path, newValue + prependValue);
+                    break;
+                case "REPLACE":
+                    if (typed) {
+                        document.set(path, newTypedValue);
+                    } else {
+                        String replaceValue = document.read(path);
+                        if (marker != null && replaceValue.contains(marker)) {
+                            return false;
+                        }
+                        String toBeReplaced = newValue.split("->")[0];
+                        String replacement = newValue.split("->")[1];
+                        document.set(path, replaceValue.replace(toBeReplaced, replacement));
+                    }
+                    break;
+                case "ADDTO":
+                    if (typed) {
+                        document.add(path, newTypedValue);
+                    }
+                    // TO-DO: understand  newValue.split("->")[0];  and  newValue.split("->")[1];
+                    break;
+                default:
+                    break;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import com.datastax.driver.core.utils.Bytes;
+import org.bson.types.Binary;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * Occurrences matcher for query results.
+ * <p>
+ * Expected results come as a table whose columns are result fields plus an
+ * "occurrences" column. Every obtained row is normalized once into a key made of the
+ * values of the expected columns and, if it is one of the expected keys, its counter is
+ * updated with a single lookup. Rows are not kept, so results can be fed as they are
+ * streamed from the database, whatever their size; only a small sample of unexpected
+ * keys is retained to report failures.
+ */
+public class ResultsMatcher {
+
+    public static final String OCCURRENCES = "occurrences";
+
+    private static final int DIFF_MAX_KEYS = 10;
+
+    private final List<String> columns = new ArrayList<String>();
+
+    private final List<List<String>> expectedKeys = new ArrayList<List<String>>();
+
+    private final List<Integer> expectedOccurrences = new ArrayList<Integer>();
+
+    private final Map<List<String>, int[]> counts = new HashMap<List<String>, int[]>();
+
+    private final Map<List<String>, int[]> unexpected = new LinkedHashMap<List<String>, int[]>();
+
+    private long rows = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param expectedResults expected results table, header included
+     * @throws Exception when the table has no occurrences column
+     */
+    public ResultsMatcher(List<List<String>> expectedResults) throws Exception {
+        List<String> header = expectedResults.get(0);
+        int occurrencesIndex = header.indexOf(OCCURRENCES);
+        if (occurrencesIndex == -1) {
+            throw new Exception("Expected results must contain an '" + OCCURRENCES + "' column");
+        }
+        for (String column : header) {
+            if (!OCCURRENCES.equals(column)) {
+                columns.add(column);
+            }
+        }
+        for (int e = 1; e < expectedResults.size(); e++) {
+            List<String> key = new ArrayList<String>(columns.size());
+            for (int i = 0; i < header.size(); i++) {
+                if (i != occurrencesIndex) {
+                    key.add(expectedResults.get(e).get(i));
+                }
+            }
+            expectedKeys.add(key);
+            counts.put(key, new int[1]);
+            expectedOccurrences.add(Integer.parseInt(expectedResults.get(e).get(occurrencesIndex).trim()));
+        }
+    }
+
+    /**
+     * Columns, in order, the keys passed to {@link #add(List)} must be made of.
+     *
+     * @return expected columns, occurrences excluded
+     */
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Count an obtained row.
+     *
+     * @param key normalized values of the row for {@link #getColumns()}
+     */
+    public void add(List<String> key) {
+        rows++;
+        int[] count = counts.get(key);
+        if (count != null) {
+            count[0]++;
+        } else {
+            count = unexpected.get(key);
+            if (count != null) {
+                count[0]++;
+            } else if (unexpected.size() < DIFF_MAX_KEYS) {
+                unexpected.put(key, new int[]{1});
+            }
+        }
+    }
+
+    /**
+     * Number of rows counted so far.
+     *
+     * @return rows
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Occurrences counted so far for an expected key.
+     *
+     * @param key normalized values
+     * @return occurrences
+     */
+    public int occurrences(List<String> key) {
+        int[] count = counts.get(key);
+        return count == null ? 0 : count[0];
+    }
+
+    /**
+     * Check every expected row.
+     *
+     * @throws AssertionError listing every row whose occurrences do not match
+     */
+    public void verify() {
+        StringBuilder errors = new StringBuilder();
+        for (int e = 0; e < expectedKeys.size(); e++) {
+            int obtained = occurrences(expectedKeys.get(e));
+            if (obtained != expectedOccurrences.get(e)) {
+                errors.append("In row ").append(e).append(" ").append(expectedKeys.get(e)).append(" have been found ")
+                        .append(obtained).append(" results and ").append(expectedOccurrences.get(e)).append(" were expected\n");
+            }
+        }
+        if (errors.length() > 0) {
+            fail(errors.append(diff()).toString());
+        }
+    }
+
+    private String diff() {
+        StringBuilder diff = new StringBuilder();
+        diff.append(rows).append(" rows obtained");
+        if (!unexpected.isEmpty()) {
+            diff.append(", some of the values found for ").append(columns).append(" not expected:");
+            for (Map.Entry<List<String>, int[]> entry : unexpected.entrySet()) {
+                diff.append("\n  ").append(entry.getKey()).append(" x").append(entry.getValue()[0]);
+            }
+        }
+        return diff.toString();
+    }
+
+    /**
+     * Normalize a CQL value as written in feature tables.
+     *
+     * @param value value read from a Cassandra row
+     * @return String
+     */
+    public static String cql(Object value) {
+        if (value == null) {
+            return "null";
+        } else if (value instanceof ByteBuffer) {
+            return Bytes.toHexString((ByteBuffer) value);
+        }
+        return value.toString();
+    }
+
+    /**
+     * Normalize a BSON value as written in feature tables.
+     *
+     * @param value value read from a Mongo document
+     * @return String
+     */
+    public static String bson(Object value) {
+        if (value == null) {
+            return "null";
+        } else if (value instanceof Binary) {
+            return Bytes.toHexString(((Binary) value).getData());
+        } else if (value instanceof byte[]) {
+            return Bytes.toHexString((byte[]) value);
+        }
+        return value.toString();
+    }
+
+    /**
+     * Normalize a CSV value.
+     *
+     * @param value value read from a CSV record
+     * @return String
+     */
+    public static String csv(String value) {
+        return value == null ? "null" : value;
+    }
+}
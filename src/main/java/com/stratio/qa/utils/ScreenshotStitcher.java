@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import javax.imageio.ImageIO;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Joins the screenshots taken while scrolling a page into a single png.
+ */
+public final class ScreenshotStitcher {
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+
+    private static final int IHDR_WIDTH_OFFSET = 16;
+
+    private ScreenshotStitcher() {
+    }
+
+    /**
+     * Stitch screenshots vertically and encode the result as png.
+     * <p>
+     * The final size is taken from the png headers, so every tile is decoded exactly once
+     * and drawn straight into the final image.
+     *
+     * @param tiles       png screenshots, top to bottom
+     * @param trailingCut rows at the top of the last tile already shown in the previous one
+     * @param output      stream receiving the png
+     * @throws IOException
+     */
+    public static void stitch(List<byte[]> tiles, int trailingCut, OutputStream output) throws IOException {
+        int width = 0;
+        int height = -trailingCut;
+        for (byte[] tile : tiles) {
+            Dimension size = dimensions(tile);
+            width = Math.max(width, size.width);
+            height += size.height;
+        }
+        if (width <= 0 || height <= 0) {
+            throw new IOException("Nothing to stitch");
+        }
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            int y = 0;
+            for (int i = 0; i < tiles.size(); i++) {
+                BufferedImage tile = decode(tiles.get(i));
+                if (i == tiles.size() - 1 && trailingCut > 0) {
+                    tile = tile.getSubimage(0, Math.min(trailingCut, tile.getHeight()), tile.getWidth(),
+                            Math.max(tile.getHeight() - trailingCut, 0));
+                }
+                graphics.drawImage(tile, 0, y, null);
+                y += tile.getHeight();
+            }
+        } finally {
+            graphics.dispose();
+        }
+
+        if (!ImageIO.write(image, "png", output)) {
+            throw new IOException("No png encoder available");
+        }
+    }
+
+    /**
+     * Image size, read from the IHDR chunk of a png without decoding it.
+     *
+     * @param image encoded image
+     * @return size
+     * @throws IOException
+     */
+    public static Dimension dimensions(byte[] image) throws IOException {
+        if (isPng(image)) {
+            return new Dimension(readInt(image, IHDR_WIDTH_OFFSET), readInt(image, IHDR_WIDTH_OFFSET + 4));
+        }
+        BufferedImage decoded = decode(image);
+        return new Dimension(decoded.getWidth(), decoded.getHeight());
+    }
+
+    private static boolean isPng(byte[] image) {
+        if (image.length < IHDR_WIDTH_OFFSET + 8) {
+            return false;
+        }
+        for (int i = 0; i < PNG_SIGNATURE.length; i++) {
+            if (image[i] != PNG_SIGNATURE[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xff) << 24) | ((bytes[offset + 1] & 0xff) << 16)
+                | ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+    }
+
+    private static BufferedImage decode(byte[] image) throws IOException {
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(image));
+        if (decoded == null) {
+            throw new IOException("Unsupported image format");
+        }
+        return decoded;
+    }
+}
@@ -0,0 +1,457 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cached model of the browser slots of the selenium grid (Singleton).
+ * <p>
+ * Slots are read from the grid status endpoint (selenium 4) or, when it does not describe
+ * the nodes, scraped from the grid console. The model is refreshed in the background every
+ * SELENIUM_GRID_REFRESH seconds once used. It also schedules browser sessions: test
+ * threads take a slot before opening a session and wait while no slot of that browser is
+ * free, instead of queueing on the grid. A slot is free when it is neither in use by this
+ * JVM nor busy in the last grid refresh, so sessions of other clients are accounted for.
+ */
+public enum SeleniumGrid {
+    INSTANCE;
+
+    public static final int DEFAULT_TIMEOUT = 20000;
+
+    public static final long DEFAULT_REFRESH_SECONDS = 30;
+
+    public static final long DEFAULT_SLOT_TIMEOUT_SECONDS = 600;
+
+    private static final int IMAGE_EXTENSION_LENGTH = 4;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SeleniumGrid.class);
+
+    private final Map<String, Capacity> capacities = new HashMap<>();
+
+    private List<Slot> slots;
+
+    private String grid;
+
+    private ScheduledExecutorService refresher;
+
+    private long pooled;
+
+    /**
+     * Outcome of waiting for a slot.
+     */
+    private enum Wait {
+        FREE, TIMED_OUT, POOLED
+    }
+
+    /**
+     * Browser slot of a grid node.
+     */
+    public static final class Slot {
+
+        private final String browser;
+
+        private final String capabilities;
+
+        private final boolean busy;
+
+        Slot(String browser, String capabilities, boolean busy) {
+            this.browser = browser;
+            this.capabilities = capabilities;
+            this.busy = busy;
+        }
+
+        /**
+         * Browser name and version, as in ThreadProperty browser.
+         *
+         * @return browser
+         */
+        public String getBrowser() {
+            return browser;
+        }
+
+        /**
+         * Capabilities as "{key=value, ...}", null when the grid does not publish them.
+         *
+         * @return capabilities
+         */
+        public String getCapabilities() {
+            return capabilities;
+        }
+
+        public boolean isBusy() {
+            return busy;
+        }
+
+        /**
+         * Check the slot capabilities against a filter. Every entry is a regexp matched
+         * as "key=value[,|}]"; slots without capabilities always match.
+         *
+         * @param filter capability filter
+         * @return true if the slot matches
+         */
+        public boolean matches(Map<String, String> filter) {
+            if (capabilities == null) {
+                return true;
+            }
+            for (Map.Entry<String, String> f : filter.entrySet()) {
+                if (!Pattern.compile(f.getKey() + "=" + f.getValue() + "[,|}]").matcher(capabilities).find()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Known slots of a browser, with those in use by this JVM and those busy in the grid.
+     * Busy slots follow local takes and releases until the next refresh.
+     */
+    private static final class Capacity {
+
+        private int total;
+
+        private int inUse;
+
+        private int busy;
+
+        private boolean isFree() {
+            return Math.max(inUse, busy) < total;
+        }
+    }
+
+    /**
+     * Get the grid slots, loading them on first use.
+     *
+     * @return slots, empty if SELENIUM_GRID is not set or not reachable
+     */
+    public List<Slot> getSlots() {
+        String current = System.getProperty("SELENIUM_GRID");
+        if (current == null) {
+            return Collections.emptyList();
+        }
+        synchronized (this) {
+            if (slots == null || !current.equals(grid)) {
+                refresh();
+                startRefresher();
+            }
+            return slots;
+        }
+    }
+
+    /**
+     * Reload the grid slots. A failed reload keeps the previous model.
+     */
+    public void refresh() {
+        String current = System.getProperty("SELENIUM_GRID");
+        if (current == null) {
+            return;
+        }
+        List<Slot> loaded = statusSlots(current);
+        if (loaded == null) {
+            loaded = consoleSlots(current);
+        }
+
+        synchronized (this) {
+            if (loaded == null) {
+                if (slots == null || !current.equals(grid)) {
+                    slots = Collections.emptyList();
+                }
+            } else {
+                slots = Collections.unmodifiableList(loaded);
+                Map<String, int[]> counts = new HashMap<>();
+                for (Slot slot : loaded) {
+                    int[] count = counts.get(slot.getBrowser());
+                    if (count == null) {
+                        count = new int[2];
+                        counts.put(slot.getBrowser(), count);
+                    }
+                    count[0]++;
+                    if (slot.isBusy()) {
+                        count[1]++;
+                    }
+                }
+                for (Map.Entry<String, int[]> count : counts.entrySet()) {
+                    setCapacity(count.getKey(), count.getValue()[0], count.getValue()[1]);
+                }
+            }
+            grid = current;
+        }
+    }
+
+    /**
+     * Update the known slots of a browser and wake the threads waiting for one.
+     *
+     * @param browser browser name and version
+     * @param total   slots of the browser
+     * @param busy    slots running a session
+     */
+    synchronized void setCapacity(String browser, int total, int busy) {
+        Capacity capacity = capacities.get(browser);
+        if (capacity == null) {
+            capacity = new Capacity();
+            capacities.put(browser, capacity);
+        }
+        capacity.total = total;
+        capacity.busy = busy;
+        notifyAll();
+    }
+
+    private void startRefresher() {
+        if (refresher != null) {
+            return;
+        }
+        long period = Long.parseLong(System.getProperty("SELENIUM_GRID_REFRESH", String.valueOf(DEFAULT_REFRESH_SECONDS)));
+        refresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "selenium-grid-refresh");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        refresher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    refresh();
+                } catch (RuntimeException e) {
+                    LOGGER.debug("Unable to refresh selenium grid status: {}", e.getMessage());
+                }
+            }
+        }, period, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Take a slot of a browser, waiting up to SELENIUM_SLOT_TIMEOUT seconds for one to be
+     * free. Browsers whose capacity is unknown are not throttled. The slot is taken even if
+     * the wait times out, so the session is queued by the grid as before.
+     *
+     * @param browser browser name and version
+     * @return false if the wait timed out
+     * @throws InterruptedException
+     */
+    public boolean acquire(String browser) throws InterruptedException {
+        getSlots();
+        return takeSlot(browser, System.currentTimeMillis() + getSlotTimeout(), -1) == Wait.FREE;
+    }
+
+    /**
+     * Take an idle session of a browser from the pool or, if there is none, a slot to open
+     * one, as in {@link #acquire(String)}. The pool is checked again whenever it gets an idle
+     * session of the browser while waiting, as pooled sessions keep their slot.
+     *
+     * @param browser browser name and version
+     * @param pool    session pool
+     * @return pooled session, or null once a slot is taken
+     * @throws InterruptedException
+     */
+    public RemoteWebDriver acquire(String browser, WebDriverPool pool) throws InterruptedException {
+        getSlots();
+        long deadline = System.currentTimeMillis() + getSlotTimeout();
+        while (true) {
+            long seen;
+            synchronized (this) {
+                seen = pooled;
+            }
+            RemoteWebDriver driver = pool.acquire(browser);
+            if (driver != null) {
+                return driver;
+            }
+            if (takeSlot(browser, deadline, seen) != Wait.POOLED) {
+                return null;
+            }
+        }
+    }
+
+    private long getSlotTimeout() {
+        return TimeUnit.SECONDS.toMillis(Long.parseLong(System.getProperty("SELENIUM_SLOT_TIMEOUT",
+                String.valueOf(DEFAULT_SLOT_TIMEOUT_SECONDS))));
+    }
+
+    /**
+     * Wait for a free slot and take it. With {@code seen} not negative, the wait also ends
+     * without taking a slot once an idle session has been pooled since {@code seen}.
+     */
+    private synchronized Wait takeSlot(String browser, long deadline, long seen) throws InterruptedException {
+        Capacity capacity = capacities.get(browser);
+        if (capacity == null) {
+            return Wait.FREE;
+        }
+        Wait result = Wait.FREE;
+        while (!capacity.isFree()) {
+            if (seen >= 0 && pooled != seen) {
+                return Wait.POOLED;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                LOGGER.warn("No free {} slot after {} ms, leaving it to the grid", browser, getSlotTimeout());
+                result = Wait.TIMED_OUT;
+                break;
+            }
+            wait(remaining);
+        }
+        capacity.inUse++;
+        capacity.busy++;
+        return result;
+    }
+
+    /**
+     * Give back a slot taken with {@link #acquire(String)}.
+     *
+     * @param browser browser name and version
+     */
+    public synchronized void release(String browser) {
+        Capacity capacity = capacities.get(browser);
+        if (capacity != null && capacity.inUse > 0) {
+            capacity.inUse--;
+            capacity.busy = Math.max(0, capacity.busy - 1);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Wake the threads waiting for a slot, as an idle session has been pooled.
+     */
+    public synchronized void sessionPooled() {
+        pooled++;
+        notifyAll();
+    }
+
+    /**
+     * Slots described by the selenium 4 status endpoint.
+     *
+     * @return slots, or null if the endpoint does not describe them
+     */
+    private static List<Slot> statusSlots(String grid) {
+        JSONObject status;
+        try {
+            status = new JSONObject(Jsoup.connect("http://" + grid + "/status").ignoreContentType(true)
+                    .timeout(DEFAULT_TIMEOUT).execute().body());
+        } catch (IOException | JSONException e) {
+            LOGGER.debug("Selenium grid status not available: {}", e.getMessage());
+            return null;
+        }
+        JSONObject value = status.optJSONObject("value");
+        JSONArray nodes = value == null ? null : value.optJSONArray("nodes");
+        if (nodes == null) {
+            return null;
+        }
+
+        List<Slot> found = new ArrayList<>();
+        for (int i = 0; i < nodes.length(); i++) {
+            JSONObject node = nodes.getJSONObject(i);
+            if (!"UP".equalsIgnoreCase(node.optString("availability", "UP"))) {
+                continue;
+            }
+            JSONArray nodeSlots = node.optJSONArray("slots");
+            for (int j = 0; nodeSlots != null && j < nodeSlots.length(); j++) {
+                JSONObject slot = nodeSlots.getJSONObject(j);
+                JSONObject stereotype = slot.optJSONObject("stereotype");
+                if (stereotype == null) {
+                    continue;
+                }
+                String browserName = stereotype.optString("browserName");
+                String version = stereotype.optString("browserVersion", stereotype.optString("version", ""));
+
+                Map<String, String> capabilities = new TreeMap<>();
+                Iterator<?> keys = stereotype.keys();
+                while (keys.hasNext()) {
+                    String key = keys.next().toString();
+                    capabilities.put(key, String.valueOf(stereotype.get(key)));
+                }
+                capabilities.put("version", version);
+
+                found.add(new Slot(browserName + "_" + version, capabilities.toString(), !slot.isNull("session")));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Slots scraped from the grid console.
+     *
+     * @return slots, or null if the console is not available
+     */
+    private static List<Slot> consoleSlots(String grid) {
+        Document doc;
+        try {
+            doc = Jsoup.connect("http://" + grid + "/grid/console").timeout(DEFAULT_TIMEOUT).get();
+        } catch (IOException e) {
+            LOGGER.debug("Exception on connecting to Selenium grid: {}", e.getMessage());
+            return null;
+        }
+
+        List<Slot> found = new ArrayList<>();
+        Pattern pat = Pattern.compile("browserName=(.*?),.*?(version=(.*?)[,|}])");
+        Elements slaves = doc.select("div.proxy");
+        for (Element slave : slaves) {
+            String slaveStatus = slave.select("p.proxyname").first().text();
+            if (!slaveStatus.contains("Connection") && !slaveStatus.contains("Conexión")) {
+                int iBusy = 0;
+                Elements browserList = slave.select("div.content_detail").select("*[title]");
+                Elements busyBrowserList = slave.select("div.content_detail").select("p > .busy");
+                for (Element browserDetails : browserList) {
+                    String title = browserDetails.attr("title");
+                    if (title.startsWith("{")) {
+                        Matcher m = pat.matcher(title);
+                        while (m.find()) {
+                            found.add(new Slot(m.group(1) + "_" + m.group(3), title, false));
+                        }
+                    } else {
+                        String version = busyBrowserList.get(iBusy).parent().text();
+                        String browser = busyBrowserList.get(iBusy).text();
+                        version = version.substring(2);
+                        version = version.replace(browser, "");
+                        String browserSrc = busyBrowserList.get(iBusy).select("img").attr("src");
+                        if (!browserSrc.equals("")) {
+                            browser = browserSrc.substring(browserSrc.lastIndexOf('/') + 1, browserSrc.length()
+                                    - IMAGE_EXTENSION_LENGTH);
+                        }
+                        found.add(new Slot(browser + "_" + version, null, true));
+                        iBusy++;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+}
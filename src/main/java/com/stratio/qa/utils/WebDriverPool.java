@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Pool of warm selenium sessions, keyed by browser (Singleton).
+ * <p>
+ * Enabled with SELENIUM_SESSION_POOL=true. A released session is reset (extra windows
+ * closed, storage and cookies cleared, about:blank loaded) and handed to the next
+ * scenario asking for the same browser, until it has been used SELENIUM_SESSION_MAX_REUSE
+ * times. Sessions failing a health check or a reset are quit and dropped, giving their
+ * {@link SeleniumGrid} slot back.
+ * <p>
+ * WebDriver only reaches the storage and cookies of the page it has open, so the reset
+ * clears those of the origin open when the session is released. State left by other
+ * origins visited in the scenario is kept for the next one; suites that need a clean
+ * browser profile for every scenario should not enable the pool.
+ */
+public enum WebDriverPool {
+    INSTANCE;
+
+    public static final int DEFAULT_MAX_REUSE = 20;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WebDriverPool.class);
+
+    private final Map<String, Deque<RemoteWebDriver>> idle = new HashMap<>();
+
+    private final Map<RemoteWebDriver, Integer> uses = new IdentityHashMap<>();
+
+    WebDriverPool() {
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                WebDriverPool.this.clear();
+            }
+        }, "webdriver-pool-shutdown"));
+    }
+
+    public boolean isEnabled() {
+        return Boolean.parseBoolean(System.getProperty("SELENIUM_SESSION_POOL", "false"));
+    }
+
+    private int getMaxReuse() {
+        return Integer.parseInt(System.getProperty("SELENIUM_SESSION_MAX_REUSE", String.valueOf(DEFAULT_MAX_REUSE)));
+    }
+
+    /**
+     * Take a healthy idle session.
+     *
+     * @param key browser
+     * @return session or null if none is available
+     */
+    public RemoteWebDriver acquire(String key) {
+        while (true) {
+            RemoteWebDriver driver;
+            synchronized (this) {
+                Deque<RemoteWebDriver> sessions = idle.get(key);
+                driver = sessions == null ? null : sessions.pollFirst();
+            }
+            if (driver == null) {
+                return null;
+            }
+            try {
+                driver.getWindowHandle();
+                LOGGER.debug("Reusing selenium session {} for {}", driver.getSessionId(), key);
+                return driver;
+            } catch (RuntimeException e) {
+                LOGGER.debug("Dropping unhealthy selenium session {}: {}", driver.getSessionId(), e.getMessage());
+                discard(key, driver);
+            }
+        }
+    }
+
+    /**
+     * Give back a session after a scenario.
+     *
+     * @param key      browser
+     * @param driver   session
+     * @param reusable false if the scenario hit an error, so the session is quit
+     */
+    public void release(String key, RemoteWebDriver driver, boolean reusable) {
+        int used;
+        synchronized (this) {
+            Integer count = uses.get(driver);
+            used = count == null ? 1 : count + 1;
+            uses.put(driver, used);
+        }
+        if (!isEnabled() || !reusable || used >= getMaxReuse()) {
+            discard(key, driver);
+            return;
+        }
+        try {
+            reset(driver);
+        } catch (RuntimeException e) {
+            LOGGER.debug("Unable to reset selenium session {}: {}", driver.getSessionId(), e.getMessage());
+            discard(key, driver);
+            return;
+        }
+        synchronized (this) {
+            Deque<RemoteWebDriver> sessions = idle.get(key);
+            if (sessions == null) {
+                sessions = new ArrayDeque<>();
+                idle.put(key, sessions);
+            }
+            sessions.addFirst(driver);
+        }
+        SeleniumGrid.INSTANCE.sessionPooled();
+    }
+
+    private void reset(RemoteWebDriver driver) {
+        String main = null;
+        for (String handle : driver.getWindowHandles()) {
+            if (main == null) {
+                main = handle;
+            } else {
+                driver.switchTo().window(handle);
+                driver.close();
+            }
+        }
+        driver.switchTo().window(main);
+        driver.switchTo().defaultContent();
+        try {
+            ((JavascriptExecutor) driver).executeScript("try { window.localStorage.clear(); } catch (e) {}"
+                    + " try { window.sessionStorage.clear(); } catch (e) {}");
+        } catch (RuntimeException e) {
+            LOGGER.debug("Unable to clear web storage: {}", e.getMessage());
+        }
+        driver.manage().deleteAllCookies();
+        driver.get("about:blank");
+    }
+
+    private void discard(String key, RemoteWebDriver driver) {
+        synchronized (this) {
+            uses.remove(driver);
+        }
+        try {
+            driver.quit();
+        } catch (RuntimeException e) {
+            LOGGER.debug("Unable to quit selenium session: {}", e.getMessage());
+        } finally {
+            SeleniumGrid.INSTANCE.release(key);
+        }
+    }
+
+    /**
+     * Quit every idle session.
+     */
+    public void clear() {
+        Map<String, Deque<RemoteWebDriver>> sessions;
+        synchronized (this) {
+            sessions = new HashMap<>(idle);
+            idle.clear();
+        }
+        for (Map.Entry<String, Deque<RemoteWebDriver>> drivers : sessions.entrySet()) {
+            for (RemoteWebDriver driver : drivers.getValue()) {
+                discard(drivers.getKey(), driver);
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.datastax.driver.core;
+
+/**
+ * Murmur3 token ranges for unit tests, as the driver only builds them from cluster metadata.
+ */
+public final class Murmur3Ranges {
+
+    private static final Token.Factory FACTORY = Token.getFactory("org.apache.cassandra.dht.Murmur3Partitioner");
+
+    private Murmur3Ranges() {
+    }
+
+    public static Token token(long value) {
+        return FACTORY.fromString(String.valueOf(value));
+    }
+
+    public static Token minToken() {
+        return FACTORY.minToken();
+    }
+
+    public static TokenRange range(Token start, Token end) {
+        return new TokenRange(start, end, FACTORY);
+    }
+
+    public static TokenRange range(long start, long end) {
+        return range(token(start), token(end));
+    }
+}
@@ -17,6 +17,7 @@ package com.stratio.qa.specs;
 
 import com.ning.http.client.AsyncHttpClient;
 import com.ning.http.client.Response;
+import com.stratio.qa.utils.LocalCommand;
 import com.stratio.qa.utils.RemoteSSHConnection;
 import com.stratio.qa.utils.ThreadProperty;
 import cucumber.api.DataTable;
@@ -591,6 +592,24 @@ public class CommonGTest {
         JSONAssert.assertEquals(expectedData, modifiedData, false);
     }
 
+    @Test
+    public void modifyDataSeveralModificationsJsonTest() throws Exception {
+        ThreadProperty.set("class", this.getClass().getCanonicalName());
+        CommonG commong = new CommonG();
+        String data = jsonObject1.toString();
+        String expectedData = "{\"key2\":{\"key3\":null,\"key4\":\"value4\"},\"key5\":5}";
+        String type = "json";
+        List<List<String>> rawData = Arrays.asList(
+                Arrays.asList("key2.key3", "REPLACE", "null", "null"),
+                Arrays.asList("key2.key4", "ADD", "value4", "N/A"),
+                Arrays.asList("key1", "DELETE", "N/A", "N/A"),
+                Arrays.asList("key5", "ADD", "0", "N/A"),
+                Arrays.asList("key5", "REPLACE", "5", "number"));
+        DataTable modifications = DataTable.create(rawData);
+        String modifiedData = commong.modifyData(data, type, modifications);
+        JSONAssert.assertEquals(expectedData, modifiedData, true);
+    }
+
     @Test
     public void modifyDataAddToJsonArrayTest_1() throws Exception {
         ThreadProperty.set("class", this.getClass().getCanonicalName());
@@ -968,6 +987,28 @@ public class CommonGTest {
         assertThat(exitstatus).as("Running nonexistent command 'shur' locally").isEqualTo(127);
     }
 
+    @Test
+    public void testLocalCommandLargeOutput() throws Exception {
+        ThreadProperty.set("class", this.getClass().getCanonicalName());
+        CommonG commong = new CommonG();
+        commong.runLocalCommand("seq 1 200000; echo done >&2");
+
+        assertThat(commong.getCommandExitStatus()).as("Running command seq locally").isEqualTo(0);
+        assertThat(commong.getCommandResult()).as("Running command seq locally").startsWith("123").endsWith("199999200000");
+    }
+
+    @Test
+    public void testLocalCommandTimeout() throws Exception {
+        ThreadProperty.set("class", this.getClass().getCanonicalName());
+        CommonG commong = new CommonG();
+        long start = System.currentTimeMillis();
+        commong.runLocalCommand("echo start; sleep 60", 1);
+
+        assertThat(System.currentTimeMillis() - start).as("Command killed on timeout").isLessThan(30000);
+        assertThat(commong.getCommandExitStatus()).as("Command killed on timeout").isEqualTo(LocalCommand.TIMEOUT_EXIT_STATUS);
+        assertThat(commong.getCommandResult()).as("Command killed on timeout").isEqualTo("start");
+    }
+
     @Test
     public void testGetSSHConnection() throws Exception {
         ThreadProperty.set("class", this.getClass().getCanonicalName());
@@ -1231,5 +1272,16 @@ public class CommonGTest {
         assertThat(value1).as("Value for search does not match").isEqualTo("paaslab34.stratio.com");
     }
 
+    @Test
+    public void testParseJSONPositionOverStringArray() throws Exception {
+        ThreadProperty.set("class", this.getClass().getCanonicalName());
+        String jsonString = "{\"hosts\": \"[\\\"paaslab31\\\", \\\"paaslab33\\\"]\"}";
+
+        CommonG commong = new CommonG();
+
+        assertThat(commong.getJSONPathString(jsonString, "$.hosts", "1")).as("Value in position 1 does not match")
+                .isEqualTo("paaslab33");
+    }
+
 
 }
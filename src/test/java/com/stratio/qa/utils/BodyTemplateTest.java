@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import com.jayway.jsonpath.DocumentContext;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BodyTemplateTest {
+
+    private static final String BASE = "{\"key1\":\"value1\",\"key2\":[\"a\"],\"n\":1,\"obj\":{\"x\":\"y\"},\"gone\":true}";
+
+    @Test
+    public void testValuesBoundOverCompiledBody() throws Exception {
+        List<List<String>> first = rows("v\"1", "5", "{}", "-é", "new", "gzip");
+        List<List<String>> second = rows("other", "2.5", "{\"c\":[1]}", "\\tail", "", "deflate");
+        assertThat(BodyTemplate.layout(second)).isEqualTo(BodyTemplate.layout(first));
+
+        BodyTemplate template = new BodyTemplate(BASE, first);
+        Map<String, String> headers = new HashMap<>();
+
+        assertThat(template.isCompiled()).isTrue();
+        assertThat(new String(template.render(first, headers), StandardCharsets.UTF_8)).isEqualTo(modified(first));
+        assertThat(new String(template.render(second, headers), StandardCharsets.UTF_8)).isEqualTo(modified(second));
+        assertThat(headers).containsEntry("Content-Encoding", "deflate");
+    }
+
+    @Test
+    public void testTextReplaceOverBoundValue() throws Exception {
+        List<List<String>> first = Arrays.asList(
+                Arrays.asList("key1", "UPDATE", "abc", "N/A"),
+                Arrays.asList("key1", "REPLACE", "b->X", "N/A"));
+        List<List<String>> second = Arrays.asList(
+                Arrays.asList("key1", "UPDATE", "xbz", "N/A"),
+                Arrays.asList("key1", "REPLACE", "b->X", "N/A"));
+
+        BodyTemplate template = new BodyTemplate(BASE, first);
+
+        assertThat(template.isCompiled()).isFalse();
+        assertThat(new String(template.render(second, new HashMap<String, String>()), StandardCharsets.UTF_8))
+                .isEqualTo(modified(second)).contains("\"xXz\"");
+    }
+
+    @Test
+    public void testLayoutKeepsShapeValues() {
+        List<List<String>> first = Arrays.asList(Arrays.asList("key1", "REPLACE", "a->b", "N/A"));
+        List<List<String>> second = Arrays.asList(Arrays.asList("key1", "REPLACE", "a->c", "N/A"));
+
+        assertThat(BodyTemplate.layout(first)).isNotEqualTo(BodyTemplate.layout(second));
+    }
+
+    private static List<List<String>> rows(String update, String number, String object, String append, String add, String header) {
+        return Arrays.asList(
+                Arrays.asList("key1", "UPDATE", update, "N/A"),
+                Arrays.asList("n", "REPLACE", number, "number"),
+                Arrays.asList("key2", "ADDTO", object, "object"),
+                Arrays.asList("obj.x", "APPEND", append, "N/A"),
+                Arrays.asList("key3", "ADD", add, "N/A"),
+                Arrays.asList("gone", "DELETE", "N/A", "N/A"),
+                Arrays.asList("Content-Encoding", "HEADER", header, "N/A"));
+    }
+
+    private static String modified(List<List<String>> rows) throws Exception {
+        DocumentContext document = JsonDocuments.parse(BASE);
+        new RequestTemplate(rows).apply(document, new HashMap<String, String>());
+        return document.jsonString();
+    }
+}
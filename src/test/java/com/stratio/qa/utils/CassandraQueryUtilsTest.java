@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.stratio.qa.utils;
+
+import org.testng.annotations.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CassandraQueryUtilsTest {
+
+    @Test
+    public void testInsertData() {
+        Map<String, Object> fields = new LinkedHashMap<String, Object>();
+        fields.put("place", "'Madrid'");
+        fields.put("latitude", 2.5);
+        fields.put("longitude", "2.6");
+
+        assertThat(new CassandraQueryUtils().insertData("opera.location", fields))
+                .isEqualTo("INSERT INTO opera.location (place, latitude, longitude) VALUES ('Madrid', 2.5, 2.6);");
+    }
+}
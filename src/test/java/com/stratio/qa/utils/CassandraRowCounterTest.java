@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Token;
+import com.datastax.driver.core.TokenRange;
+import com.datastax.driver.core.exceptions.DriverException;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static com.datastax.driver.core.Murmur3Ranges.minToken;
+import static com.datastax.driver.core.Murmur3Ranges.range;
+import static com.datastax.driver.core.Murmur3Ranges.token;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CassandraRowCounterTest {
+
+    @Test
+    public void testSplitUnwrapsRangeOverMinToken() {
+        Metadata metadata = mock(Metadata.class);
+        when(metadata.getTokenRanges()).thenReturn(new HashSet<>(Arrays.asList(range(-100, 100), range(100, -100))));
+
+        List<TokenRange> ranges = new CassandraRowCounter(mock(CassandraUtils.class), 1, 1, 0).split(metadata);
+
+        assertThat(minToken()).isEqualTo(token(Long.MIN_VALUE));
+        assertThat(ranges).containsOnly(range(-100, 100), range(100, Long.MIN_VALUE), range(Long.MIN_VALUE, -100));
+        for (TokenRange range : ranges) {
+            assertThat(range.isWrappedAround()).isFalse();
+        }
+    }
+
+    @Test
+    public void testSplitEvenlyPerWorker() {
+        Metadata metadata = mock(Metadata.class);
+        when(metadata.getTokenRanges()).thenReturn(new HashSet<>(Arrays.asList(range(-100, 300))));
+
+        List<TokenRange> ranges = new CassandraRowCounter(mock(CassandraUtils.class), 2, 1, 0).split(metadata);
+
+        assertThat(ranges).containsOnly(range(-100, 100), range(100, 300));
+    }
+
+    @Test
+    public void testBoundedRangeStatement() throws InterruptedException {
+        Session session = mock(Session.class, RETURNS_DEEP_STUBS);
+        PreparedStatement bounded = mock(PreparedStatement.class);
+        PreparedStatement open = mock(PreparedStatement.class);
+        BoundStatement statement = mock(BoundStatement.class);
+        when(bounded.bind()).thenReturn(statement);
+        when(session.execute(statement).one().getLong(0)).thenReturn(7L);
+        TokenRange range = range(-100, 100);
+
+        assertThat(new CassandraRowCounter(client(session), 1, 1, 0).countRange(range, bounded, open)).isEqualTo(7L);
+        verify(statement).setToken(0, range.getStart());
+        verify(statement).setToken(1, range.getEnd());
+        verify(open, never()).bind();
+    }
+
+    @Test
+    public void testRangeEndingAtMinTokenIsOpen() throws InterruptedException {
+        Session session = mock(Session.class, RETURNS_DEEP_STUBS);
+        PreparedStatement bounded = mock(PreparedStatement.class);
+        PreparedStatement open = mock(PreparedStatement.class);
+        BoundStatement statement = mock(BoundStatement.class);
+        when(open.bind()).thenReturn(statement);
+        when(session.execute(statement).one().getLong(0)).thenReturn(3L);
+        TokenRange range = range(100, Long.MIN_VALUE);
+
+        assertThat(new CassandraRowCounter(client(session), 1, 1, 0).countRange(range, bounded, open)).isEqualTo(3L);
+        verify(statement).setToken(0, range.getStart());
+        verify(statement, never()).setToken(eq(1), any(Token.class));
+        verify(bounded, never()).bind();
+    }
+
+    @Test
+    public void testFailedRangeIsRetried() throws InterruptedException {
+        Session session = mock(Session.class);
+        PreparedStatement bounded = mock(PreparedStatement.class);
+        BoundStatement statement = mock(BoundStatement.class);
+        when(bounded.bind()).thenReturn(statement);
+        ResultSet result = mock(ResultSet.class, RETURNS_DEEP_STUBS);
+        when(result.one().getLong(0)).thenReturn(5L);
+        when(session.execute(statement)).thenThrow(new DriverException("Timed out")).thenReturn(result);
+
+        CassandraRowCounter counter = new CassandraRowCounter(client(session), 1, 1, 1);
+        assertThat(counter.countRange(range(-100, 100), bounded, mock(PreparedStatement.class))).isEqualTo(5L);
+        verify(session, times(2)).execute(statement);
+    }
+
+    @Test
+    public void testRetriesAreBounded() throws InterruptedException {
+        Session session = mock(Session.class);
+        PreparedStatement bounded = mock(PreparedStatement.class);
+        BoundStatement statement = mock(BoundStatement.class);
+        when(bounded.bind()).thenReturn(statement);
+        when(session.execute(statement)).thenThrow(new DriverException("Timed out"));
+
+        CassandraRowCounter counter = new CassandraRowCounter(client(session), 1, 1, 1);
+        try {
+            counter.countRange(range(-100, 100), bounded, mock(PreparedStatement.class));
+            fail("Expected the range count to fail");
+        } catch (DriverException e) {
+            assertThat(e).hasMessage("Timed out");
+        }
+        verify(session, times(2)).execute(statement);
+    }
+
+    private static CassandraUtils client(Session session) {
+        CassandraUtils cassandra = mock(CassandraUtils.class);
+        when(cassandra.getSession()).thenReturn(session);
+        return cassandra;
+    }
+}
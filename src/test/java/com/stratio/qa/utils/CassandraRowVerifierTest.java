@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.stratio.qa.utils;
+
+import com.datastax.driver.core.TypeCodec;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CassandraRowVerifierTest {
+
+    @Test
+    public void testUnquotedLiterals() {
+        assertThat(CassandraRowVerifier.parse(TypeCodec.varchar(), "ab")).isEqualTo("ab");
+        assertThat(CassandraRowVerifier.parse(TypeCodec.varchar(), "'ab'")).isEqualTo("ab");
+        assertThat(CassandraRowVerifier.parse(TypeCodec.varchar(), "it's")).isEqualTo("it's");
+        assertThat(CassandraRowVerifier.parse(TypeCodec.varchar(), "123")).isEqualTo("123");
+        assertThat(CassandraRowVerifier.parse(TypeCodec.cint(), " 123 ")).isEqualTo(123);
+        assertThat(CassandraRowVerifier.parse(TypeCodec.cboolean(), "true")).isEqualTo(true);
+    }
+
+    @Test
+    public void testTypedValuesMatchByEquality() {
+        List<Object> expected = Arrays.<Object>asList(CassandraRowVerifier.parse(TypeCodec.cint(), "1"),
+                CassandraRowVerifier.parse(TypeCodec.varchar(), "a"));
+        Set<List<Object>> found = new HashSet<>();
+        found.add(Arrays.<Object>asList(1, "a"));
+
+        assertThat(found.contains(expected)).isTrue();
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import com.stratio.qa.cucumber.testng.ICucumberFormatter;
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ClasspathIndexTest {
+
+    @Test
+    public void testSubTypesInPackage() {
+        assertThat(ClasspathIndex.INSTANCE.getSubTypesOf(ICucumberFormatter.class, "com.stratio.qa.utils"))
+                .contains(CukesGHooks.class);
+        assertThat(ClasspathIndex.INSTANCE.getSubTypesOf(ICucumberFormatter.class, "com.stratio.qa.specs"))
+                .doesNotContain(CukesGHooks.class);
+    }
+
+    @Test
+    public void testSubTypesAreCached() {
+        assertThat(ClasspathIndex.INSTANCE.getSubTypesOf(ICucumberFormatter.class))
+                .isSameAs(ClasspathIndex.INSTANCE.getSubTypesOf(ICucumberFormatter.class));
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.stratio.qa.utils;
+
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CqlScriptTest {
+
+    private List<String> statements(String cql) throws IOException {
+        List<String> result = new ArrayList<>();
+        try (CqlScript script = new CqlScript(new StringReader(cql))) {
+            String statement;
+            while ((statement = script.next()) != null) {
+                result.add(statement);
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void testStatementsAndComments() throws IOException {
+        List<String> statements = statements("# legacy comment\n"
+                + "CREATE TABLE k.t (a text PRIMARY KEY,\n b text);\n"
+                + "-- comment; with a terminator\n"
+                + "INSERT INTO k.t (a, b) VALUES ('it''s; fine', 'x--y'); // trailing\n"
+                + "/* block;\n comment */ UPDATE k.t SET b = $$a;b$$ WHERE a = '1';\n"
+                + "SELECT * FROM k.t WHERE a = '1'");
+
+        assertThat(statements).containsExactly("CREATE TABLE k.t (a text PRIMARY KEY,\n b text)",
+                "INSERT INTO k.t (a, b) VALUES ('it''s; fine', 'x--y')",
+                "UPDATE k.t SET b = $$a;b$$ WHERE a = '1'",
+                "SELECT * FROM k.t WHERE a = '1'");
+    }
+
+    @Test
+    public void testBatchIsOneStatement() throws IOException {
+        List<String> statements = statements("BEGIN UNLOGGED BATCH\n"
+                + "  INSERT INTO k.t (a) VALUES ('1');\n"
+                + "  INSERT INTO k.t (a) VALUES ('2');\n"
+                + "APPLY BATCH;\n"
+                + "TRUNCATE k.t;");
+
+        assertThat(statements).hasSize(2);
+        assertThat(statements.get(0)).startsWith("BEGIN UNLOGGED BATCH").endsWith("APPLY BATCH");
+        assertThat(CqlScript.isDataChange(statements.get(0))).isTrue();
+        assertThat(CqlScript.isDataChange(statements.get(1))).isFalse();
+        assertThat(CqlScript.isSchemaChange(statements.get(1))).isFalse();
+        assertThat(CqlScript.isSchemaChange("drop table k.t")).isTrue();
+    }
+
+    @Test
+    public void testOrderSensitiveDataChanges() {
+        assertThat(CqlScript.isOrderSensitive("INSERT INTO k.t (a) VALUES ('1') IF NOT EXISTS")).isTrue();
+        assertThat(CqlScript.isOrderSensitive("UPDATE k.t SET b = 1 WHERE a = '1' IF b = 0")).isTrue();
+        assertThat(CqlScript.isOrderSensitive("DELETE FROM k.t USING TIMESTAMP 5 WHERE a = '1'")).isTrue();
+        assertThat(CqlScript.isOrderSensitive("INSERT INTO k.t (a) VALUES ('1') USING TTL 5 AND TIMESTAMP 6")).isTrue();
+        assertThat(CqlScript.isOrderSensitive("UPDATE k.t SET b = 'if' WHERE a = '1'")).isFalse();
+        assertThat(CqlScript.isOrderSensitive("INSERT INTO k.t (\"if\") VALUES ($$ IF $$)")).isFalse();
+    }
+
+    @Test
+    public void testUsedKeyspace() {
+        assertThat(CqlScript.usedKeyspace("USE k1")).isEqualTo("k1");
+        assertThat(CqlScript.usedKeyspace("use \"Mixed\"\"Case\";")).isEqualTo("\"Mixed\"\"Case\"");
+        assertThat(CqlScript.usedKeyspace("SELECT * FROM k1.users")).isNull();
+        assertThat(CqlScript.usedKeyspace("UPDATE k1.t SET use = 1 WHERE a = '1'")).isNull();
+    }
+
+    @Test
+    public void testScriptFromClasspath() {
+        List<String> statements = CassandraUtils.loadScript("/schemas/cassandrascript.cql");
+        assertThat(statements).hasSize(1);
+        assertThat(statements.get(0)).startsWith("CREATE CUSTOM INDEX IF NOT EXISTS users_index").endsWith("}");
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CsvTableTest {
+
+    private Path write(String content) throws IOException {
+        Path file = Files.createTempFile("csvtable", ".csv");
+        file.toFile().deleteOnExit();
+        Files.write(file, content.getBytes(StandardCharsets.ISO_8859_1));
+        return file;
+    }
+
+    @Test
+    public void testRows() throws Exception {
+        Path file = write("id, name ,note\r\n1, Valencia , \"a, \"\"quoted\"\" value\"\n\n2,Sevilla\r\n");
+        CsvTable table = CsvTable.read(file.toString());
+
+        assertThat(table.getColumns()).containsExactly("id", "name", "note");
+        assertThat(table).hasSize(2);
+        assertThat(table.get(0).get("name")).isEqualTo("Valencia");
+        assertThat(table.get(0).get("note")).isEqualTo("a, \"quoted\" value");
+        assertThat(table.get(1).get("note")).isEqualTo("");
+        assertThat(table.get(1)).containsKey("note").doesNotContainKey("other");
+    }
+
+    @Test
+    public void testEmptyFile() throws Exception {
+        CsvTable table = CsvTable.read(write("").toString());
+
+        assertThat(table).isEmpty();
+        assertThat(table.getColumns()).isEmpty();
+    }
+
+    @Test
+    public void testChunksMatchSequentialRead() throws Exception {
+        StringBuilder content = new StringBuilder("id,place,comment\n");
+        for (int i = 0; i < 5000; i++) {
+            content.append(i).append(",place").append(i % 13).append(',');
+            if (i % 5 == 0) {
+                content.append("\"spans\nseveral\nlines ").append(i).append('"');
+            } else {
+                content.append("single").append(i % 3);
+            }
+            content.append("\r\n");
+        }
+        Path file = write(content.toString());
+
+        CsvTable sequential = CsvTable.read(file, StandardCharsets.ISO_8859_1, Long.MAX_VALUE / 2, 1);
+        CsvTable chunked = CsvTable.read(file, StandardCharsets.ISO_8859_1, 101, 4);
+
+        assertThat(chunked).hasSize(5000).isEqualTo(sequential);
+        assertThat(chunked.get(4995).get("comment")).isEqualTo("spans\nseveral\nlines 4995");
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.stratio.qa.utils;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class DataGeneratorTest {
+
+    private Map<String, String> specs() {
+        Map<String, String> specs = new LinkedHashMap<>();
+        specs.put("id", "sequence:100");
+        specs.put("pk", "partition:2:4");
+        specs.put("rank", "zipf:10:1.2");
+        specs.put("name", "text:8");
+        specs.put("created", "timestamp:2016-01-01:2016-01-02");
+        specs.put("uid", "uuid");
+        specs.put("amount", "uniform:-5:5");
+        return specs;
+    }
+
+    private List<Object[]> rows(DataGenerator generator, long block, long total) {
+        List<Object[]> rows = new ArrayList<>();
+        DataGenerator.Block values = generator.block(block, total);
+        Object[] row;
+        while ((row = values.next()) != null) {
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    @Test
+    public void testValues() {
+        DataGenerator generator = new DataGenerator(specs(), 7);
+        long total = DataGenerator.BLOCK_SIZE + 50;
+        List<Object[]> rows = rows(generator, 1, total);
+
+        assertThat(DataGenerator.blocks(total)).isEqualTo(2);
+        assertThat(generator.getColumns()).containsExactly("id", "pk", "rank", "name", "created", "uid", "amount");
+        assertThat(rows).hasSize(50);
+        int partitionSize = 0;
+        for (int i = 0; i < rows.size(); i++) {
+            Object[] row = rows.get(i);
+            assertThat(row[0]).isEqualTo(100L + DataGenerator.BLOCK_SIZE + i);
+            if (i > 0 && !row[1].equals(rows.get(i - 1)[1])) {
+                assertThat(row[1]).isEqualTo((Long) rows.get(i - 1)[1] + 1);
+                assertThat(partitionSize).isBetween(2, 4);
+                partitionSize = 0;
+            }
+            partitionSize++;
+            assertThat((Long) row[2]).isBetween(1L, 10L);
+            assertThat((String) row[3]).hasSize(8).matches("[a-zA-Z0-9]+");
+            assertThat(((Date) row[4]).getTime()).isBetween(1451606400000L, 1451692799999L);
+            assertThat(((UUID) row[5]).version()).isEqualTo(4);
+            assertThat((Long) row[6]).isBetween(-5L, 5L);
+        }
+    }
+
+    @Test
+    public void testSameSeedSameRows() {
+        List<Object[]> first = rows(new DataGenerator(specs(), 7), 3, 100000);
+        List<Object[]> second = rows(new DataGenerator(specs(), 7), 3, 100000);
+        List<Object[]> other = rows(new DataGenerator(specs(), 8), 3, 100000);
+
+        assertThat(first).hasSameSizeAs(second);
+        for (int i = 0; i < first.size(); i++) {
+            assertThat(Arrays.equals(first.get(i), second.get(i))).isTrue();
+        }
+        assertThat(Arrays.equals(first.get(0), other.get(0))).isFalse();
+    }
+
+    @Test
+    public void testWrongSpec() {
+        Map<String, String> specs = new LinkedHashMap<>();
+        specs.put("id", "uniform:5:1");
+        try {
+            new DataGenerator(specs, 0);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage()).contains("id");
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.stratio.qa.utils;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DomWaitTest {
+
+    @Test
+    public void testPollingWaitEndsOnChange() {
+        WebElement shown = mock(WebElement.class);
+        when(shown.isDisplayed()).thenReturn(true);
+        when(shown.getText()).thenReturn("Welcome back");
+        WebDriver driver = mock(WebDriver.class);
+        when(driver.findElements(any(By.class))).thenReturn(Collections.<WebElement>emptyList(),
+                Collections.<WebElement>emptyList(), Arrays.asList(shown));
+
+        long start = System.currentTimeMillis();
+        assertThat(new DomWait("id", "welcome").visible().containing("Welcome").await(driver, 5000)).isTrue();
+        assertThat(System.currentTimeMillis() - start).isLessThan(2000);
+    }
+
+    @Test
+    public void testWaitTimesOut() {
+        WebElement hidden = mock(WebElement.class);
+        WebDriver driver = mock(WebDriver.class);
+        when(driver.findElements(any(By.class))).thenReturn(Arrays.asList(hidden));
+
+        assertThat(new DomWait("css", ".modal").visible().await(driver, 300)).isFalse();
+        assertThat(new DomWait("css", ".modal").count(0).await(driver, 300)).isFalse();
+        assertThat(new DomWait("css", ".modal").count(1).await(driver, 300)).isTrue();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnknownMethod() {
+        DomWait.by("tag", "div");
+    }
+}
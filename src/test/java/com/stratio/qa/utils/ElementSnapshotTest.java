@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.stratio.qa.utils;
+
+import org.mockito.Matchers;
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.Point;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ElementSnapshotTest {
+
+    @Test
+    public void testStateAttributes() {
+        Map<String, Object> attributes = new HashMap<String, Object>();
+        attributes.put("href", "/login");
+        attributes.put("Title", "Log in");
+        attributes.put("disabled", "");
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put("href", "http://localhost/login");
+        properties.put("value", "typed");
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("text", "Log in");
+        values.put("attributes", attributes);
+        values.put("properties", properties);
+        values.put("displayed", true);
+        values.put("x", 10L);
+        values.put("y", 20.5);
+        values.put("width", 100L);
+        values.put("height", 30L);
+
+        ElementSnapshot.State state = new ElementSnapshot.State(values);
+        assertThat(state.getText()).isEqualTo("Log in");
+        assertThat(state.isDisplayed()).isTrue();
+        assertThat(state.isEnabled()).isFalse();
+        assertThat(state.getLocation()).isEqualTo(new Point(10, 20));
+        assertThat(state.getSize()).isEqualTo(new Dimension(100, 30));
+
+        assertThat(state.hasAttribute("title")).isTrue();
+        assertThat(state.getAttribute("TITLE")).isEqualTo("Log in");
+        assertThat(state.getAttribute("href")).isEqualTo("http://localhost/login");
+        assertThat(state.hasAttribute("value")).isTrue();
+        assertThat(state.getAttribute("value")).isEqualTo("typed");
+        assertThat(state.hasAttribute("disabled")).isFalse();
+        assertThat(state.hasAttribute("src")).isFalse();
+    }
+
+    @Test
+    public void testTextReadLiveWhenNotKept() {
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("text", null);
+        values.put("displayed", true);
+
+        ElementSnapshot.State state = new ElementSnapshot.State(values);
+        assertThat(state.hasText()).isFalse();
+    }
+
+    @Test
+    public void testPageChangeWithoutActionIsNotFresh() {
+        RemoteWebDriver driver = mock(RemoteWebDriver.class);
+        snapshotScript(driver);
+        when(driver.executeScript(Matchers.startsWith("return window.__bdtDomVersion"))).thenReturn(0L, 1L);
+        ElementSnapshot.actionPerformed();
+
+        ElementSnapshot snapshot = ElementSnapshot.take(driver, "id", "status");
+        assertThat(snapshot.isFresh()).isTrue();
+        assertThat(snapshot.isFresh()).isFalse();
+    }
+
+    @Test
+    public void testTtlSkipsVersionCheck() {
+        RemoteWebDriver driver = mock(RemoteWebDriver.class);
+        snapshotScript(driver);
+        ElementSnapshot.actionPerformed();
+        System.setProperty("BDT_SNAPSHOT_TTL", "60000");
+        try {
+            ElementSnapshot snapshot = ElementSnapshot.take(driver, "id", "status");
+            assertThat(snapshot.isFresh()).isTrue();
+            verify(driver, never()).executeScript(Matchers.startsWith("return window.__bdtDomVersion"));
+        } finally {
+            System.clearProperty("BDT_SNAPSHOT_TTL");
+        }
+    }
+
+    private static void snapshotScript(RemoteWebDriver driver) {
+        Map<String, Object> state = new HashMap<String, Object>();
+        state.put("text", "Pending");
+        state.put("displayed", true);
+        when(driver.executeScript(Matchers.startsWith("if (window.__bdtDomVersion"), Matchers.<Object>anyVararg()))
+                .thenReturn(Arrays.<Object>asList(0L, Collections.singletonList(mock(WebElement.class)),
+                        Collections.singletonList(state)));
+    }
+}
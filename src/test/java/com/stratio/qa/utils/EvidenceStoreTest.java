@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import org.testng.annotations.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EvidenceStoreTest {
+
+    private byte[] png(int width, int height, Color color) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                image.setRGB(x, y, color.getRGB());
+            }
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", output);
+        return output.toByteArray();
+    }
+
+    @Test
+    public void testDuplicatesAreStoredOnce() throws Exception {
+        File dir = Files.createTempDirectory("evidences").toFile();
+        EvidenceStore store = new EvidenceStore(new File(dir, ".store"));
+        byte[] content = png(4, 4, Color.RED);
+
+        File first = store.store(content, ".png", new File(dir, "scenario/first.png"));
+        File second = store.store(content, ".png", new File(dir, "scenario/second.png"));
+
+        assertThat(second).isEqualTo(first);
+        assertThat(new File(dir, ".store").list()).hasSize(1);
+        assertThat(Files.readAllBytes(new File(dir, "scenario/second.png").toPath())).isEqualTo(content);
+    }
+
+    @Test
+    public void testStitch() throws Exception {
+        byte[] top = png(10, 6, Color.RED);
+        byte[] bottom = png(10, 6, Color.BLUE);
+        assertThat(ScreenshotStitcher.dimensions(top)).isEqualTo(new Dimension(10, 6));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ScreenshotStitcher.stitch(Arrays.asList(top, bottom), 2, output);
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(output.toByteArray()));
+
+        assertThat(image.getWidth()).isEqualTo(10);
+        assertThat(image.getHeight()).isEqualTo(10);
+        assertThat(image.getRGB(0, 5)).isEqualTo(Color.RED.getRGB());
+        assertThat(image.getRGB(0, 6)).isEqualTo(Color.BLUE.getRGB());
+    }
+}
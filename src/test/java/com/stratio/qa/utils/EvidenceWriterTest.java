@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.Callable;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EvidenceWriterTest {
+
+    @Test
+    public void testAwaitPending() throws Exception {
+        final File dir = Files.createTempDirectory("evidences").toFile();
+        for (int i = 0; i < 50; i++) {
+            final File file = new File(dir, i + ".html");
+            EvidenceWriter.INSTANCE.submit(file.getPath(), new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    Thread.sleep(5);
+                    Files.write(file.toPath(), "<html/>".getBytes("UTF-8"));
+                    return null;
+                }
+            });
+        }
+
+        assertThat(EvidenceWriter.INSTANCE.awaitPending(30)).isTrue();
+        assertThat(EvidenceWriter.INSTANCE.getPending()).isEqualTo(0);
+        assertThat(dir.list()).hasSize(50);
+    }
+
+    @Test
+    public void testFailedEvidenceIsNotPending() throws Exception {
+        EvidenceWriter.INSTANCE.submit("broken.png", new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                throw new Exception("Unable to encode");
+            }
+        });
+
+        assertThat(EvidenceWriter.INSTANCE.awaitPending(30)).isTrue();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.stratio.qa.utils;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HtmlUnitCommandExecutorTest {
+
+    private RemoteWebDriver driver;
+
+    private String page;
+
+    @BeforeClass
+    public void setUp() {
+        driver = HtmlUnitCommandExecutor.newDriver();
+        page = getClass().getClassLoader().getResource("htmlunitForm.html").toString();
+    }
+
+    @AfterClass
+    public void tearDown() {
+        driver.quit();
+    }
+
+    @Test
+    public void testFormFlow() {
+        driver.get(page);
+        assertThat(HtmlUnitCommandExecutor.isHtmlUnit(driver)).isTrue();
+        assertThat(driver.getTitle()).isEqualTo("Login");
+
+        driver.findElement(By.id("user")).sendKeys("bdt");
+        assertThat(driver.findElement(By.id("remember")).isSelected()).isTrue();
+        driver.findElement(By.id("send")).click();
+
+        List<WebElement> greeting = driver.findElements(By.cssSelector("p.message"));
+        assertThat(greeting).hasSize(1);
+        assertThat(greeting.get(0).getText()).isEqualTo("Hello bdt");
+        assertThat(greeting.get(0).isDisplayed()).isTrue();
+    }
+
+    @Test
+    public void testScriptElements() {
+        driver.get(page);
+        WebElement user = driver.findElement(By.name("user"));
+        Object found = ((JavascriptExecutor) driver).executeScript("return document.getElementById('user');");
+        assertThat(found).isEqualTo(user);
+        assertThat(((JavascriptExecutor) driver).executeScript("return arguments[0].type;", user)).isEqualTo("text");
+    }
+
+    @Test(expectedExceptions = StaleElementReferenceException.class)
+    public void testElementsFromPreviousPageAreStale() {
+        driver.get(page);
+        WebElement user = driver.findElement(By.id("user"));
+        driver.get(page);
+        user.getAttribute("value");
+    }
+}
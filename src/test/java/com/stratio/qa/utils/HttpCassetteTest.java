@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import com.ning.http.client.Response;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HttpCassetteTest {
+
+    @Test
+    public void testJsonKeyIgnoresKeyOrder() {
+        String key1 = HttpCassette.key("post", "/api", "{\"a\":1,\"b\":{\"d\":2,\"c\":3}}", "json");
+        String key2 = HttpCassette.key("POST", "/api", "{\"b\":{\"c\":3,\"d\":2},\"a\":1}", "json");
+
+        assertThat(key1).isEqualTo(key2);
+    }
+
+    @Test
+    public void testStringKeyKeepsBody() {
+        String key1 = HttpCassette.key("POST", "/login", "user=a&pass=b", "string");
+        String key2 = HttpCassette.key("POST", "/login", "pass=b&user=a", "string");
+
+        assertThat(key1).isNotEqualTo(key2);
+    }
+
+    @Test
+    public void testDisabledByDefault() throws Exception {
+        System.clearProperty(HttpCassette.MODE_PROPERTY);
+
+        assertThat(HttpCassette.forCurrentFeature()).isNull();
+    }
+
+    @Test
+    public void testReplayedResponse() throws Exception {
+        Map<String, Object> headers = new LinkedHashMap<>();
+        headers.put("Content-Type", Arrays.asList("application/json"));
+        Map<String, Object> interaction = new LinkedHashMap<>();
+        interaction.put("method", "GET");
+        interaction.put("url", "http://localhost:8080/api");
+        interaction.put("status", 200);
+        interaction.put("statusText", "OK");
+        interaction.put("responseHeaders", headers);
+        interaction.put("cookies", new ArrayList<Object>());
+        interaction.put("response", "{\"a\":1}");
+
+        Response response = new ReplayedResponse(interaction);
+
+        assertThat(response.getStatusCode()).isEqualTo(200);
+        assertThat(response.getUri().getPath()).isEqualTo("/api");
+        assertThat(response.getContentType()).isEqualTo("application/json");
+        assertThat(response.getHeaders("content-type")).containsExactly("application/json");
+        assertThat(response.getResponseBody("UTF-8")).isEqualTo("{\"a\":1}");
+        assertThat(response.getResponseBodyExcerpt(3)).isEqualTo("{\"a");
+        assertThat(response.getCookies()).isEmpty();
+        assertThat(response.isRedirected()).isFalse();
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JsonPathCacheTest {
+
+    @Test
+    public void testParseOnce() {
+        JsonPathCache cache = new JsonPathCache();
+        String json = "{\"key1\":\"value1\",\"key2\":{\"key3\":\"value3\"}}";
+
+        assertThat(cache.parse(json)).as("Document parsed twice").isSameAs(cache.parse(new String(json)));
+        assertThat(cache.<String>read(json, "$.key2.key3")).isEqualTo("value3");
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testHjsonDocument() {
+        JsonPathCache cache = new JsonPathCache();
+
+        assertThat(cache.<String>read("{key1: value1}", "$.key1")).isEqualTo("value1");
+    }
+
+    @Test
+    public void testBoundedDocuments() {
+        JsonPathCache cache = new JsonPathCache(2);
+        cache.parse("{\"a\":1}");
+        cache.parse("{\"b\":2}");
+        cache.parse("{\"c\":3}");
+
+        assertThat(cache.size()).as("Documents cache is not bounded").isEqualTo(2);
+    }
+
+    @Test
+    public void testCompiledExpressions() {
+        assertThat(JsonPathCache.compile("$.key1")).isSameAs(JsonPathCache.compile("$.key1"));
+    }
+}
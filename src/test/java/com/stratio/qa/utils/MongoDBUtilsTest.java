@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.stratio.qa.utils;
+
+import org.testng.annotations.Test;
+
+import java.sql.Timestamp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MongoDBUtilsTest {
+
+    @Test
+    public void testCastValues() {
+        assertThat(MongoDBUtils.castSTringTo("String", "a")).isEqualTo("a");
+        assertThat(MongoDBUtils.castSTringTo("Integer", "3")).isEqualTo(3);
+        assertThat(MongoDBUtils.castSTringTo("Double", "1.5")).isEqualTo(1.5);
+        assertThat(MongoDBUtils.castSTringTo("Boolean", "true")).isEqualTo(true);
+        assertThat(MongoDBUtils.castSTringTo("Timestamp", "2016-01-02 03:04:05")).isEqualTo(Timestamp.valueOf("2016-01-02 03:04:05"));
+        assertThat(MongoDBUtils.castSTringTo("Unknown", "x")).isNull();
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import com.jayway.jsonpath.DocumentContext;
+import org.skyscreamer.jsonassert.JSONAssert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RequestTemplateTest {
+
+    @Test
+    public void testModificationsOverOneDocument() throws Exception {
+        List<List<String>> rows = Arrays.asList(
+                Arrays.asList("key2", "ADDTO", "b", "string"),
+                Arrays.asList("key1", "APPEND", "X", "N/A"),
+                Arrays.asList("Content-Encoding", "HEADER", "gzip", "N/A"));
+        RequestTemplate template = new RequestTemplate(rows);
+        Map<String, String> headers = new HashMap<>();
+
+        DocumentContext first = JsonDocuments.parse("{\"key1\":\"value1\",\"key2\":[\"a\"]}");
+        template.apply(first, headers);
+        DocumentContext second = JsonDocuments.parse("{\"key1\":\"value1\",\"key2\":[\"a\"]}");
+        template.apply(second, headers);
+
+        assertThat(template.modifiesBody()).isTrue();
+        JSONAssert.assertEquals("{\"key1\":\"value1X\",\"key2\":[\"a\",\"b\"]}", first.jsonString(), true);
+        assertThat(second.jsonString()).as("Typed value shared between documents").isEqualTo(first.jsonString());
+        assertThat(headers).containsEntry("Content-Encoding", "gzip");
+    }
+
+    @Test
+    public void testValuesAreNotBoundAgain() throws Exception {
+        List<List<String>> rows = Arrays.asList(Arrays.asList("cmd", "UPDATE", "echo ${HOME} !{TEMPLATE_ID}", "N/A"));
+        RequestTemplate template = new RequestTemplate(rows);
+        ThreadProperty.set("TEMPLATE_ID", "1");
+
+        DocumentContext document = JsonDocuments.parse("{\"cmd\":\"\"}");
+        template.apply(document, new HashMap<String, String>());
+
+        JSONAssert.assertEquals("{\"cmd\":\"echo ${HOME} !{TEMPLATE_ID}\"}", document.jsonString(), true);
+    }
+
+    @Test
+    public void testUnknownModification() {
+        try {
+            new RequestTemplate(Arrays.asList(Arrays.asList("key1", "REMOVE", "N/A")));
+        } catch (Exception e) {
+            assertThat(e.getMessage()).isEqualTo("Modification type does not exist: REMOVE");
+            return;
+        }
+        org.testng.Assert.fail("Expected Exception");
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class ResultsMatcherTest {
+
+    private final List<List<String>> expected = Arrays.asList(
+            Arrays.asList("place", "occurrences", "latitude"),
+            Arrays.asList("Valencia", "2", "12.5"),
+            Arrays.asList("Stratio", "0", "2.5"));
+
+    @Test
+    public void testOccurrences() throws Exception {
+        ResultsMatcher matcher = new ResultsMatcher(expected);
+        assertThat(matcher.getColumns()).containsExactly("place", "latitude");
+
+        matcher.add(Arrays.asList("Valencia", "12.5"));
+        matcher.add(Arrays.asList("Sevilla", "12.5"));
+        matcher.add(Arrays.asList("Valencia", "12.5"));
+
+        assertThat(matcher.occurrences(Arrays.asList("Valencia", "12.5"))).isEqualTo(2);
+        matcher.verify();
+    }
+
+    @Test
+    public void testMismatchReport() throws Exception {
+        ResultsMatcher matcher = new ResultsMatcher(expected);
+        matcher.add(Arrays.asList("Valencia", "12.5"));
+        matcher.add(Arrays.asList("Stratio", "2.5"));
+
+        try {
+            matcher.verify();
+            fail("Expected AssertionError");
+        } catch (AssertionError e) {
+            assertThat(e.getMessage()).contains("In row 0 [Valencia, 12.5] have been found 1 results and 2 were expected");
+            assertThat(e.getMessage()).contains("In row 1 [Stratio, 2.5] have been found 1 results and 0 were expected");
+            assertThat(e.getMessage()).contains("2 rows obtained");
+        }
+    }
+
+    @Test
+    public void testUnexpectedKeysSampleIsBounded() throws Exception {
+        ResultsMatcher matcher = new ResultsMatcher(expected);
+        for (int i = 0; i < 100000; i++) {
+            matcher.add(Arrays.asList("Place" + i, "0.0"));
+        }
+
+        assertThat(matcher.getRows()).isEqualTo(100000);
+        try {
+            matcher.verify();
+            fail("Expected AssertionError");
+        } catch (AssertionError e) {
+            assertThat(e.getMessage()).contains("[Place0, 0.0] x1").doesNotContain("Place10,");
+        }
+    }
+
+    @Test
+    public void testMissingOccurrencesColumn() {
+        try {
+            new ResultsMatcher(Arrays.asList(Arrays.asList("place"), Arrays.asList("Valencia")));
+            fail("Expected Exception");
+        } catch (Exception e) {
+            assertThat(e.getMessage()).isEqualTo("Expected results must contain an 'occurrences' column");
+        }
+    }
+}
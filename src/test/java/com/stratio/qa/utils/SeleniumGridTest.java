@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SeleniumGridTest {
+
+    @Test
+    public void testSlotFilter() {
+        SeleniumGrid.Slot slot = new SeleniumGrid.Slot("chrome_48", "{browserName=chrome, platformName=Android, version=48}", false);
+        Map<String, String> filter = new HashMap<String, String>();
+        filter.put("platformName", "(Android|iOS)");
+        assertThat(slot.matches(filter)).isTrue();
+
+        filter.put("platformName", "iOS");
+        assertThat(slot.matches(filter)).isFalse();
+        assertThat(new SeleniumGrid.Slot("firefox_45", null, true).matches(filter)).isTrue();
+    }
+
+    @Test
+    public void testUnknownBrowserIsNotThrottled() throws Exception {
+        assertThat(SeleniumGrid.INSTANCE.acquire("unknown_1")).isTrue();
+        SeleniumGrid.INSTANCE.release("unknown_1");
+    }
+
+    @Test
+    public void testBusySlotsOfOtherClientsAreNotFree() throws Exception {
+        System.setProperty("SELENIUM_SLOT_TIMEOUT", "0");
+        try {
+            SeleniumGrid.INSTANCE.setCapacity("shared_1", 2, 1);
+            assertThat(SeleniumGrid.INSTANCE.acquire("shared_1")).isTrue();
+            assertThat(SeleniumGrid.INSTANCE.acquire("shared_1")).isFalse();
+            SeleniumGrid.INSTANCE.release("shared_1");
+            SeleniumGrid.INSTANCE.release("shared_1");
+
+            SeleniumGrid.INSTANCE.setCapacity("shared_1", 2, 0);
+            assertThat(SeleniumGrid.INSTANCE.acquire("shared_1")).isTrue();
+            assertThat(SeleniumGrid.INSTANCE.acquire("shared_1")).isTrue();
+            SeleniumGrid.INSTANCE.release("shared_1");
+            SeleniumGrid.INSTANCE.release("shared_1");
+        } finally {
+            System.clearProperty("SELENIUM_SLOT_TIMEOUT");
+        }
+    }
+
+    @Test
+    public void testPooledSessionWakesWaitingThread() throws Exception {
+        System.setProperty("SELENIUM_SESSION_POOL", "true");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            SeleniumGrid.INSTANCE.setCapacity("pooled_1", 1, 0);
+            assertThat(SeleniumGrid.INSTANCE.acquire("pooled_1")).isTrue();
+            RemoteWebDriver driver = mock(RemoteWebDriver.class, RETURNS_DEEP_STUBS);
+            when(driver.getWindowHandles()).thenReturn(Collections.singleton("main"));
+
+            Future<RemoteWebDriver> next = executor.submit(new Callable<RemoteWebDriver>() {
+                @Override
+                public RemoteWebDriver call() throws Exception {
+                    return SeleniumGrid.INSTANCE.acquire("pooled_1", WebDriverPool.INSTANCE);
+                }
+            });
+            Thread.sleep(200);
+            assertThat(next.isDone()).isFalse();
+
+            WebDriverPool.INSTANCE.release("pooled_1", driver, true);
+            assertThat(next.get(5, TimeUnit.SECONDS)).isSameAs(driver);
+        } finally {
+            executor.shutdownNow();
+            SeleniumGrid.INSTANCE.release("pooled_1");
+            System.clearProperty("SELENIUM_SESSION_POOL");
+        }
+    }
+}
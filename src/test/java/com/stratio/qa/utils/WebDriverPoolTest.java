@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2014 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.stratio.qa.utils;
+
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class WebDriverPoolTest {
+
+    @BeforeMethod
+    public void enablePool() {
+        System.setProperty("SELENIUM_SESSION_POOL", "true");
+    }
+
+    @AfterMethod
+    public void disablePool() {
+        System.clearProperty("SELENIUM_SESSION_POOL");
+        System.clearProperty("SELENIUM_SESSION_MAX_REUSE");
+        System.clearProperty("SELENIUM_SLOT_TIMEOUT");
+    }
+
+    @Test
+    public void testUnhealthySessionIsEvicted() {
+        RemoteWebDriver driver = session();
+        WebDriverPool.INSTANCE.release("unhealthy_1", driver, true);
+        when(driver.getWindowHandle()).thenThrow(new WebDriverException("Session gone"));
+
+        assertThat(WebDriverPool.INSTANCE.acquire("unhealthy_1")).isNull();
+        verify(driver).quit();
+    }
+
+    @Test
+    public void testSessionIsReusedUpToMaxReuse() {
+        System.setProperty("SELENIUM_SESSION_MAX_REUSE", "2");
+        RemoteWebDriver driver = session();
+
+        WebDriverPool.INSTANCE.release("reused_1", driver, true);
+        assertThat(WebDriverPool.INSTANCE.acquire("reused_1")).isSameAs(driver);
+        verify(driver, never()).quit();
+
+        WebDriverPool.INSTANCE.release("reused_1", driver, true);
+        verify(driver).quit();
+        assertThat(WebDriverPool.INSTANCE.acquire("reused_1")).isNull();
+    }
+
+    @Test
+    public void testResetFailureDiscardsSession() {
+        RemoteWebDriver driver = session();
+        when(driver.getWindowHandles()).thenThrow(new WebDriverException("Browser crashed"));
+
+        WebDriverPool.INSTANCE.release("broken_1", driver, true);
+
+        verify(driver).quit();
+        assertThat(WebDriverPool.INSTANCE.acquire("broken_1")).isNull();
+    }
+
+    @Test
+    public void testDiscardGivesSlotBack() throws Exception {
+        System.setProperty("SELENIUM_SLOT_TIMEOUT", "0");
+        SeleniumGrid.INSTANCE.setCapacity("discarded_1", 1, 0);
+        assertThat(SeleniumGrid.INSTANCE.acquire("discarded_1")).isTrue();
+
+        WebDriverPool.INSTANCE.release("discarded_1", session(), false);
+
+        assertThat(SeleniumGrid.INSTANCE.acquire("discarded_1")).isTrue();
+        SeleniumGrid.INSTANCE.release("discarded_1");
+    }
+
+    private static RemoteWebDriver session() {
+        RemoteWebDriver driver = mock(RemoteWebDriver.class, RETURNS_DEEP_STUBS);
+        when(driver.getWindowHandles()).thenReturn(Collections.singleton("main"));
+        return driver;
+    }
+}